@@ -0,0 +1,120 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data;
+
+import com.cloudera.data.filesystem.BenchmarkUtilities;
+import com.cloudera.data.filesystem.BenchmarkUtilities.Workload;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Benchmarks for {@link PartitionStrategy#partitionKeyForEntity(Object,
+ * PartitionKey)}, which runs once for every entity written to a partitioned
+ * dataset.
+ * </p>
+ * <p>
+ * Entities are either {@link org.apache.avro.generic.GenericRecord}s or
+ * JavaBeans, which take different branches when field values are looked up.
+ * Each invocation computes the key of the next of a fixed set of
+ * pre-generated entities, either into a reused key, as
+ * {@link com.cloudera.data.filesystem.PartitionedDatasetWriter} does, or into
+ * a new one.
+ * </p>
+ *
+ * @see com.cloudera.data.partition.FieldPartitionerBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PartitionStrategyBenchmark {
+
+  /* Must be a power of two; see next(). */
+  static final int ENTITIES = 1024;
+
+  /**
+   * The partition strategies to compute keys for.
+   */
+  public enum Strategy {
+    HASH {
+      @Override
+      PartitionStrategy get() {
+        return new PartitionStrategy.Builder().hash("username", 64).get();
+      }
+    },
+    HASH_CALENDAR {
+      @Override
+      PartitionStrategy get() {
+        return new PartitionStrategy.Builder()
+          .year("timestamp", "year")
+          .month("timestamp", "month")
+          .day("timestamp", "day")
+          .hour("timestamp", "hour")
+          .hash("username", 64)
+          .get();
+      }
+    };
+
+    abstract PartitionStrategy get();
+  }
+
+  @Param({ "AVRO_GENERIC", "AVRO_REFLECT" })
+  public Workload workload;
+
+  @Param({ "HASH", "HASH_CALENDAR" })
+  public Strategy strategy;
+
+  private PartitionStrategy partitionStrategy;
+  private Object[] entities;
+  private PartitionKey reuseKey;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    partitionStrategy = strategy.get();
+    entities = BenchmarkUtilities.entities(workload, ENTITIES, 1000);
+    reuseKey = new PartitionKey(
+      new Object[partitionStrategy.getFieldPartitioners().size()]);
+  }
+
+  @Benchmark
+  public PartitionKey reuseKey() {
+    return partitionStrategy.partitionKeyForEntity(next(), reuseKey);
+  }
+
+  @Benchmark
+  public PartitionKey newKey() {
+    return partitionStrategy.partitionKeyForEntity(next(), null);
+  }
+
+  private Object next() {
+    return entities[index++ & (ENTITIES - 1)];
+  }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.benchmark;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSortedMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * The result of one benchmark, for one combination of parameters.
+ * </p>
+ * <p>
+ * Results are identified by their {@link #getKey() key}, the benchmark name
+ * and its parameters, so that a run can be compared with a baseline recorded
+ * at another revision.
+ * </p>
+ */
+public class BenchmarkResult {
+
+  /** The value of {@link #getAllocatedBytesPerOp()} when not measured. */
+  public static final double UNKNOWN = -1;
+
+  private final String benchmark;
+  private final Map<String, String> params;
+  private final String mode;
+  private final double score;
+  private final double scoreError;
+  private final String unit;
+  private final double allocatedBytesPerOp;
+
+  public BenchmarkResult(String benchmark, Map<String, String> params,
+    String mode, double score, double scoreError, String unit,
+    double allocatedBytesPerOp) {
+
+    this.benchmark = benchmark;
+    this.params = ImmutableSortedMap.copyOf(params);
+    this.mode = mode;
+    this.score = score;
+    this.scoreError = scoreError;
+    this.unit = unit;
+    this.allocatedBytesPerOp = allocatedBytesPerOp;
+  }
+
+  /**
+   * The benchmark and its parameters, such as
+   * {@code com.cloudera.data.filesystem.DatasetWriterBenchmark.write:compression=true,workload=AVRO_GENERIC}.
+   */
+  public String getKey() {
+    if (params.isEmpty()) {
+      return benchmark;
+    }
+    return benchmark + ":" + Joiner.on(',').withKeyValueSeparator("=")
+      .join(params);
+  }
+
+  public String getBenchmark() {
+    return benchmark;
+  }
+
+  public Map<String, String> getParams() {
+    return params;
+  }
+
+  /**
+   * The JMH mode: {@code thrpt}, {@code avgt}, {@code sample} or {@code ss}.
+   */
+  public String getMode() {
+    return mode;
+  }
+
+  /**
+   * Return true if a higher score is better, as for throughput. Otherwise
+   * the score is a time per operation.
+   */
+  public boolean isHigherBetter() {
+    return "thrpt".equals(mode);
+  }
+
+  public double getScore() {
+    return score;
+  }
+
+  public double getScoreError() {
+    return scoreError;
+  }
+
+  public String getUnit() {
+    return unit;
+  }
+
+  /**
+   * Bytes allocated per operation, as reported by JMH's GC profiler, or
+   * {@link #UNKNOWN}.
+   */
+  public double getAllocatedBytesPerOp() {
+    return allocatedBytesPerOp;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("key", getKey())
+      .add("mode", mode)
+      .add("score", score)
+      .add("scoreError", scoreError)
+      .add("unit", unit)
+      .add("allocatedBytesPerOp", allocatedBytesPerOp)
+      .toString();
+  }
+
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+
+/**
+ * <p>
+ * The results of a benchmark run at a source revision, by
+ * {@link BenchmarkResult#getKey() key}.
+ * </p>
+ * <p>
+ * Results are stored as JSON:
+ * </p>
+ * <pre>
+ * {
+ *   "revision" : "8a75c2d",
+ *   "results" : [ {
+ *     "benchmark" : "com.cloudera.data.filesystem.DatasetWriterBenchmark.write",
+ *     "params" : { "compression" : "true", "workload" : "AVRO_GENERIC" },
+ *     "mode" : "thrpt",
+ *     "score" : 251234.5,
+ *     "scoreError" : 1234.5,
+ *     "unit" : "ops/s",
+ *     "allocatedBytesPerOp" : 312.0
+ *   } ]
+ * }
+ * </pre>
+ */
+public class BenchmarkResults {
+
+  /**
+   * The name of the secondary result reported by JMH's GC profiler
+   * ({@code -prof gc}) for bytes allocated per operation.
+   */
+  static final String JMH_ALLOCATION_METRIC = "\u00b7gc.alloc.rate.norm";
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private final String revision;
+  private final Map<String, BenchmarkResult> results;
+
+  public BenchmarkResults(String revision, Collection<BenchmarkResult> results) {
+    this.revision = revision;
+
+    Map<String, BenchmarkResult> byKey = Maps.newLinkedHashMap();
+    for (BenchmarkResult result : results) {
+      byKey.put(result.getKey(), result);
+    }
+    this.results = ImmutableMap.copyOf(byKey);
+  }
+
+  public String getRevision() {
+    return revision;
+  }
+
+  /**
+   * The results, by {@link BenchmarkResult#getKey() key}.
+   */
+  public Map<String, BenchmarkResult> getResults() {
+    return results;
+  }
+
+  /**
+   * Read the results written by JMH with {@code -rf json}.
+   */
+  public static BenchmarkResults fromJmhJson(File file, String revision)
+    throws IOException {
+
+    Map<String, BenchmarkResult> results = Maps.newLinkedHashMap();
+
+    for (JsonNode run : mapper.readValue(file, JsonNode.class)) {
+      Map<String, String> params = Maps.newTreeMap();
+      JsonNode paramsNode = run.get("params");
+      if (paramsNode != null) {
+        for (Iterator<Map.Entry<String, JsonNode>> fields = paramsNode
+          .getFields(); fields.hasNext();) {
+
+          Map.Entry<String, JsonNode> field = fields.next();
+          params.put(field.getKey(), field.getValue().getTextValue());
+        }
+      }
+
+      JsonNode primary = run.get("primaryMetric");
+      JsonNode secondary = run.get("secondaryMetrics");
+      JsonNode allocation = secondary != null ?
+        secondary.get(JMH_ALLOCATION_METRIC) : null;
+
+      BenchmarkResult result = new BenchmarkResult(
+        run.get("benchmark").getTextValue(), params,
+        run.get("mode").getTextValue(),
+        primary.get("score").getDoubleValue(),
+        doubleValue(primary.get("scoreError")),
+        primary.get("scoreUnit").getTextValue(),
+        allocation != null ? allocation.get("score").getDoubleValue() :
+          BenchmarkResult.UNKNOWN);
+      results.put(result.getKey(), result);
+    }
+
+    return new BenchmarkResults(revision, results.values());
+  }
+
+  /**
+   * Read results written by {@link #write(File)}.
+   */
+  public static BenchmarkResults read(File file) throws IOException {
+    JsonNode root = mapper.readValue(file, JsonNode.class);
+    Map<String, BenchmarkResult> results = Maps.newLinkedHashMap();
+
+    for (JsonNode node : root.get("results")) {
+      Map<String, String> params = Maps.newTreeMap();
+      for (Iterator<Map.Entry<String, JsonNode>> fields = node.get("params")
+        .getFields(); fields.hasNext();) {
+
+        Map.Entry<String, JsonNode> field = fields.next();
+        params.put(field.getKey(), field.getValue().getTextValue());
+      }
+
+      BenchmarkResult result = new BenchmarkResult(
+        node.get("benchmark").getTextValue(), params,
+        node.get("mode").getTextValue(),
+        node.get("score").getDoubleValue(),
+        doubleValue(node.get("scoreError")),
+        node.get("unit").getTextValue(),
+        node.get("allocatedBytesPerOp").getDoubleValue());
+      results.put(result.getKey(), result);
+    }
+
+    return new BenchmarkResults(root.get("revision").getTextValue(),
+      results.values());
+  }
+
+  public void write(File file) throws IOException {
+    ObjectNode root = mapper.createObjectNode();
+    root.put("revision", revision);
+
+    ArrayNode array = root.putArray("results");
+    for (BenchmarkResult result : results.values()) {
+      ObjectNode node = array.addObject();
+      node.put("benchmark", result.getBenchmark());
+      ObjectNode params = node.putObject("params");
+      for (Map.Entry<String, String> param : result.getParams().entrySet()) {
+        params.put(param.getKey(), param.getValue());
+      }
+      node.put("mode", result.getMode());
+      node.put("score", result.getScore());
+      node.put("scoreError", result.getScoreError());
+      node.put("unit", result.getUnit());
+      node.put("allocatedBytesPerOp", result.getAllocatedBytesPerOp());
+    }
+
+    mapper.defaultPrettyPrintingWriter().writeValue(file, root);
+  }
+
+  private static double doubleValue(JsonNode node) {
+    // NaN, when the error can't be computed, is written as a string
+    return node != null && node.isNumber() ? node.getDoubleValue() : Double.NaN;
+  }
+
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.benchmark;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.CharStreams;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * Runs benchmarks, records their results by revision, and fails if they
+ * regress from a checked-in baseline.
+ * </p>
+ * <p>
+ * Benchmarks are run with JMH's GC profiler so that allocation per
+ * operation is recorded. Arguments other than those below are passed to
+ * JMH, so a subset of benchmarks may be selected with a regular expression
+ * and the usual JMH options:
+ * </p>
+ * <pre>
+ * java -cp target/benchmarks.jar com.cloudera.data.benchmark.BenchmarkRunner \
+ *   --baseline baseline/benchmarks.json DatasetWriterBenchmark
+ * </pre>
+ * <ul>
+ * <li>{@code --baseline <file>}: the baseline to compare with (default
+ * {@value #DEFAULT_BASELINE}).</li>
+ * <li>{@code --output <file>}: where to write this run's results (default
+ * {@value #DEFAULT_OUTPUT}).</li>
+ * <li>{@code --jmh-results <file>}: compare results already written by JMH
+ * with {@code -rf json}, such as those of another benchmark module, rather
+ * than running benchmarks.</li>
+ * <li>{@code --tolerance <fraction>}: how much scores may worsen (default
+ * {@value #DEFAULT_TOLERANCE}).</li>
+ * <li>{@code --allocation-tolerance <fraction>}: how much allocation per
+ * operation may rise (default {@value #DEFAULT_TOLERANCE}).</li>
+ * <li>{@code --revision <revision>}: the revision to record (default: that of
+ * {@code git rev-parse --short HEAD}).</li>
+ * <li>{@code --update-baseline}: write the results to the baseline rather than
+ * comparing with it.</li>
+ * </ul>
+ * <p>
+ * The process exits with status 1 if any result regresses, so this can be
+ * used as a build step. Baselines should be recorded on the machine that
+ * runs the comparison, since scores aren't comparable between machines.
+ * </p>
+ */
+public class BenchmarkRunner {
+
+  static final String DEFAULT_BASELINE = "baseline/benchmarks.json";
+  static final String DEFAULT_OUTPUT = "target/benchmark-results.json";
+  static final double DEFAULT_TOLERANCE = 0.1;
+
+  private static final int REGRESSED = 1;
+  private static final int USAGE = 2;
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    File baselineFile = new File(DEFAULT_BASELINE);
+    File outputFile = new File(DEFAULT_OUTPUT);
+    File jmhResultsFile = null;
+    double tolerance = DEFAULT_TOLERANCE;
+    double allocationTolerance = DEFAULT_TOLERANCE;
+    String revision = null;
+    boolean updateBaseline = false;
+    List<String> jmhArgs = Lists.newArrayList();
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if ("--baseline".equals(arg)) {
+          baselineFile = new File(args[++i]);
+        } else if ("--output".equals(arg)) {
+          outputFile = new File(args[++i]);
+        } else if ("--jmh-results".equals(arg)) {
+          jmhResultsFile = new File(args[++i]);
+        } else if ("--tolerance".equals(arg)) {
+          tolerance = Double.parseDouble(args[++i]);
+        } else if ("--allocation-tolerance".equals(arg)) {
+          allocationTolerance = Double.parseDouble(args[++i]);
+        } else if ("--revision".equals(arg)) {
+          revision = args[++i];
+        } else if ("--update-baseline".equals(arg)) {
+          updateBaseline = true;
+        } else {
+          jmhArgs.add(arg);
+        }
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      System.err.println("Missing value for option " + args[args.length - 1]);
+      System.exit(USAGE);
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid tolerance: " + e.getMessage());
+      System.exit(USAGE);
+    }
+
+    if (revision == null) {
+      revision = gitRevision();
+    }
+
+    if (jmhResultsFile == null) {
+      jmhResultsFile = new File(outputFile.getPath() + ".jmh");
+      run(jmhArgs, jmhResultsFile);
+    }
+
+    BenchmarkResults results = BenchmarkResults.fromJmhJson(jmhResultsFile,
+      revision);
+    mkdirs(outputFile);
+    results.write(outputFile);
+    System.out.println("Wrote " + results.getResults().size()
+      + " results for revision " + revision + " to " + outputFile);
+
+    if (updateBaseline) {
+      mkdirs(baselineFile);
+      results.write(baselineFile);
+      System.out.println("Updated baseline " + baselineFile);
+      return;
+    }
+
+    if (!baselineFile.exists()) {
+      System.err.println("No baseline " + baselineFile
+        + " - record one with --update-baseline");
+      System.exit(USAGE);
+    }
+
+    List<String> regressions = new RegressionGate(tolerance,
+      allocationTolerance).compare(BenchmarkResults.read(baselineFile),
+      results, System.out);
+
+    if (regressions.isEmpty()) {
+      System.out.println("No regressions from baseline " + baselineFile);
+    } else {
+      System.err.println(regressions.size() + " regressions from baseline "
+        + baselineFile + ":");
+      for (String regression : regressions) {
+        System.err.println("  " + regression);
+      }
+      System.exit(REGRESSED);
+    }
+  }
+
+  private static void run(List<String> jmhArgs, File resultsFile)
+    throws RunnerException {
+
+    Options commandLine;
+    try {
+      commandLine = new CommandLineOptions(
+        jmhArgs.toArray(new String[jmhArgs.size()]));
+    } catch (CommandLineOptionException e) {
+      System.err.println("Invalid JMH options: " + e.getMessage());
+      System.exit(USAGE);
+      return;
+    }
+
+    mkdirs(resultsFile);
+    new Runner(new OptionsBuilder()
+      .parent(commandLine)
+      .addProfiler(GCProfiler.class)
+      .resultFormat(ResultFormatType.JSON)
+      .result(resultsFile.getPath())
+      .build()).run();
+  }
+
+  private static String gitRevision() {
+    try {
+      Process git = new ProcessBuilder("git", "rev-parse", "--short", "HEAD")
+        .redirectErrorStream(true).start();
+      String output = CharStreams.toString(
+        new InputStreamReader(git.getInputStream(), Charsets.UTF_8)).trim();
+      if (git.waitFor() == 0 && !output.isEmpty()) {
+        return output;
+      }
+    } catch (IOException e) {
+      // fall through: git isn't available
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return "unknown";
+  }
+
+  private static void mkdirs(File file) {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      System.err.println("Unable to create directory " + parent);
+    }
+  }
+
+}
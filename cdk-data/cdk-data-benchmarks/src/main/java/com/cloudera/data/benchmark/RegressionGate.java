@@ -0,0 +1,135 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.benchmark;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * <p>
+ * Compares benchmark results with a baseline, and reports regressions.
+ * </p>
+ * <p>
+ * A result regresses if its score is worse than the baseline's by more than
+ * the score tolerance: lower for throughput, or higher for time per
+ * operation. It also regresses if it allocates more bytes per operation than
+ * the baseline by more than the allocation tolerance and by at least
+ * {@link #ALLOCATION_SLACK_BYTES}, so that noise around small allocation
+ * rates isn't reported. A result in a different mode or unit than its
+ * baseline can't be compared, so it fails the gate until the baseline is
+ * recorded again with {@code --update-baseline}. Results without a baseline
+ * are reported but are not regressions.
+ * </p>
+ */
+public class RegressionGate {
+
+  static final double ALLOCATION_SLACK_BYTES = 16;
+
+  private final double scoreTolerance;
+  private final double allocationTolerance;
+
+  /**
+   * @param scoreTolerance      The fraction by which scores may worsen, such
+   *                            as 0.1 for 10%.
+   * @param allocationTolerance The fraction by which allocation per operation
+   *                            may rise.
+   */
+  public RegressionGate(double scoreTolerance, double allocationTolerance) {
+    Preconditions.checkArgument(scoreTolerance >= 0,
+      "Score tolerance must not be negative");
+    Preconditions.checkArgument(allocationTolerance >= 0,
+      "Allocation tolerance must not be negative");
+
+    this.scoreTolerance = scoreTolerance;
+    this.allocationTolerance = allocationTolerance;
+  }
+
+  /**
+   * Compare {@code current} with {@code baseline}, returning a description of
+   * each regression. An empty list means the gate passes.
+   *
+   * @param report Where to print the comparison of each result.
+   */
+  public List<String> compare(BenchmarkResults baseline,
+    BenchmarkResults current, PrintStream report) {
+
+    List<String> regressions = Lists.newArrayList();
+
+    report.println("Comparing revision " + current.getRevision()
+      + " with baseline revision " + baseline.getRevision());
+
+    for (BenchmarkResult result : current.getResults().values()) {
+      BenchmarkResult base = baseline.getResults().get(result.getKey());
+
+      if (base == null) {
+        report.printf("  %s: %.3f %s (no baseline)%n", result.getKey(),
+          result.getScore(), result.getUnit());
+        continue;
+      }
+      if (!base.getMode().equals(result.getMode())
+        || !base.getUnit().equals(result.getUnit())) {
+
+        report.printf("  %s: baseline is in %s %s, not %s %s%n",
+          result.getKey(), base.getMode(), base.getUnit(), result.getMode(),
+          result.getUnit());
+        regressions.add(String.format(
+          "%s: baseline is in %s %s, not %s %s - record it again with"
+          + " --update-baseline", result.getKey(), base.getMode(),
+          base.getUnit(), result.getMode(), result.getUnit()));
+        continue;
+      }
+
+      double change = (result.getScore() - base.getScore()) / base.getScore();
+      boolean worse = result.isHigherBetter() ?
+        -change > scoreTolerance : change > scoreTolerance;
+
+      report.printf("  %s: %.3f %s, baseline %.3f (%+.1f%%)%n",
+        result.getKey(), result.getScore(), result.getUnit(), base.getScore(),
+        change * 100);
+
+      if (worse) {
+        regressions.add(String.format(
+          "%s: score %.3f %s is %.1f%% worse than baseline %.3f (tolerance %.1f%%)",
+          result.getKey(), result.getScore(), result.getUnit(),
+          Math.abs(change) * 100, base.getScore(), scoreTolerance * 100));
+      }
+
+      double allocated = result.getAllocatedBytesPerOp();
+      double baseAllocated = base.getAllocatedBytesPerOp();
+      if (allocated != BenchmarkResult.UNKNOWN
+        && baseAllocated != BenchmarkResult.UNKNOWN
+        && allocated - baseAllocated > ALLOCATION_SLACK_BYTES
+        && allocated > baseAllocated * (1 + allocationTolerance)) {
+
+        regressions.add(String.format(
+          "%s: allocates %.1f B/op, up from baseline %.1f B/op (tolerance %.1f%%)",
+          result.getKey(), allocated, baseAllocated,
+          allocationTolerance * 100));
+      }
+    }
+
+    for (String key : baseline.getResults().keySet()) {
+      if (!current.getResults().containsKey(key)) {
+        report.printf("  %s: not run%n", key);
+      }
+    }
+
+    return regressions;
+  }
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.google.common.base.Objects;
+
+/**
+ * A JavaBean entity used by the benchmarks to exercise the reflect-based write
+ * path and bean property lookups during partitioning.
+ */
+public class BenchmarkEvent {
+
+  private long id;
+  private long timestamp;
+  private String username;
+  private String email;
+  private int status;
+  private String payload;
+
+  public BenchmarkEvent() {
+  }
+
+  public BenchmarkEvent(long id, long timestamp, String username, String email,
+      int status, String payload) {
+
+    this.id = id;
+    this.timestamp = timestamp;
+    this.username = username;
+    this.email = email;
+    this.status = status;
+    this.payload = payload;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public String getEmail() {
+    return email;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public String getPayload() {
+    return payload;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("id", id)
+      .add("timestamp", timestamp)
+      .add("username", username)
+      .add("email", email)
+      .add("status", status)
+      .add("payload", payload)
+      .toString();
+  }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.Format;
+import com.cloudera.data.Formats;
+import com.google.common.io.Resources;
+import java.io.IOException;
+import java.util.Random;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Shared schemas, entity generators and helpers for the dataset benchmarks.
+ */
+public class BenchmarkUtilities {
+
+  /**
+   * The schema for {@link BenchmarkEvent}s. This is not the reflected schema
+   * since readers would then materialize {@link BenchmarkEvent}s, which the
+   * Parquet reader can't do.
+   */
+  public static final Schema EVENT_SCHEMA;
+
+  static {
+    try {
+      EVENT_SCHEMA = new Schema.Parser().parse(Resources.getResource(
+        "schema/event.avsc").openStream());
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to load the event schema", e);
+    }
+  }
+
+  /**
+   * The combinations of file format and entity representation that the
+   * writers in this tree accept. Parquet writers only accept
+   * {@link org.apache.avro.generic.IndexedRecord}s, so there is no reflect
+   * variant for Parquet.
+   */
+  public enum Workload {
+    AVRO_GENERIC(Formats.AVRO, true),
+    AVRO_REFLECT(Formats.AVRO, false),
+    PARQUET_GENERIC(Formats.PARQUET, true);
+
+    private final Format format;
+    private final boolean generic;
+
+    Workload(Format format, boolean generic) {
+      this.format = format;
+      this.generic = generic;
+    }
+
+    public Format getFormat() {
+      return format;
+    }
+
+    public boolean isGeneric() {
+      return generic;
+    }
+  }
+
+  private BenchmarkUtilities() {
+  }
+
+  /**
+   * Generate {@code count} events with a fixed seed, so that every fork of a
+   * benchmark sees the same data. Usernames are drawn from a pool of
+   * {@code usernames} distinct values, which controls how many partitions a
+   * hash partitioner on {@code username} will touch.
+   */
+  public static BenchmarkEvent[] events(int count, int usernames) {
+    Random random = new Random(0xCDCL);
+    long now = System.currentTimeMillis();
+    BenchmarkEvent[] events = new BenchmarkEvent[count];
+
+    for (int i = 0; i < count; i++) {
+      String username = "user-" + random.nextInt(usernames);
+      events[i] = new BenchmarkEvent(i,
+        now - random.nextInt(7 * 24 * 60 * 60 * 1000), username,
+        username + "@example.com", 100 + random.nextInt(500),
+        Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+    }
+
+    return events;
+  }
+
+  /**
+   * Generate entities in the representation required by {@code workload}.
+   */
+  public static Object[] entities(Workload workload, int count, int usernames) {
+    BenchmarkEvent[] events = events(count, usernames);
+
+    if (!workload.isGeneric()) {
+      return events;
+    }
+
+    Object[] records = new Object[count];
+    for (int i = 0; i < count; i++) {
+      records[i] = toRecord(events[i]);
+    }
+    return records;
+  }
+
+  public static GenericData.Record toRecord(BenchmarkEvent event) {
+    return new GenericRecordBuilder(EVENT_SCHEMA)
+      .set("id", event.getId())
+      .set("timestamp", event.getTimestamp())
+      .set("username", event.getUsername())
+      .set("email", event.getEmail())
+      .set("status", event.getStatus())
+      .set("payload", event.getPayload())
+      .build();
+  }
+
+  /**
+   * Sum the length of all visible (i.e. committed data) files under
+   * {@code directory}, ignoring temporary, metadata and checksum files.
+   */
+  public static long dataBytes(FileSystem fileSystem, Path directory)
+    throws IOException {
+
+    long bytes = 0;
+
+    for (FileStatus status : fileSystem.listStatus(directory,
+      PathFilters.notHidden())) {
+
+      if (status.isDirectory()) {
+        bytes += dataBytes(fileSystem, status.getPath());
+      } else {
+        bytes += status.getLen();
+      }
+    }
+
+    return bytes;
+  }
+
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.DatasetDescriptor;
+import com.cloudera.data.DatasetReader;
+import com.cloudera.data.DatasetWriter;
+import com.cloudera.data.Formats;
+import com.cloudera.data.filesystem.BenchmarkUtilities.Workload;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>
+ * Benchmarks for scanning a {@link FileSystemDataset} through
+ * {@link MultiFileDatasetReader}, against the local {@link FileSystem}.
+ * </p>
+ * <p>
+ * Each trial lays out {@link #TOTAL_RECORDS} entities over {@code files} data
+ * files, nested {@code depth} directories deep with a fan out of
+ * {@link #FAN_OUT} per level, so the same data can be read from 10 large
+ * files or 50,000 tiny ones, flat or four levels of partitions down. The scan
+ * is then measured in three stages so it is clear where the time goes:
+ * </p>
+ * <ul>
+ * <li>{@link #list(FileCounters)} enumerates data files as
+ * {@link FileSystemDataset#getReader()} does.</li>
+ * <li>{@link #open(FileCounters)} lists, then opens and closes a reader on
+ * every file without decoding any entities.</li>
+ * <li>{@link #scan(RecordCounters, Blackhole)} reads every entity through
+ * {@link FileSystemDataset#getReader()}.</li>
+ * </ul>
+ * <p>
+ * The primary score is complete passes over the dataset per second. Secondary
+ * results report files/s for {@code list} and {@code open}, and records/s for
+ * {@code scan}. Comparing the time per pass of each stage shows the cost of
+ * listing, of opening files and of decoding.
+ * </p>
+ * <pre>
+ * java -jar target/benchmarks.jar DatasetReaderBenchmark -p files=50000
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DatasetReaderBenchmark {
+
+  static final int TOTAL_RECORDS = 200000;
+  static final int FAN_OUT = 10;
+
+  @Param({ "AVRO_GENERIC", "PARQUET_GENERIC" })
+  public Workload workload;
+
+  @Param({ "10", "1000", "50000" })
+  public int files;
+
+  @Param({ "0", "1", "4" })
+  public int depth;
+
+  private FileSystem fileSystem;
+  private Path root;
+  private FileSystemDataset dataset;
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class FileCounters {
+    public long files;
+  }
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class RecordCounters {
+    public long records;
+  }
+
+  @Setup(Level.Trial)
+  public void setUpTrial() throws IOException {
+    fileSystem = FileSystem.getLocal(new Configuration());
+    root = new Path(Files.createTempDir().getAbsolutePath());
+
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+      .schema(BenchmarkUtilities.EVENT_SCHEMA)
+      .format(workload.getFormat())
+      .get();
+
+    dataset = (FileSystemDataset) new FileSystemDatasetRepository(fileSystem,
+      root).create("events", descriptor);
+
+    /*
+     * Every file holds the same entities; only the layout varies between
+     * trials. Files are written directly rather than through a partition
+     * strategy so that depth and file count can be chosen independently; the
+     * reader only walks directories, so it can't tell the difference.
+     */
+    Object[] entities = BenchmarkUtilities.entities(workload,
+      Math.max(1, TOTAL_RECORDS / files), 1000);
+
+    for (int i = 0; i < files; i++) {
+      Path dataFile = new Path(directoryFor(i),
+        i + "." + workload.getFormat().getExtension());
+      DatasetWriter<Object> writer;
+
+      if (Formats.PARQUET.equals(workload.getFormat())) {
+        writer = new ParquetFileSystemDatasetWriter<Object>(fileSystem,
+          dataFile, BenchmarkUtilities.EVENT_SCHEMA);
+      } else {
+        writer = new FileSystemDatasetWriter.Builder<Object>()
+          .fileSystem(fileSystem)
+          .path(dataFile)
+          .schema(BenchmarkUtilities.EVENT_SCHEMA)
+          .get();
+      }
+
+      writer.open();
+      try {
+        for (Object entity : entities) {
+          writer.write(entity);
+        }
+      } finally {
+        writer.close();
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownTrial() throws IOException {
+    fileSystem.delete(root, true);
+  }
+
+  @Benchmark
+  public List<Path> list(FileCounters counters) throws IOException {
+    List<Path> paths = Lists.newArrayList();
+
+    dataset.accumulateDatafilePaths(dataset.getDirectory(), paths);
+
+    counters.files += paths.size();
+    return paths;
+  }
+
+  @Benchmark
+  public void open(FileCounters counters) throws IOException {
+    List<Path> paths = list(counters);
+
+    for (Path path : paths) {
+      DatasetReader<Object> reader;
+
+      if (Formats.PARQUET.equals(workload.getFormat())) {
+        reader = new ParquetFileSystemDatasetReader<Object>(fileSystem, path,
+          BenchmarkUtilities.EVENT_SCHEMA);
+      } else {
+        reader = new FileSystemDatasetReader<Object>(fileSystem, path,
+          BenchmarkUtilities.EVENT_SCHEMA);
+      }
+
+      reader.open();
+      reader.close();
+    }
+  }
+
+  @Benchmark
+  public void scan(RecordCounters counters, Blackhole blackhole) {
+    DatasetReader<Object> reader = dataset.getReader();
+
+    reader.open();
+    try {
+      while (reader.hasNext()) {
+        blackhole.consume(reader.read());
+        counters.records++;
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Spread files over {@code FAN_OUT ^ depth} leaf directories, named like
+   * partition directories (e.g. {@code p0=3/p1=7}).
+   */
+  private Path directoryFor(int file) {
+    Path directory = dataset.getDirectory();
+    int remainder = file;
+
+    for (int level = 0; level < depth; level++) {
+      directory = new Path(directory, "p" + level + "=" + (remainder % FAN_OUT));
+      remainder /= FAN_OUT;
+    }
+
+    return directory;
+  }
+
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.DatasetWriter;
+import com.cloudera.data.Formats;
+import com.cloudera.data.filesystem.BenchmarkUtilities.Workload;
+import com.google.common.io.Files;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Benchmarks for {@link FileSystemDatasetWriter} and
+ * {@link ParquetFileSystemDatasetWriter} against the local {@link FileSystem}.
+ * </p>
+ * <p>
+ * Each invocation opens a writer, writes {@link #RECORDS_PER_INVOCATION}
+ * pre-generated entities, and closes (commits) it, so open, rename and the
+ * final flush are included in the measurement. The primary score is records
+ * per second; the {@code records} and {@code bytes} secondary results report
+ * records/s and committed data bytes/s, which are counted at the end of each
+ * iteration. Run with {@code -prof gc} to add the allocation rate, e.g.
+ * </p>
+ * <pre>
+ * java -jar target/benchmarks.jar DatasetWriterBenchmark -prof gc
+ * </pre>
+ *
+ * @see PartitionedDatasetWriterBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(DatasetWriterBenchmark.RECORDS_PER_INVOCATION)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DatasetWriterBenchmark {
+
+  static final int RECORDS_PER_INVOCATION = 10000;
+
+  @Param({ "AVRO_GENERIC", "AVRO_REFLECT", "PARQUET_GENERIC" })
+  public Workload workload;
+
+  @Param({ "true", "false" })
+  public boolean compression;
+
+  private FileSystem fileSystem;
+  private Path root;
+  private Object[] entities;
+
+  private int iteration;
+  private Path iterationDirectory;
+  private int invocation;
+  private Path directory;
+
+  @Setup(Level.Trial)
+  public void setUpTrial() throws IOException {
+    fileSystem = FileSystem.getLocal(new Configuration());
+    root = new Path(Files.createTempDir().getAbsolutePath());
+    entities = BenchmarkUtilities.entities(workload, RECORDS_PER_INVOCATION,
+      1000);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownTrial() throws IOException {
+    fileSystem.delete(root, true);
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpIteration() {
+    iterationDirectory = new Path(root, "iteration-" + iteration++);
+  }
+
+  @Setup(Level.Invocation)
+  public void setUpInvocation() throws IOException {
+    directory = new Path(iterationDirectory, "run-" + invocation++);
+    fileSystem.mkdirs(directory);
+  }
+
+  @Benchmark
+  public void writeFile(WriteCounters counters) throws IOException {
+    Path dataFile = new Path(directory,
+      "data." + workload.getFormat().getExtension());
+    DatasetWriter<Object> writer;
+
+    if (Formats.PARQUET.equals(workload.getFormat())) {
+      writer = new ParquetFileSystemDatasetWriter<Object>(fileSystem, dataFile,
+        BenchmarkUtilities.EVENT_SCHEMA, compression);
+    } else {
+      writer = new FileSystemDatasetWriter.Builder<Object>()
+        .fileSystem(fileSystem)
+        .path(dataFile)
+        .schema(BenchmarkUtilities.EVENT_SCHEMA)
+        .enableCompression(compression)
+        .get();
+    }
+
+    write(writer, counters);
+  }
+
+  private void write(DatasetWriter<Object> writer, WriteCounters counters)
+    throws IOException {
+
+    writer.open();
+    try {
+      for (Object entity : entities) {
+        writer.write(entity);
+      }
+    } finally {
+      writer.close();
+    }
+
+    counters.wrote(entities.length, fileSystem, iterationDirectory);
+  }
+
+}
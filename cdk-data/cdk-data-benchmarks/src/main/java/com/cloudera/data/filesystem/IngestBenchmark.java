@@ -0,0 +1,248 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.cdk.tools.CombinedLogFormatParser;
+import com.cloudera.data.DatasetDescriptor;
+import com.cloudera.data.DatasetWriter;
+import com.cloudera.data.PartitionStrategy;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import org.apache.avro.generic.GenericData;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * An end to end ingest benchmark: synthetic Combined Log Format lines are
+ * parsed with {@link CombinedLogFormatParser} and written through a
+ * {@link PartitionedDatasetWriter} to a dataset on local disk, partitioned by
+ * year, month, day and hour of the request time and then by a hash of the
+ * client host.
+ * </p>
+ * <p>
+ * Each iteration writes to a fresh dataset with a single writer that is
+ * opened before and closed after the iteration, as a long running ingest
+ * process would. Each benchmark operation parses and writes one line.
+ * </p>
+ * <ul>
+ * <li>{@link #ingest()} reports sustained records/s.</li>
+ * <li>{@link #ingestLatency()} samples the time taken by each line, reporting
+ * the p99 (and other percentiles) of parse plus {@code write()}.</li>
+ * </ul>
+ * <p>
+ * At the end of every iteration the number of data files produced, their
+ * size distribution and the peak heap used during the iteration are printed.
+ * </p>
+ * <pre>
+ * java -jar target/benchmarks.jar IngestBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xms1g", "-Xmx1g" })
+public class IngestBenchmark {
+
+  /* Must be a power of two; see ingestLine(). */
+  static final int LINES = 65536;
+
+  private static final String[] METHODS = { "GET", "GET", "GET", "POST", "HEAD" };
+  private static final String[] PATHS = { "/", "/index.html", "/search",
+    "/images/logo.png", "/css/site.css", "/js/app.js", "/api/v1/events",
+    "/products/12345", "/cart", "/checkout" };
+  private static final int[] STATUSES = { 200, 200, 200, 200, 200, 200, 304,
+    301, 404, 500 };
+  private static final String[] USER_AGENTS = {
+    "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/27.0.1453.116 Safari/537.36",
+    "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_8_4) AppleWebKit/536.30.1 (KHTML, like Gecko) Version/6.0.5 Safari/536.30.1",
+    "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+    "Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:21.0) Gecko/20100101 Firefox/21.0" };
+
+  /**
+   * Number of hash buckets for the host, within each hour. The writer caches
+   * at most ten partition writers, so 16 also measures cache churn.
+   */
+  @Param({ "4", "16" })
+  public int buckets;
+
+  private FileSystem fileSystem;
+  private Path root;
+  private DatasetDescriptor descriptor;
+  private String[] lines;
+  private CombinedLogFormatParser parser;
+
+  private int iteration;
+  private int index;
+  private Path directory;
+  private DatasetWriter<GenericData.Record> writer;
+
+  @Setup(Level.Trial)
+  public void setUpTrial() throws IOException {
+    fileSystem = FileSystem.getLocal(new Configuration());
+    root = new Path(Files.createTempDir().getAbsolutePath());
+    descriptor = new DatasetDescriptor.Builder()
+      .schema(CombinedLogFormatParser.getSchema())
+      .partitionStrategy(new PartitionStrategy.Builder()
+        .year("timestamp", "year")
+        .month("timestamp", "month")
+        .day("timestamp", "day")
+        .hour("timestamp", "hour")
+        .hash("host", "host_bucket", buckets)
+        .get())
+      .get();
+    lines = lines(LINES);
+    parser = new CombinedLogFormatParser();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownTrial() throws IOException {
+    fileSystem.delete(root, true);
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpIteration() {
+    directory = new Path(root, "run-" + iteration++);
+    writer = new FileSystemDatasetRepository(fileSystem, directory)
+      .create("logs", descriptor).getWriter();
+    writer.open();
+
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      pool.resetPeakUsage();
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDownIteration() throws IOException {
+    writer.close();
+
+    long peakHeap = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peakHeap += pool.getPeakUsage().getUsed();
+      }
+    }
+
+    List<Long> sizes = Lists.newArrayList();
+    accumulateFileSizes(directory, sizes);
+    Collections.sort(sizes);
+
+    if (sizes.isEmpty()) {
+      System.out.printf("%nfiles: 0, peak heap: %d MB%n", peakHeap >> 20);
+    } else {
+      System.out.printf(
+        "%nfiles: %d, size min: %d KB, p50: %d KB, p90: %d KB, max: %d KB, peak heap: %d MB%n",
+        sizes.size(), sizes.get(0) >> 10, percentile(sizes, 0.5) >> 10,
+        percentile(sizes, 0.9) >> 10, sizes.get(sizes.size() - 1) >> 10,
+        peakHeap >> 20);
+    }
+
+    fileSystem.delete(directory, true);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public void ingest() {
+    ingestLine();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void ingestLatency() {
+    ingestLine();
+  }
+
+  private void ingestLine() {
+    writer.write(parser.parse(lines[index++ & (LINES - 1)]));
+  }
+
+  /**
+   * Generate {@code count} log lines with a fixed seed. Request times start at
+   * midnight and advance by a second on average, so consecutive lines cover
+   * most of a day and roll through hourly partitions in order.
+   */
+  static String[] lines(int count) {
+    Random random = new Random(0xCDCL);
+    SimpleDateFormat dateFormat = new SimpleDateFormat(
+      "dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
+    dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    long time = 1370044800000L; // 2013-06-01T00:00:00Z
+
+    String[] lines = new String[count];
+    for (int i = 0; i < count; i++) {
+      time += random.nextInt(2000);
+      String host = "10.0." + random.nextInt(4) + "." + random.nextInt(250);
+      String user = random.nextInt(10) == 0 ? "user" + random.nextInt(100) : "-";
+      int status = STATUSES[random.nextInt(STATUSES.length)];
+      String size = status == 304 ? "-" : Integer.toString(random.nextInt(100000));
+      String referrer = random.nextBoolean() ? "-"
+        : "http://www.example.com" + PATHS[random.nextInt(PATHS.length)];
+
+      lines[i] = host + " - " + user + " [" + dateFormat.format(time) + "] \""
+        + METHODS[random.nextInt(METHODS.length)] + " "
+        + PATHS[random.nextInt(PATHS.length)] + "?id=" + random.nextInt(1000000)
+        + " HTTP/1.1\" " + status + " " + size + " \"" + referrer + "\" \""
+        + USER_AGENTS[random.nextInt(USER_AGENTS.length)] + "\"";
+    }
+
+    return lines;
+  }
+
+  private void accumulateFileSizes(Path path, List<Long> sizes)
+    throws IOException {
+
+    for (FileStatus status : fileSystem.listStatus(path, PathFilters.notHidden())) {
+      if (status.isDirectory()) {
+        accumulateFileSizes(status.getPath(), sizes);
+      } else {
+        sizes.add(status.getLen());
+      }
+    }
+  }
+
+  private static long percentile(List<Long> sorted, double percentile) {
+    return sorted.get((int) Math.ceil(percentile * sorted.size()) - 1);
+  }
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import java.io.IOException;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * <p>
+ * The {@code records} and {@code bytes} secondary results of the writer
+ * benchmarks.
+ * </p>
+ * <p>
+ * Records are counted as they are written. Committed data bytes are counted
+ * at the end of each iteration, outside the measurement, by walking the
+ * directory the iteration wrote to, which is then deleted. JMH doesn't share
+ * a state between a benchmark and the helpers of another state, so the
+ * benchmark passes its directory in with the records it wrote.
+ * </p>
+ */
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class WriteCounters {
+
+  public long records;
+  public long bytes;
+
+  private FileSystem fileSystem;
+  private Path directory;
+
+  /**
+   * Count {@code count} records written under {@code directory}, whose bytes
+   * are counted at the end of the iteration.
+   */
+  void wrote(long count, FileSystem fileSystem, Path directory) {
+    this.records += count;
+    this.fileSystem = fileSystem;
+    this.directory = directory;
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDownIteration() throws IOException {
+    if (directory != null) {
+      bytes += BenchmarkUtilities.dataBytes(fileSystem, directory);
+      fileSystem.delete(directory, true);
+      directory = null;
+    }
+  }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.partition;
+
+import com.cloudera.data.FieldPartitioner;
+import com.cloudera.data.filesystem.BenchmarkEvent;
+import com.cloudera.data.filesystem.BenchmarkUtilities;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link FieldPartitioner#apply(Object)} of each of the
+ * partitioners in this package. Each invocation partitions the next of a fixed
+ * set of pre-generated field values, taken from the same events used by the
+ * dataset benchmarks.
+ *
+ * @see com.cloudera.data.PartitionStrategyBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FieldPartitionerBenchmark {
+
+  /* Must be a power of two; see next(). */
+  static final int VALUES = 1024;
+
+  private FieldPartitioner hash;
+  private FieldPartitioner identity;
+  private FieldPartitioner intRange;
+  private FieldPartitioner range;
+  private FieldPartitioner list;
+  private FieldPartitioner year;
+  private FieldPartitioner month;
+  private FieldPartitioner day;
+  private FieldPartitioner hour;
+  private FieldPartitioner minute;
+
+  private String[] usernames;
+  private Integer[] statuses;
+  private Long[] timestamps;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    BenchmarkEvent[] events = BenchmarkUtilities.events(VALUES, 100);
+
+    usernames = new String[VALUES];
+    statuses = new Integer[VALUES];
+    timestamps = new Long[VALUES];
+
+    for (int i = 0; i < VALUES; i++) {
+      usernames[i] = events[i].getUsername();
+      statuses[i] = events[i].getStatus();
+      timestamps[i] = events[i].getTimestamp();
+    }
+
+    hash = PartitionFunctions.hash("username", 64);
+    identity = PartitionFunctions.identity("username", 100);
+    intRange = new IntRangeFieldPartitioner("status", 199, 299, 399, 499, 599);
+    range = new RangeFieldPartitioner("username", "user-24", "user-49",
+      "user-74", "user-99");
+
+    List<Set<?>> sets = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      ImmutableSet.Builder<String> set = ImmutableSet.builder();
+      for (int j = 0; j < 10; j++) {
+        set.add("user-" + (i * 10 + j));
+      }
+      sets.add(set.build());
+    }
+    list = new ListFieldPartitioner("username", sets);
+
+    year = PartitionFunctions.year("timestamp", "year");
+    month = PartitionFunctions.month("timestamp", "month");
+    day = PartitionFunctions.day("timestamp", "day");
+    hour = PartitionFunctions.hour("timestamp", "hour");
+    minute = PartitionFunctions.minute("timestamp", "minute");
+  }
+
+  @Benchmark
+  public Object hash() {
+    return hash.apply(usernames[next()]);
+  }
+
+  @Benchmark
+  public Object identity() {
+    return identity.apply(usernames[next()]);
+  }
+
+  @Benchmark
+  public Object intRange() {
+    return intRange.apply(statuses[next()]);
+  }
+
+  @Benchmark
+  public Object range() {
+    return range.apply(usernames[next()]);
+  }
+
+  @Benchmark
+  public Object list() {
+    return list.apply(usernames[next()]);
+  }
+
+  @Benchmark
+  public Object year() {
+    return year.apply(timestamps[next()]);
+  }
+
+  @Benchmark
+  public Object month() {
+    return month.apply(timestamps[next()]);
+  }
+
+  @Benchmark
+  public Object day() {
+    return day.apply(timestamps[next()]);
+  }
+
+  @Benchmark
+  public Object hour() {
+    return hour.apply(timestamps[next()]);
+  }
+
+  @Benchmark
+  public Object minute() {
+    return minute.apply(timestamps[next()]);
+  }
+
+  private int next() {
+    return index++ & (VALUES - 1);
+  }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRegressionGate {
+
+  private static final String THROUGHPUT = "thrpt";
+  private static final String TIME_PER_OP = "avgt";
+
+  private RegressionGate gate;
+  private PrintStream report;
+
+  @Before
+  public void setUp() {
+    gate = new RegressionGate(0.1, 0.1);
+    report = new PrintStream(ByteStreams.nullOutputStream());
+  }
+
+  @Test
+  public void testThroughputRegressesWhenLower() {
+    Assert.assertTrue(compare(
+      result(THROUGHPUT, 100, "ops/s"), result(THROUGHPUT, 150, "ops/s"))
+      .isEmpty());
+    Assert.assertEquals(1, compare(
+      result(THROUGHPUT, 100, "ops/s"), result(THROUGHPUT, 80, "ops/s"))
+      .size());
+  }
+
+  @Test
+  public void testTimePerOpRegressesWhenHigher() {
+    Assert.assertTrue(compare(
+      result(TIME_PER_OP, 100, "us/op"), result(TIME_PER_OP, 50, "us/op"))
+      .isEmpty());
+    Assert.assertEquals(1, compare(
+      result(TIME_PER_OP, 100, "us/op"), result(TIME_PER_OP, 120, "us/op"))
+      .size());
+  }
+
+  @Test
+  public void testScoreTolerance() {
+    // a change of exactly the tolerance passes
+    Assert.assertTrue(compare(
+      result(THROUGHPUT, 100, "ops/s"), result(THROUGHPUT, 90, "ops/s"))
+      .isEmpty());
+    Assert.assertEquals(1, compare(
+      result(THROUGHPUT, 100, "ops/s"), result(THROUGHPUT, 89, "ops/s"))
+      .size());
+
+    Assert.assertTrue(compare(
+      result(TIME_PER_OP, 100, "us/op"), result(TIME_PER_OP, 110, "us/op"))
+      .isEmpty());
+    Assert.assertEquals(1, compare(
+      result(TIME_PER_OP, 100, "us/op"), result(TIME_PER_OP, 111, "us/op"))
+      .size());
+  }
+
+  @Test
+  public void testAllocationTolerance() {
+    Assert.assertTrue(compare(allocating(1000), allocating(1100)).isEmpty());
+    Assert.assertEquals(1,
+      compare(allocating(1000), allocating(1101)).size());
+  }
+
+  @Test
+  public void testAllocationSlack() {
+    // doubling a small allocation is within the slack
+    Assert.assertTrue(compare(allocating(10), allocating(20)).isEmpty());
+    Assert.assertTrue(compare(allocating(100),
+      allocating(100 + RegressionGate.ALLOCATION_SLACK_BYTES)).isEmpty());
+    Assert.assertEquals(1, compare(allocating(100),
+      allocating(101 + RegressionGate.ALLOCATION_SLACK_BYTES)).size());
+  }
+
+  @Test
+  public void testUnknownAllocation() {
+    Assert.assertTrue(compare(allocating(BenchmarkResult.UNKNOWN),
+      allocating(1000)).isEmpty());
+    Assert.assertTrue(compare(allocating(100),
+      allocating(BenchmarkResult.UNKNOWN)).isEmpty());
+  }
+
+  @Test
+  public void testMissingBaseline() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    List<String> regressions = gate.compare(
+      results(result("other", THROUGHPUT, 100, "ops/s")),
+      results(result(THROUGHPUT, 1, "ops/s")), new PrintStream(out, true));
+
+    Assert.assertTrue(regressions.isEmpty());
+    String printed = out.toString();
+    Assert.assertTrue(printed,
+      printed.contains("bench: 1.000 ops/s (no baseline)"));
+    Assert.assertTrue(printed, printed.contains("other: not run"));
+  }
+
+  @Test
+  public void testModeMismatchFails() {
+    List<String> regressions = compare(
+      result(THROUGHPUT, 100, "ops/s"), result(TIME_PER_OP, 100, "ops/s"));
+
+    Assert.assertEquals(1, regressions.size());
+    Assert.assertTrue(regressions.get(0),
+      regressions.get(0).contains("--update-baseline"));
+  }
+
+  @Test
+  public void testUnitMismatchFails() {
+    Assert.assertEquals(1, compare(
+      result(TIME_PER_OP, 100, "us/op"), result(TIME_PER_OP, 100, "ms/op"))
+      .size());
+  }
+
+  private List<String> compare(BenchmarkResult baseline,
+    BenchmarkResult current) {
+    return gate.compare(results(baseline), results(current), report);
+  }
+
+  private static BenchmarkResults results(BenchmarkResult result) {
+    return new BenchmarkResults("rev", Arrays.asList(result));
+  }
+
+  private static BenchmarkResult result(String mode, double score,
+    String unit) {
+    return result("bench", mode, score, unit);
+  }
+
+  private static BenchmarkResult result(String benchmark, String mode,
+    double score, String unit) {
+    return new BenchmarkResult(benchmark,
+      Collections.<String, String>emptyMap(), mode, score, 0, unit,
+      BenchmarkResult.UNKNOWN);
+  }
+
+  private static BenchmarkResult allocating(double bytesPerOp) {
+    return new BenchmarkResult("bench", ImmutableMap.of("size", "1"),
+      THROUGHPUT, 100, 0, "ops/s", bytesPerOp);
+  }
+
+}
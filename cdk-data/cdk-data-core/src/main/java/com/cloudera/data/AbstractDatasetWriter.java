@@ -0,0 +1,47 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A base for {@link DatasetWriter} implementations that writes batches one
+ * entity at a time with {@link #write(Object)}.
+ * </p>
+ * <p>
+ * Implementations that can write a batch more cheaply should override
+ * {@link #writeAll(Iterable)}, which {@link #writeAll(Object[])} calls.
+ * </p>
+ *
+ * @param <E> The type of entity accepted by this writer.
+ * @since 0.4.0
+ */
+public abstract class AbstractDatasetWriter<E> implements DatasetWriter<E> {
+
+  @Override
+  public void writeAll(Iterable<? extends E> entities) {
+    for (E entity : entities) {
+      write(entity);
+    }
+  }
+
+  @Override
+  public void writeAll(E[] entities) {
+    writeAll(Arrays.asList(entities));
+  }
+
+}
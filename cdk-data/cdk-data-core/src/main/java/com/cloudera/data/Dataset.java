@@ -15,6 +15,7 @@
  */
 package com.cloudera.data;
 
+import java.nio.ByteBuffer;
 import org.apache.avro.Schema;
 
 import javax.annotation.concurrent.Immutable;
@@ -95,6 +96,42 @@ public interface Dataset {
    */
   <E> DatasetWriter<E> getWriter();
 
+  /**
+   * <p>
+   * Get a {@link DatasetWriter} that many threads may write to at once.
+   * </p>
+   * <p>
+   * Unlike the writer returned by {@link #getWriter()}, the returned writer is
+   * thread-safe. Implementations may write entities written by different
+   * threads to different data files, and may order them differently than they
+   * were written. Closing the writer commits the data written by all threads.
+   * </p>
+   *
+   * @throws DatasetException
+   * @since 0.4.0
+   */
+  <E> DatasetWriter<E> getConcurrentWriter();
+
+  /**
+   * <p>
+   * Get a {@link DatasetWriter} for entities that are already encoded, such as
+   * the body of an event written by an Avro serializer.
+   * </p>
+   * <p>
+   * Each {@link ByteBuffer} written must hold, from its position to its limit,
+   * the Avro binary encoding of one entity, written with this dataset's
+   * schema. Implementations may store the bytes as they are, rather than
+   * decoding and encoding the entity again. They only need to decode the
+   * fields that decide the entity's partition, and formats that don't store
+   * Avro datums as they are may decode the whole entity. Buffers may be
+   * reused once they are written.
+   * </p>
+   *
+   * @throws DatasetException
+   * @since 0.4.0
+   */
+  DatasetWriter<ByteBuffer> getEncodedWriter();
+
   /**
    * <p>
    * Get an appropriate {@link DatasetReader} implementation based on the
@@ -112,6 +149,23 @@ public interface Dataset {
    */
   <E> DatasetReader<E> getReader();
 
+  /**
+   * <p>
+   * Describe what a reader returned by {@link #getReader()} would read now,
+   * without reading any records: the partitions and data files it would
+   * scan, their sizes, formats and codecs, and the file system calls made to
+   * find them.
+   * </p>
+   * <p>
+   * Finding each file's codec reads its header, so planning costs about as
+   * much as opening a reader.
+   * </p>
+   *
+   * @throws DatasetException
+   * @since 0.4.0
+   */
+  ReadPlan explain();
+
   /**
    * <p>
    * Return partitions, if this dataset is partitioned.
@@ -18,6 +18,8 @@ package com.cloudera.data;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.common.io.Closer;
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -33,6 +35,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Map;
+import java.util.Set;
 import org.apache.avro.reflect.ReflectData;
 
 /**
@@ -45,6 +49,12 @@ import org.apache.avro.reflect.ReflectData;
  * class are used to hold this information. Users are strongly encouraged to use
  * the inner {@link Builder} to create new instances.
  * </p>
+ * <p>
+ * A descriptor may also hold named string properties that tune how the
+ * dataset is stored, such as the compression codec used by writers. Properties
+ * are stored with the rest of the descriptor. Implementations ignore
+ * properties they don't recognize.
+ * </p>
  */
 @Immutable
 public class DatasetDescriptor {
@@ -53,6 +63,7 @@ public class DatasetDescriptor {
   private final URL schemaUrl;
   private final Format format;
   private final PartitionStrategy partitionStrategy;
+  private final Map<String, String> properties;
 
   /**
    * Create an instance of this class with the supplied {@link Schema},
@@ -62,20 +73,23 @@ public class DatasetDescriptor {
   public DatasetDescriptor(Schema schema, @Nullable PartitionStrategy
       partitionStrategy) {
 
-    this(schema, null, Formats.AVRO, partitionStrategy);
+    this(schema, null, Formats.AVRO, partitionStrategy,
+      ImmutableMap.<String, String>of());
   }
 
   /**
    * Create an instance of this class with the supplied {@link Schema}, optional URL,
-   * {@link Format} and optional {@link PartitionStrategy}.
+   * {@link Format}, optional {@link PartitionStrategy} and properties.
    */
   DatasetDescriptor(Schema schema, @Nullable URL schemaUrl, Format format,
-      @Nullable PartitionStrategy partitionStrategy) {
+      @Nullable PartitionStrategy partitionStrategy,
+      Map<String, String> properties) {
 
     this.schema = schema;
     this.schemaUrl = schemaUrl;
     this.format = format;
     this.partitionStrategy = partitionStrategy;
+    this.properties = ImmutableMap.copyOf(properties);
   }
 
   /**
@@ -137,10 +151,39 @@ public class DatasetDescriptor {
     return partitionStrategy != null;
   }
 
+  /**
+   * Get the value of the named property, or <code>null</code> if it isn't set.
+   *
+   * @since 0.4.0
+   */
+  @Nullable
+  public String getProperty(String name) {
+    return properties.get(name);
+  }
+
+  /**
+   * Returns true if the named property is set, false otherwise.
+   *
+   * @since 0.4.0
+   */
+  public boolean hasProperty(String name) {
+    return properties.containsKey(name);
+  }
+
+  /**
+   * Get the names of all properties that are set.
+   *
+   * @since 0.4.0
+   */
+  public Set<String> listProperties() {
+    return properties.keySet();
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this).add("schema", schema)
-      .add("partitionStrategy", partitionStrategy).toString();
+      .add("partitionStrategy", partitionStrategy)
+      .add("properties", properties).toString();
   }
 
   /**
@@ -152,6 +195,24 @@ public class DatasetDescriptor {
     private URL schemaUrl;
     private Format format = Formats.AVRO;
     private PartitionStrategy partitionStrategy;
+    private Map<String, String> properties = Maps.newHashMap();
+
+    public Builder() {
+    }
+
+    /**
+     * Create a builder configured like an existing descriptor, including its
+     * properties.
+     *
+     * @since 0.4.0
+     */
+    public Builder(DatasetDescriptor descriptor) {
+      this.schema = descriptor.getSchema();
+      this.schemaUrl = descriptor.getSchemaUrl();
+      this.format = descriptor.getFormat();
+      this.partitionStrategy = descriptor.partitionStrategy;
+      this.properties.putAll(descriptor.properties);
+    }
 
     /**
      * Configure the dataset's schema. A schema is required, and may be set
@@ -334,6 +395,21 @@ public class DatasetDescriptor {
       return this;
     }
 
+    /**
+     * Set a property. Optional. Setting a property again replaces its value.
+     *
+     * @return An instance of the builder for method chaining.
+     * @since 0.4.0
+     */
+    public Builder property(String name, String value) {
+      Preconditions.checkArgument(name != null, "Property name can not be null");
+      Preconditions.checkArgument(value != null,
+        "Value of property:%s can not be null", name);
+
+      properties.put(name, value);
+      return this;
+    }
+
     /**
      * Get an instance of the configured dataset descriptor. Subsequent calls
      * will produce new instances that are similarly configure.
@@ -343,7 +419,8 @@ public class DatasetDescriptor {
       Preconditions.checkState(schema != null,
         "Descriptor schema may not be null");
 
-      return new DatasetDescriptor(schema, schemaUrl, format, partitionStrategy);
+      return new DatasetDescriptor(schema, schemaUrl, format, partitionStrategy,
+        properties);
     }
 
   }
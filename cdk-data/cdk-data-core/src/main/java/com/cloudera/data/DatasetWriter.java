@@ -29,7 +29,8 @@ import javax.annotation.concurrent.NotThreadSafe;
  * containing dataset's {@link Dataset#getWriter()} method to get an appropriate
  * implementation. Users should receive an instance of this interface from a
  * dataset, call {@link #open()} to prepare for IO operations, invoke
- * {@link #write(Object)} and {@link #flush()} as necessary, and
+ * {@link #write(Object)} (or {@link #writeAll(Iterable)}) and
+ * {@link #flush()} as necessary, and
  * {@link #close()} when they are done, or no more data exists.
  * </p>
  * <p>
@@ -49,6 +50,10 @@ import javax.annotation.concurrent.NotThreadSafe;
  * Implementations of {@link DatasetWriter} are typically not thread-safe; that is,
  * the behavior when accessing a single instance from multiple threads is undefined.
  * </p>
+ * <p>
+ * Implementations may extend {@link AbstractDatasetWriter}, which writes
+ * batches one entity at a time.
+ * </p>
  *
  * @param <E> The type of entity accepted by this writer.
  */
@@ -85,6 +90,35 @@ public interface DatasetWriter<E> {
    */
   void write(E entity);
 
+  /**
+   * <p>
+   * Write a batch of entities to the associated dataset, in the order they are
+   * returned by {@code entities}.
+   * </p>
+   * <p>
+   * This is equivalent to calling {@link #write(Object)} for each entity, but
+   * implementations may do per-call work, such as checking their state or
+   * finding where to write, once per batch rather than once per entity. If
+   * this method throws an exception, some of the entities may have been
+   * written.
+   * </p>
+   *
+   * @param entities The entities to write
+   * @throws DatasetWriterException
+   * @since 0.4.0
+   */
+  void writeAll(Iterable<? extends E> entities);
+
+  /**
+   * Write a batch of entities to the associated dataset, as
+   * {@link #writeAll(Iterable)} does.
+   *
+   * @param entities The entities to write
+   * @throws DatasetWriterException
+   * @since 0.4.0
+   */
+  void writeAll(E[] entities);
+
   /**
    * <p>
    * Force or commit any outstanding data to storage.
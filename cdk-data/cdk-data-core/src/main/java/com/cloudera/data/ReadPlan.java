@@ -0,0 +1,226 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * <p>
+ * The data files a {@link DatasetReader} for a {@link Dataset} would read,
+ * as returned by {@link Dataset#explain()}.
+ * </p>
+ * <p>
+ * A plan lists each data file with its partition, size, format and
+ * compression codec, and the file system calls made to build the plan. Use
+ * {@link #describe()} for a human-readable report.
+ * </p>
+ *
+ * @since 0.4.0
+ */
+@Immutable
+public class ReadPlan {
+
+  private final String dataset;
+  private final Format format;
+  private final List<DataFile> files;
+  private final Map<String, Long> fileSystemCalls;
+  private final long planningNanos;
+
+  public ReadPlan(String dataset, Format format, List<DataFile> files,
+    Map<String, Long> fileSystemCalls, long planningNanos) {
+
+    this.dataset = dataset;
+    this.format = format;
+    this.files = ImmutableList.copyOf(files);
+    this.fileSystemCalls = ImmutableMap.copyOf(fileSystemCalls);
+    this.planningNanos = planningNanos;
+  }
+
+  public String getDataset() {
+    return dataset;
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
+  /**
+   * The data files that would be read, in the order they would be read.
+   */
+  public List<DataFile> getFiles() {
+    return files;
+  }
+
+  /**
+   * The partitions containing the data files, as paths relative to the
+   * dataset. An unpartitioned dataset has the single partition {@code ""}.
+   */
+  public SortedSet<String> getPartitions() {
+    ImmutableSortedSet.Builder<String> partitions =
+      ImmutableSortedSet.naturalOrder();
+    for (DataFile file : files) {
+      partitions.add(file.getPartition());
+    }
+    return partitions.build();
+  }
+
+  /**
+   * The total size of the data files, as stored.
+   */
+  public long getTotalBytes() {
+    long total = 0;
+    for (DataFile file : files) {
+      total += file.getLength();
+    }
+    return total;
+  }
+
+  /**
+   * The file system calls made to build this plan, by call (such as
+   * {@code listStatus} or {@code open}). Reading file headers to find their
+   * codecs costs an {@code open} per file, which the reader itself would
+   * make anyway. Calls are only counted on an instrumented file system, and
+   * are empty otherwise.
+   */
+  public Map<String, Long> getFileSystemCalls() {
+    return fileSystemCalls;
+  }
+
+  public long getPlanningTime(TimeUnit unit) {
+    return unit.convert(planningNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Return a multi-line, human-readable report of this plan.
+   */
+  public String describe() {
+    StringBuilder builder = new StringBuilder();
+
+    builder.append("Read plan for dataset:").append(dataset)
+      .append(" format:").append(format.getName()).append('\n');
+    builder.append("  ").append(getPartitions().size()).append(" partitions, ")
+      .append(files.size()).append(" files, ").append(getTotalBytes())
+      .append(" bytes\n");
+    builder.append("  planned in ").append(getPlanningTime(TimeUnit.MILLISECONDS))
+      .append("ms with file system calls:").append(fileSystemCalls)
+      .append('\n');
+
+    String partition = null;
+    for (DataFile file : files) {
+      if (!file.getPartition().equals(partition)) {
+        partition = file.getPartition();
+        builder.append("  partition:")
+          .append(partition.isEmpty() ? "(none)" : partition).append('\n');
+      }
+      builder.append("    ").append(file.getPath())
+        .append(" bytes:").append(file.getLength())
+        .append(" codec:").append(file.getCodec() != null ? file.getCodec() : "unknown")
+        .append('\n');
+    }
+
+    return builder.toString();
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("dataset", dataset)
+      .add("format", format)
+      .add("partitions", getPartitions().size())
+      .add("files", files.size())
+      .add("totalBytes", getTotalBytes())
+      .add("fileSystemCalls", fileSystemCalls)
+      .toString();
+  }
+
+  /**
+   * A data file in a {@link ReadPlan}.
+   */
+  @Immutable
+  public static class DataFile {
+
+    private final String path;
+    private final String partition;
+    private final long length;
+    private final Format format;
+    private final String codec;
+
+    public DataFile(String path, String partition, long length, Format format,
+      @Nullable String codec) {
+
+      this.path = path;
+      this.partition = partition;
+      this.length = length;
+      this.format = format;
+      this.codec = codec;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * The partition containing this file, relative to the dataset, or
+     * {@code ""} if the dataset is not partitioned.
+     */
+    public String getPartition() {
+      return partition;
+    }
+
+    /**
+     * The size of this file, as stored.
+     */
+    public long getLength() {
+      return length;
+    }
+
+    public Format getFormat() {
+      return format;
+    }
+
+    /**
+     * The compression codec of this file in lower case, such as
+     * {@code snappy} or {@code uncompressed}, or {@code null} if it couldn't
+     * be determined.
+     */
+    @Nullable
+    public String getCodec() {
+      return codec;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+        .add("path", path)
+        .add("partition", partition)
+        .add("length", length)
+        .add("format", format.getName())
+        .add("codec", codec)
+        .toString();
+    }
+
+  }
+
+}
@@ -0,0 +1,357 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.AbstractDatasetWriter;
+import com.cloudera.data.DatasetWriter;
+import com.cloudera.data.DatasetWriterException;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.Instrumented;
+import com.cloudera.data.metrics.MetricGroup;
+import com.cloudera.data.metrics.Timer;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A {@link DatasetWriter} that hands entities to a dedicated I/O thread, which
+ * writes them with a wrapped writer.
+ * </p>
+ * <p>
+ * {@link #write(Object)} only adds the entity to a bounded buffer, so the
+ * caller does not wait on encoding, compression or the file system unless the
+ * buffer is full. The I/O thread drains the buffer a batch at a time while
+ * callers go on filling it, and hands the entities buffered between flushes to
+ * the wrapped writer's {@code writeAll}. {@link #flush()} and {@link #close()} wait until
+ * every entity written before them has been written by the wrapped writer, and
+ * then flush or close it.
+ * </p>
+ * <p>
+ * Entities are written after {@code write} returns, so callers
+ * <strong>must not</strong> modify or reuse an entity once it is written.
+ * A failure in the I/O thread is thrown, wrapped in a
+ * {@link DatasetWriterException}, from the next call to {@code write},
+ * {@code flush} or {@code close}, and entities written after the failure are
+ * discarded. As with any writer, it must still be closed.
+ * </p>
+ * <p>
+ * This writer may be used from more than one thread, but entities written
+ * concurrently are written in no particular order. {@code close} waits for
+ * writes already in progress, whose entities are written before the wrapped
+ * writer is closed, and writes that start after it fail.
+ * </p>
+ *
+ * @param <E> The type of entity accepted by this writer.
+ */
+public class AsyncDatasetWriter<E> extends AbstractDatasetWriter<E>
+  implements Flushable, Closeable, Instrumented {
+
+  private static final Logger logger = LoggerFactory
+    .getLogger(AsyncDatasetWriter.class);
+
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private final DatasetWriter<E> writer;
+  private final BlockingQueue<Object> buffer;
+  private final int capacity;
+  private final MetricGroup metrics;
+  private final Timer bufferWaitTime;
+
+  /**
+   * Held to read by writes while they check the state and buffer entities,
+   * and to write by close while it changes the state, so that no entity is
+   * buffered after the close marker.
+   */
+  private final ReadWriteLock closeLock;
+
+  private Thread ioThread;
+  private volatile Throwable failure;
+  private volatile ReaderWriterState state;
+
+  public AsyncDatasetWriter(DatasetWriter<E> writer) {
+    this(writer, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param writer   The writer to write entities with, from the I/O thread.
+   * @param capacity The number of entities that may be written before they
+   *                 are written by {@code writer}.
+   */
+  public AsyncDatasetWriter(DatasetWriter<E> writer, int capacity) {
+    Preconditions.checkArgument(writer != null, "Writer can not be null");
+    Preconditions.checkArgument(capacity > 0,
+      "Capacity must be positive, not %s", capacity);
+
+    this.writer = writer;
+    this.capacity = capacity;
+    this.buffer = new ArrayBlockingQueue<Object>(capacity);
+    this.metrics = writer instanceof Instrumented ?
+      ((Instrumented) writer).getMetrics() : new MetricGroup("async");
+    this.bufferWaitTime = metrics.timer(DatasetMetrics.BUFFER_WAIT_TIME);
+    this.closeLock = new ReentrantReadWriteLock();
+    this.state = ReaderWriterState.NEW;
+  }
+
+  @Override
+  public synchronized void open() {
+    Preconditions.checkState(state.equals(ReaderWriterState.NEW),
+      "Unable to open a writer from state:%s", state);
+
+    // open on the caller's thread so that failures are thrown from here
+    writer.open();
+
+    ioThread = new Thread(new IOLoop(), "AsyncDatasetWriter-" + writer);
+    ioThread.setDaemon(true);
+    ioThread.start();
+
+    state = ReaderWriterState.OPEN;
+  }
+
+  @Override
+  public void write(E entity) {
+    closeLock.readLock().lock();
+    try {
+      Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+        "Attempt to write to a writer in state:%s", state);
+      Preconditions.checkArgument(entity != null, "Entity can not be null");
+      checkFailure();
+
+      enqueue(entity);
+    } finally {
+      closeLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void writeAll(Iterable<? extends E> entities) {
+    closeLock.readLock().lock();
+    try {
+      Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+        "Attempt to write to a writer in state:%s", state);
+      checkFailure();
+
+      for (E entity : entities) {
+        Preconditions.checkArgument(entity != null, "Entity can not be null");
+        enqueue(entity);
+      }
+    } finally {
+      closeLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Buffer an entity, waiting for room if the buffer is full. The I/O thread
+   * drains the buffer until it reaches the close marker, even after a
+   * failure, and close can't buffer the marker while a write is in progress,
+   * so the wait always ends.
+   */
+  private void enqueue(E entity) {
+    if (!buffer.offer(entity)) {
+      Timer.Context timer = bufferWaitTime.time();
+      try {
+        put(entity);
+      } finally {
+        timer.stop();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void flush() {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+      "Attempt to write to a writer in state:%s", state);
+
+    Marker marker = new Marker(false);
+    put(marker);
+    marker.await();
+    checkFailure();
+  }
+
+  @Override
+  public synchronized void close() {
+    if (state.equals(ReaderWriterState.OPEN)) {
+      logger.debug("Closing asynchronous writer:{}", writer);
+
+      // wait for writes in progress, so that none buffers after the marker
+      closeLock.writeLock().lock();
+      try {
+        state = ReaderWriterState.CLOSED;
+      } finally {
+        closeLock.writeLock().unlock();
+      }
+
+      Marker marker = new Marker(true);
+      put(marker);
+      marker.await();
+      checkFailure();
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return state.equals(ReaderWriterState.OPEN);
+  }
+
+  /**
+   * Return the wrapped writer's metrics, if it has any, and the
+   * {@link DatasetMetrics#BUFFER_WAIT_TIME} of this writer.
+   */
+  @Override
+  public MetricGroup getMetrics() {
+    return metrics;
+  }
+
+  private void put(Object item) {
+    try {
+      buffer.put(item);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatasetWriterException(
+        "Interrupted while waiting to write to writer:" + writer, e);
+    }
+  }
+
+  private void checkFailure() {
+    Throwable t = failure;
+    if (t != null) {
+      throw new DatasetWriterException(
+        "Asynchronous write to writer:" + writer + " failed", t);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("writer", writer)
+      .add("capacity", capacity)
+      .add("buffered", buffer.size())
+      .add("state", state)
+      .toString();
+  }
+
+  /**
+   * Asks the I/O thread to flush, or close, the wrapped writer once the
+   * entities ahead of it have been written.
+   */
+  private static class Marker {
+
+    private final boolean close;
+    private final CountDownLatch done;
+
+    Marker(boolean close) {
+      this.close = close;
+      this.done = new CountDownLatch(1);
+    }
+
+    void await() {
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new DatasetWriterException(
+          "Interrupted while waiting for buffered entities to be written", e);
+      }
+    }
+
+  }
+
+  private class IOLoop implements Runnable {
+
+    @Override
+    public void run() {
+      List<Object> batch = Lists.newArrayListWithCapacity(capacity);
+
+      while (true) {
+        try {
+          batch.add(buffer.take());
+        } catch (InterruptedException e) {
+          // only close() stops this thread
+          logger.warn("Ignoring interrupt of I/O thread for writer:{}", writer);
+          continue;
+        }
+        buffer.drainTo(batch);
+
+        // entities between markers are written together
+        int run = 0;
+        for (int i = 0; i < batch.size(); i++) {
+          Object item = batch.get(i);
+          if (item instanceof Marker) {
+            writeRun(batch.subList(run, i));
+            run = i + 1;
+
+            Marker marker = (Marker) item;
+            if (marker.close) {
+              closeWriter();
+              marker.done.countDown();
+              return;
+            }
+            if (failure == null) {
+              try {
+                writer.flush();
+              } catch (Throwable t) {
+                fail(t);
+              }
+            }
+            marker.done.countDown();
+          }
+        }
+        writeRun(batch.subList(run, batch.size()));
+
+        batch.clear();
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeRun(List<Object> entities) {
+      if (failure == null && !entities.isEmpty()) {
+        try {
+          writer.writeAll((List<E>) (List<?>) entities);
+        } catch (Throwable t) {
+          fail(t);
+        }
+      }
+    }
+
+    private void closeWriter() {
+      try {
+        writer.close();
+      } catch (Throwable t) {
+        fail(t);
+      }
+    }
+
+    private void fail(Throwable t) {
+      if (failure == null) {
+        logger.error("Asynchronous write to writer:" + writer
+          + " failed. Discarding entities until it is closed.", t);
+        failure = t;
+      }
+    }
+
+  }
+
+}
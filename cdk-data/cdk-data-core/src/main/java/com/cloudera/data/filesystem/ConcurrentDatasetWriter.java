@@ -0,0 +1,270 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.AbstractDatasetWriter;
+import com.cloudera.data.DatasetWriter;
+import com.cloudera.data.DatasetWriterException;
+import com.cloudera.data.metrics.Instrumented;
+import com.cloudera.data.metrics.MetricGroup;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A {@link DatasetWriter} that many threads may write to at once.
+ * </p>
+ * <p>
+ * Writes are spread over a fixed number of stripes, each with its own writer
+ * from the dataset, so each stripe writes its own data files (one per
+ * partition, for a partitioned dataset). Each thread is assigned a stripe, in
+ * turn, the first time it writes, and only waits for other threads assigned
+ * the same stripe. With at least as many stripes as writing threads, threads
+ * never wait for each other.
+ * </p>
+ * <p>
+ * For a partitioned dataset, the stripes share the dataset's budget of open
+ * partition writers ({@link WriterProperties#PARTITION_MAX_WRITERS} and
+ * {@link WriterProperties#PARTITION_MEMORY_BYTES}) equally, though each
+ * stripe keeps at least one partition writer open. The dataset limits the
+ * number of stripes so that each share is large enough to write unsorted
+ * input without rolling a file for every record
+ * ({@link WriterProperties#CONCURRENT_STRIPES}).
+ * </p>
+ * <p>
+ * A stripe's writer is opened by the first write to it. {@link #flush()} and
+ * {@link #close()} flush or close the writers of all stripes, so close
+ * commits every file written.
+ * </p>
+ */
+@ThreadSafe
+class ConcurrentDatasetWriter<E> extends AbstractDatasetWriter<E> implements
+  Flushable, Closeable, Instrumented {
+
+  private static final Logger logger = LoggerFactory
+    .getLogger(ConcurrentDatasetWriter.class);
+
+  private final FileSystemDataset dataset;
+  private final List<Stripe> stripes;
+  private final AtomicInteger nextStripe;
+  private final ThreadLocal<Stripe> threadStripe;
+  private final MetricGroup metrics;
+
+  private volatile ReaderWriterState state;
+
+  /**
+   * @param datasetMetrics The metrics this writer's stripe writers contribute
+   *                       to, through those of this writer.
+   */
+  ConcurrentDatasetWriter(FileSystemDataset dataset, int stripes,
+    MetricGroup datasetMetrics) {
+
+    Preconditions.checkArgument(stripes > 0,
+      "Number of stripes must be positive, not %s", stripes);
+
+    this.dataset = dataset;
+    this.metrics = new MetricGroup(dataset.getName(), datasetMetrics);
+    this.stripes = Lists.newArrayListWithCapacity(stripes);
+    for (int i = 0; i < stripes; i++) {
+      this.stripes.add(new Stripe(i));
+    }
+    this.nextStripe = new AtomicInteger();
+    this.threadStripe = new ThreadLocal<Stripe>();
+    this.state = ReaderWriterState.NEW;
+  }
+
+  @Override
+  public synchronized void open() {
+    Preconditions.checkState(state.equals(ReaderWriterState.NEW),
+      "Unable to open a writer from state:%s", state);
+
+    logger.debug("Opening concurrent writer with {} stripes to dataset:{}",
+      stripes.size(), dataset.getName());
+
+    state = ReaderWriterState.OPEN;
+  }
+
+  @Override
+  public void write(E entity) {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+      "Attempt to write to a writer in state:%s", state);
+
+    stripe().write(entity);
+  }
+
+  /**
+   * Write a batch to the calling thread's stripe, which is locked once for
+   * the batch.
+   */
+  @Override
+  public void writeAll(Iterable<? extends E> entities) {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+      "Attempt to write to a writer in state:%s", state);
+
+    stripe().writeAll(entities);
+  }
+
+  private Stripe stripe() {
+    Stripe stripe = threadStripe.get();
+    if (stripe == null) {
+      stripe = stripes.get(
+        (nextStripe.getAndIncrement() & Integer.MAX_VALUE) % stripes.size());
+      threadStripe.set(stripe);
+    }
+    return stripe;
+  }
+
+  @Override
+  public synchronized void flush() {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+      "Attempt to write to a writer in state:%s", state);
+
+    for (Stripe stripe : stripes) {
+      stripe.flush();
+    }
+  }
+
+  /**
+   * Close the writers of all stripes, waiting for writes in progress. If
+   * closing a stripe fails, the others are still closed and the first failure
+   * is thrown.
+   */
+  @Override
+  public synchronized void close() {
+    if (state.equals(ReaderWriterState.OPEN)) {
+      logger.debug("Closing concurrent writer to dataset:{}",
+        dataset.getName());
+
+      state = ReaderWriterState.CLOSED;
+
+      RuntimeException failure = null;
+      for (Stripe stripe : stripes) {
+        try {
+          stripe.close();
+        } catch (RuntimeException e) {
+          logger.error("Failed to close stripe:" + stripe.index
+            + " of writer to dataset:" + dataset.getName(), e);
+          if (failure == null) {
+            failure = e;
+          }
+        }
+      }
+
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return state.equals(ReaderWriterState.OPEN);
+  }
+
+  /**
+   * The metrics of the writers of all stripes. Each stripe counts its writes
+   * on its own and adds them to these when it is flushed or closed, so that
+   * stripes don't contend on shared counters.
+   */
+  @Override
+  public MetricGroup getMetrics() {
+    return metrics;
+  }
+
+  int getStripeCount() {
+    return stripes.size();
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("dataset", dataset)
+      .add("stripes", stripes.size())
+      .add("state", state)
+      .toString();
+  }
+
+  private class Stripe {
+
+    private final int index;
+    private final MetricGroup stripeMetrics;
+    private DatasetWriter<E> writer;
+    private boolean closed;
+
+    Stripe(int index) {
+      this.index = index;
+      // counted by this stripe's thread, and published on flush and close
+      this.stripeMetrics = MetricGroup.deferred("stripe-" + index, metrics);
+    }
+
+    synchronized void write(E entity) {
+      writer().write(entity);
+    }
+
+    synchronized void writeAll(Iterable<? extends E> entities) {
+      writer().writeAll(entities);
+    }
+
+    private DatasetWriter<E> writer() {
+      if (closed) {
+        throw new DatasetWriterException(
+          "Attempt to write to a closed writer to dataset:" + dataset.getName());
+      }
+
+      if (writer == null) {
+        logger.debug("Opening writer for stripe:{}", index);
+
+        DatasetWriter<E> opened = dataset.getWriter(stripeMetrics, false,
+          stripes.size());
+        opened.open();
+        writer = opened;
+      }
+
+      return writer;
+    }
+
+    synchronized void flush() {
+      if (writer != null) {
+        try {
+          writer.flush();
+        } finally {
+          stripeMetrics.publish();
+        }
+      }
+    }
+
+    synchronized void close() {
+      closed = true;
+      if (writer != null) {
+        try {
+          writer.close();
+        } finally {
+          stripeMetrics.publish();
+        }
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.DatasetWriterException;
+import com.cloudera.data.FieldPartitioner;
+import com.cloudera.data.PartitionKey;
+import com.cloudera.data.PartitionStrategy;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+
+/**
+ * <p>
+ * Finds the partition of an entity from its Avro binary encoding.
+ * </p>
+ * <p>
+ * Only the fields that the partition strategy reads are decoded. The datum is
+ * read with a schema of just those fields, so Avro schema resolution skips
+ * the others without building any objects for them. Strings are decoded as
+ * {@link String}s, so that partition functions see the same values as when
+ * writing objects built by an application.
+ * </p>
+ */
+class EncodedPartitionKeys {
+
+  private final PartitionStrategy partitionStrategy;
+  private final GenericDatumReader<GenericRecord> reader;
+
+  private BinaryDecoder decoder;
+  private GenericRecord record;
+
+  EncodedPartitionKeys(Schema schema, PartitionStrategy partitionStrategy) {
+    this.partitionStrategy = partitionStrategy;
+    this.reader = new GenericDatumReader<GenericRecord>(schema,
+      projection(schema, partitionStrategy));
+  }
+
+  /**
+   * Return the partition key of an encoded entity, reusing
+   * {@code reuseKey} if it isn't null.
+   */
+  PartitionKey partitionKey(ByteBuffer datum, @Nullable PartitionKey reuseKey) {
+    ByteBuffer bytes = FileSystemDatasetWriter.arrayBacked(datum);
+    decoder = DecoderFactory.get().binaryDecoder(bytes.array(),
+      bytes.position(), bytes.remaining(), decoder);
+    try {
+      record = reader.read(record, decoder);
+    } catch (IOException e) {
+      throw new DatasetWriterException(
+        "Unable to decode partition fields of datum:" + datum, e);
+    }
+
+    return partitionStrategy.partitionKeyForEntity(record, reuseKey);
+  }
+
+  private static Schema projection(Schema schema,
+    PartitionStrategy partitionStrategy) {
+
+    Set<String> names = Sets.newHashSet();
+    for (FieldPartitioner partitioner : partitionStrategy.getFieldPartitioners()) {
+      names.add(partitioner.getSourceName());
+    }
+
+    List<Schema.Field> fields = Lists.newArrayList();
+    for (Schema.Field field : schema.getFields()) {
+      if (names.contains(field.name())) {
+        fields.add(new Schema.Field(field.name(), javaStrings(field.schema()),
+          field.doc(), field.defaultValue()));
+      }
+    }
+
+    Schema projection = Schema.createRecord(schema.getName(), schema.getDoc(),
+      schema.getNamespace(), schema.isError());
+    projection.setFields(fields);
+    return projection;
+  }
+
+  /*
+   * A copy of a string schema, or a union with string branches, that
+   * decodes to String rather than Utf8. Other schemas are returned as they
+   * are.
+   */
+  private static Schema javaStrings(Schema schema) {
+    switch (schema.getType()) {
+      case STRING:
+        Schema string = Schema.create(Schema.Type.STRING);
+        GenericData.setStringType(string, GenericData.StringType.String);
+        return string;
+      case UNION:
+        List<Schema> types = Lists.newArrayList();
+        for (Schema type : schema.getTypes()) {
+          types.add(javaStrings(type));
+        }
+        return Schema.createUnion(types);
+      default:
+        return schema;
+    }
+  }
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.google.common.collect.Maps;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.reflect.ReflectDatumWriter;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+
+/**
+ * <p>
+ * A {@link DatumWriter} that picks the Avro writer for the type of the
+ * entities it is given, rather than using reflection for all of them.
+ * </p>
+ * <p>
+ * Generic records are written by a {@link GenericDatumWriter}, generated
+ * classes by a {@link SpecificDatumWriter}, and any other class by a
+ * {@link ReflectDatumWriter} that reads record fields through accessors
+ * resolved once for each class and schema, instead of looking each field up
+ * by name for every record.
+ * </p>
+ */
+class EntityDatumWriter<E> implements DatumWriter<E> {
+
+  private Schema schema;
+  private Class<?> entityClass;
+  private DatumWriter<E> delegate;
+
+  @Override
+  public void setSchema(Schema schema) {
+    this.schema = schema;
+    if (delegate != null) {
+      delegate.setSchema(schema);
+    }
+  }
+
+  @Override
+  public void write(E datum, Encoder out) throws IOException {
+    // entities are almost always of one class, so this is an identity check
+    if (datum != null && datum.getClass() != entityClass) {
+      entityClass = datum.getClass();
+      delegate = newWriter(entityClass, schema);
+    } else if (delegate == null) {
+      delegate = new PojoDatumWriter<E>(schema);
+    }
+    delegate.write(datum, out);
+  }
+
+  static <E> DatumWriter<E> newWriter(Class<?> entityClass, Schema schema) {
+    if (SpecificRecord.class.isAssignableFrom(entityClass)) {
+      return new SpecificDatumWriter<E>(schema);
+    } else if (IndexedRecord.class.isAssignableFrom(entityClass)) {
+      return new GenericDatumWriter<E>(schema);
+    } else {
+      return new PojoDatumWriter<E>(schema);
+    }
+  }
+
+  /**
+   * A {@link ReflectDatumWriter} that writes the fields of records that are
+   * plain Java objects through {@link Field}s resolved once for each class
+   * and record schema. Fields are cached by each writer rather than globally,
+   * so that they don't keep entity classes and their class loaders alive.
+   */
+  static class PojoDatumWriter<E> extends ReflectDatumWriter<E> {
+
+    // nested record schemas are the same instances for every entity written
+    private final Map<Schema, Accessors> accessors = Maps.newIdentityHashMap();
+
+    PojoDatumWriter(Schema schema) {
+      super(schema);
+    }
+
+    @Override
+    protected void writeRecord(Schema schema, Object datum, Encoder out)
+      throws IOException {
+
+      if (datum instanceof IndexedRecord) {
+        super.writeRecord(schema, datum, out);
+        return;
+      }
+
+      Field[] fields = accessorsFor(schema, datum.getClass());
+      List<Schema.Field> schemaFields = schema.getFields();
+
+      for (int i = 0; i < fields.length; i++) {
+        Schema.Field field = schemaFields.get(i);
+        Object value;
+
+        try {
+          value = fields[i].get(datum);
+        } catch (IllegalAccessException e) {
+          throw new AvroRuntimeException(e);
+        }
+
+        try {
+          write(field.schema(), value, out);
+        } catch (NullPointerException e) {
+          throw npe(e, " in field " + field.name());
+        }
+      }
+    }
+
+    private Field[] accessorsFor(Schema schema, Class<?> type) {
+      Accessors cached = accessors.get(schema);
+
+      if (cached == null || cached.type != type) {
+        cached = new Accessors(type, fieldsFor(type, schema));
+        accessors.put(schema, cached);
+      }
+
+      return cached.fields;
+    }
+
+    private static Field[] fieldsFor(Class<?> type, Schema schema) {
+      List<Schema.Field> schemaFields = schema.getFields();
+      Field[] fields = new Field[schemaFields.size()];
+      for (int i = 0; i < fields.length; i++) {
+        fields[i] = findField(type, schemaFields.get(i).name());
+      }
+      return fields;
+    }
+
+    /*
+     * Resolves fields the same way ReflectData does: the first field with a
+     * matching name, searching from the class up through its superclasses.
+     */
+    private static Field findField(Class<?> type, String name) {
+      for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+        try {
+          Field field = c.getDeclaredField(name);
+          field.setAccessible(true);
+          return field;
+        } catch (NoSuchFieldException e) {
+          // try the superclass
+        }
+      }
+      throw new AvroRuntimeException("No field named " + name + " in: " +
+        type);
+    }
+
+  }
+
+  private static class Accessors {
+
+    private final Class<?> type;
+    private final Field[] fields;
+
+    Accessors(Class<?> type, Field[] fields) {
+      this.type = type;
+      this.fields = fields;
+    }
+
+  }
+
+}
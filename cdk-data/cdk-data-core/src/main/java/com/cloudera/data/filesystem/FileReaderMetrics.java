@@ -0,0 +1,136 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.metrics.DatasetEvent;
+import com.cloudera.data.metrics.DatasetEvents;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.MetricGroup;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * <p>
+ * The metrics of a reader of a single data file.
+ * </p>
+ * <p>
+ * Per record values are accumulated locally and added to the (shared)
+ * counters when the file is closed, so that reading a record costs two
+ * {@link System#nanoTime()} calls rather than several atomic updates.
+ * </p>
+ */
+@NotThreadSafe
+class FileReaderMetrics {
+
+  private final Path path;
+  private final String datasetName;
+  private final MetricGroup metrics;
+
+  private DatasetEvents.Recording openEvent;
+  private DatasetEvents.Recording readEvent;
+  private long bytes;
+
+  private long openStartNanos;
+  private boolean firstRecordRead;
+  private long decodeStartNanos;
+
+  private long records;
+  private long decompressedBytes;
+  private long decodeNanos;
+
+  /**
+   * @param parent The metrics of the reader this file is read by, which is
+   *               named for its dataset if it has a parent.
+   */
+  FileReaderMetrics(Path path, @Nullable MetricGroup parent) {
+    this.path = path;
+    this.datasetName = parent != null && parent.getParent() != null ?
+      parent.getName() : null;
+    this.metrics = new MetricGroup(path.getName(), parent);
+  }
+
+  MetricGroup getMetrics() {
+    return metrics;
+  }
+
+  void opening() {
+    openStartNanos = System.nanoTime();
+    openEvent = DatasetEvents.begin(DatasetEvent.Type.READER_OPEN,
+      datasetName, path.toString());
+  }
+
+  /**
+   * @param bytes The size of the file as stored, or -1 if not known.
+   */
+  void opened(long bytes) {
+    this.bytes = bytes;
+    openEvent.end(bytes);
+    readEvent = DatasetEvents.begin(DatasetEvent.Type.READER_CLOSE,
+      datasetName, path.toString());
+
+    metrics.timer(DatasetMetrics.OPEN_TIME).update(
+      System.nanoTime() - openStartNanos, TimeUnit.NANOSECONDS);
+    metrics.counter(DatasetMetrics.FILES_OPENED).inc();
+
+    if (bytes >= 0) {
+      metrics.counter(DatasetMetrics.BYTES_READ).inc(bytes);
+    }
+  }
+
+  void decoding() {
+    decodeStartNanos = System.nanoTime();
+  }
+
+  void decoded() {
+    decodeNanos += System.nanoTime() - decodeStartNanos;
+  }
+
+  void recordRead() {
+    records++;
+
+    if (!firstRecordRead) {
+      firstRecordRead = true;
+      metrics.timer(DatasetMetrics.FIRST_RECORD_TIME).update(
+        System.nanoTime() - openStartNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  void decompressed(long bytes) {
+    decompressedBytes += bytes;
+  }
+
+  void closed() {
+    if (readEvent != null) {
+      readEvent.end(bytes);
+      readEvent = null;
+    }
+
+    metrics.counter(DatasetMetrics.RECORDS_READ).inc(records);
+    metrics.counter(DatasetMetrics.DECODE_NANOS).inc(decodeNanos);
+
+    if (decompressedBytes > 0) {
+      metrics.counter(DatasetMetrics.DECOMPRESSED_BYTES_READ)
+        .inc(decompressedBytes);
+    }
+
+    records = 0;
+    decodeNanos = 0;
+    decompressedBytes = 0;
+  }
+
+}
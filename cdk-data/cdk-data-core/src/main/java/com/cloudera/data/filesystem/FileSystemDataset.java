@@ -24,16 +24,27 @@ import com.cloudera.data.FieldPartitioner;
 import com.cloudera.data.Formats;
 import com.cloudera.data.PartitionKey;
 import com.cloudera.data.PartitionStrategy;
+import com.cloudera.data.ReadPlan;
 import com.cloudera.data.impl.Accessor;
+import com.cloudera.data.metrics.DatasetEvent;
+import com.cloudera.data.metrics.DatasetEvents;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.MetricGroup;
+import com.cloudera.data.metrics.Timer;
+import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 import org.apache.avro.Schema;
 import org.apache.hadoop.fs.FileStatus;
@@ -47,6 +58,8 @@ class FileSystemDataset implements Dataset {
   private static final Logger logger = LoggerFactory
     .getLogger(FileSystemDataset.class);
 
+  private static final AtomicLong FILE_SEQUENCE = new AtomicLong();
+
   private final FileSystem fileSystem;
   private final Path directory;
   private final String name;
@@ -93,43 +106,166 @@ class FileSystemDataset implements Dataset {
 
   @Override
   public <E> DatasetWriter<E> getWriter() {
+    return getWriter(DatasetMetrics.get().group(name));
+  }
+
+  @Override
+  public DatasetWriter<ByteBuffer> getEncodedWriter() {
+    return getWriter(DatasetMetrics.get().group(name), true);
+  }
+
+  /**
+   * Get a writer whose metrics contribute to {@code parentMetrics}, such as
+   * those of a {@link PartitionedDatasetWriter} writing to this partition.
+   */
+  <E> DatasetWriter<E> getWriter(MetricGroup parentMetrics) {
+    return getWriter(parentMetrics, false);
+  }
+
+  /**
+   * @param encoded If true, the writer accepts the Avro binary encoding of
+   *                each entity, as a {@link ByteBuffer}.
+   */
+  <E> DatasetWriter<E> getWriter(MetricGroup parentMetrics,
+    boolean encoded) {
+    return getWriter(parentMetrics, encoded, 1);
+  }
+
+  /**
+   * @param shares The number of writers sharing this dataset's budget of open
+   *               partition writers, if it is partitioned.
+   */
+  <E> DatasetWriter<E> getWriter(MetricGroup parentMetrics,
+    final boolean encoded, int shares) {
+
     logger.debug("Getting writer to dataset:{}", this);
 
     DatasetWriter<E> writer;
 
     if (descriptor.isPartitioned()) {
-      writer = new PartitionedDatasetWriter<E>(this);
+      writer = new PartitionedDatasetWriter<E>(this, parentMetrics, encoded,
+        shares);
     } else {
-      Path dataFile = new Path(directory, uniqueFilename());
-      if (Formats.PARQUET.equals(descriptor.getFormat())) {
-        writer = new ParquetFileSystemDatasetWriter<E>(fileSystem, dataFile, schema);
+      final WriterProperties properties = WriterProperties.of(descriptor);
+      if (properties.isRolling()) {
+        writer = new RollingDatasetWriter<E>(directory.getName(),
+          new Function<MetricGroup, DatasetWriter<E>>() {
+            @Override
+            public DatasetWriter<E> apply(MetricGroup metrics) {
+              return newFileWriter(properties, encoded, metrics);
+            }
+          }, rollPolicy(properties), parentMetrics, Ticker.systemTicker());
       } else {
-        writer = new FileSystemDatasetWriter.Builder<E>().fileSystem(fileSystem)
-          .path(dataFile).schema(schema).get();
+        writer = newFileWriter(properties, encoded, parentMetrics);
       }
     }
 
     return writer;
   }
 
+  private <E> DatasetWriter<E> newFileWriter(WriterProperties properties,
+    boolean encoded, MetricGroup parentMetrics) {
+
+    Path dataFile = new Path(directory, uniqueFilename());
+    if (Formats.PARQUET.equals(descriptor.getFormat())) {
+      return new ParquetFileSystemDatasetWriter<E>(fileSystem, dataFile,
+        schema, properties, encoded, parentMetrics);
+    } else {
+      return new FileSystemDatasetWriter.Builder<E>().fileSystem(fileSystem)
+        .path(dataFile).schema(schema).properties(properties).encoded(encoded)
+        .datasetMetrics(parentMetrics).get();
+    }
+  }
+
+  private RollingDatasetWriter.Policy rollPolicy(WriterProperties properties) {
+    // Avro adds a block at a time, while Parquet file sizes are estimated
+    long blockBytes = Formats.PARQUET.equals(descriptor.getFormat()) ? 0 :
+      properties.getAvroSyncInterval();
+
+    return new RollingDatasetWriter.Policy(
+      properties.getRollBytes(fileSystem.getDefaultBlockSize(directory)),
+      properties.getRollRecords(), properties.getRollAgeSeconds(),
+      TimeUnit.SECONDS, blockBytes);
+  }
+
+  /**
+   * Get a writer with {@link WriterProperties#CONCURRENT_STRIPES} stripes, one
+   * for each available processor by default. The stripes of a partitioned
+   * dataset divide {@link WriterProperties#PARTITION_MAX_WRITERS} among them,
+   * and each writes its own file in each partition, so there are only as
+   * many as leave each stripe a useful share of the partition writers.
+   *
+   * @see ConcurrentDatasetWriter
+   */
+  @Override
+  public <E> DatasetWriter<E> getConcurrentWriter() {
+    logger.debug("Getting concurrent writer to dataset:{}", this);
+
+    return new ConcurrentDatasetWriter<E>(this,
+      WriterProperties.of(descriptor).getConcurrentStripes(
+        descriptor.getFormat(), partitionStrategy),
+      DatasetMetrics.get().group(name));
+  }
+
   @Override
   public <E> DatasetReader<E> getReader() {
+    InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+      .begin(name, "getReader");
+    try {
+      return this.<E>newReader();
+    } finally {
+      operation.end();
+    }
+  }
+
+  private <E> DatasetReader<E> newReader() {
     logger.debug("Getting reader for dataset:{}", this);
 
     List<Path> paths = Lists.newArrayList();
+    MetricGroup metrics = new MetricGroup(name,
+      DatasetMetrics.get().group(name));
 
+    Timer.Context timer = metrics.timer(DatasetMetrics.LIST_TIME).time();
     try {
       accumulateDatafilePaths(directory, paths);
     } catch (IOException e) {
       throw new DatasetException("Unable to retrieve data file list for directory " + directory, e);
+    } finally {
+      timer.stop();
     }
 
-    return new MultiFileDatasetReader<E>(fileSystem, paths, descriptor);
+    return new MultiFileDatasetReader<E>(fileSystem, paths, descriptor,
+      metrics);
+  }
+
+  @Override
+  public ReadPlan explain() {
+    InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+      .begin(name, "explain");
+    try {
+      return new ReadPlanner(fileSystem, name, directory, descriptor)
+        .plan(operation);
+    } catch (IOException e) {
+      throw new DatasetException("Unable to plan a read of directory " + directory, e);
+    } finally {
+      operation.end();
+    }
   }
 
   @Override
   @Nullable
   public Dataset getPartition(PartitionKey key, boolean allowCreate) {
+    InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+      .begin(name, "getPartition");
+    try {
+      return partition(key, allowCreate);
+    } finally {
+      operation.end();
+    }
+  }
+
+  @Nullable
+  private Dataset partition(PartitionKey key, boolean allowCreate) {
     Preconditions.checkState(descriptor.isPartitioned(),
       "Attempt to get a partition on a non-partitioned dataset (name:%s)",
       name);
@@ -142,7 +278,14 @@ class FileSystemDataset implements Dataset {
     try {
       if (!fileSystem.exists(partitionDirectory)) {
         if (allowCreate) {
-          fileSystem.mkdirs(partitionDirectory);
+          DatasetEvents.Recording event = DatasetEvents.begin(
+            DatasetEvent.Type.PARTITION_CREATE, name,
+            partitionDirectory.toString());
+          try {
+            fileSystem.mkdirs(partitionDirectory);
+          } finally {
+            event.end();
+          }
         } else {
           return null;
         }
@@ -159,13 +302,23 @@ class FileSystemDataset implements Dataset {
       .name(name)
       .fileSystem(fileSystem)
       .descriptor(
-        new DatasetDescriptor.Builder().schema(schema).format(descriptor.getFormat())
+        new DatasetDescriptor.Builder(descriptor)
           .partitionStrategy(subpartitionStrategy).get())
       .directory(partitionDirectory).partitionKey(key).get();
   }
 
   @Override
   public void dropPartition(PartitionKey key) {
+    InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+      .begin(name, "dropPartition");
+    try {
+      deletePartition(key);
+    } finally {
+      operation.end();
+    }
+  }
+
+  private void deletePartition(PartitionKey key) {
     Preconditions.checkState(descriptor.isPartitioned(),
       "Attempt to drop a partition on a non-partitioned dataset (name:%s)",
       name);
@@ -187,6 +340,16 @@ class FileSystemDataset implements Dataset {
 
   @Override
   public Iterable<Dataset> getPartitions() {
+    InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+      .begin(name, "getPartitions");
+    try {
+      return listPartitions();
+    } finally {
+      operation.end();
+    }
+  }
+
+  private Iterable<Dataset> listPartitions() {
     Preconditions.checkState(descriptor.isPartitioned(),
       "Attempt to get partitions on a non-partitioned dataset (name:%s)",
       name);
@@ -209,8 +372,7 @@ class FileSystemDataset implements Dataset {
         .name(name)
         .fileSystem(fileSystem)
         .descriptor(
-          new DatasetDescriptor.Builder()
-            .schema(schema).format(descriptor.getFormat())
+          new DatasetDescriptor.Builder(descriptor)
             .partitionStrategy(
               Accessor.getDefault().getSubpartitionStrategy(
                 partitionStrategy, 1)).get()).directory(p)
@@ -231,21 +393,40 @@ class FileSystemDataset implements Dataset {
   }
 
   private String uniqueFilename() {
-    // FIXME: This file name is not guaranteed to be truly unique.
+    /*
+     * FIXME: This file name is not guaranteed to be truly unique. The sequence
+     * number keeps files started in the same millisecond by one thread, such
+     * as those of a rolling writer, apart.
+     */
     return Joiner.on('-').join(System.currentTimeMillis(),
-        Thread.currentThread().getId() + "." + descriptor.getFormat().getExtension());
+        Thread.currentThread().getId(),
+        FILE_SEQUENCE.getAndIncrement() + "." + descriptor.getFormat().getExtension());
   }
 
   void accumulateDatafilePaths(Path directory, List<Path> paths)
     throws IOException {
 
+    List<FileStatus> statuses = Lists.newArrayList();
+    accumulateDatafiles(fileSystem, directory, statuses);
+    for (FileStatus status : statuses) {
+      paths.add(status.getPath());
+    }
+  }
+
+  /**
+   * Add the data files under {@code directory}, and under the partition
+   * directories below it, to {@code statuses}.
+   */
+  static void accumulateDatafiles(FileSystem fileSystem, Path directory,
+    List<FileStatus> statuses) throws IOException {
+
     for (FileStatus status : fileSystem.listStatus(directory,
       PathFilters.notHidden())) {
 
       if (status.isDirectory()) {
-        accumulateDatafilePaths(status.getPath(), paths);
+        accumulateDatafiles(fileSystem, status.getPath(), statuses);
       } else {
-        paths.add(status.getPath());
+        statuses.add(status);
       }
     }
   }
@@ -17,10 +17,15 @@ package com.cloudera.data.filesystem;
 
 import com.cloudera.data.DatasetReader;
 import com.cloudera.data.DatasetReaderException;
+import com.cloudera.data.metrics.Instrumented;
+import com.cloudera.data.metrics.MetricGroup;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import org.apache.avro.Schema;
 import org.apache.avro.file.DataFileReader;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
 import org.apache.avro.reflect.ReflectDatumReader;
 import org.apache.hadoop.fs.AvroFSInput;
 import org.apache.hadoop.fs.FileSystem;
@@ -30,8 +35,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import javax.annotation.Nullable;
 
-class FileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
+class FileSystemDatasetReader<E> implements DatasetReader<E>, Closeable,
+  Instrumented {
 
   private FileSystem fileSystem;
   private Path path;
@@ -39,14 +46,26 @@ class FileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
 
   private ReaderWriterState state;
   private DataFileReader<E> reader;
+  private final FileReaderMetrics metrics;
 
   private static final Logger logger = LoggerFactory
     .getLogger(FileSystemDatasetReader.class);
 
   public FileSystemDatasetReader(FileSystem fileSystem, Path path, Schema schema) {
+    this(fileSystem, path, schema, null);
+  }
+
+  /**
+   * @param readerMetrics The metrics of the dataset reader this file reader
+   *                      contributes to, if any.
+   */
+  public FileSystemDatasetReader(FileSystem fileSystem, Path path, Schema schema,
+    @Nullable MetricGroup readerMetrics) {
+
     this.fileSystem = fileSystem;
     this.path = path;
     this.schema = schema;
+    this.metrics = new FileReaderMetrics(path, readerMetrics);
 
     this.state = ReaderWriterState.NEW;
   }
@@ -58,14 +77,19 @@ class FileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
 
     logger.debug("Opening reader on path:{}", path);
 
+    metrics.opening();
+
+    long length;
     try {
+      length = fileSystem.getFileStatus(path).getLen();
       reader = new DataFileReader<E>(new AvroFSInput(fileSystem.open(path),
-        fileSystem.getFileStatus(path).getLen()), new ReflectDatumReader<E>(
-        schema));
+        length), new BlockCountingDatumReader(new ReflectDatumReader<E>(
+        schema)));
     } catch (IOException e) {
       throw new DatasetReaderException("Unable to create reader path:" + path, e);
     }
 
+    metrics.opened(length);
     state = ReaderWriterState.OPEN;
   }
 
@@ -73,7 +97,14 @@ class FileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
   public boolean hasNext() {
     Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
       "Attempt to read from a file in state:%s", state);
-    return reader.hasNext();
+
+    // reads and decompresses the next block when the current one is consumed
+    metrics.decoding();
+    try {
+      return reader.hasNext();
+    } finally {
+      metrics.decoded();
+    }
   }
 
   @Override
@@ -81,7 +112,16 @@ class FileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
     Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
       "Attempt to read from a file in state:%s", state);
 
-    return reader.next();
+    metrics.decoding();
+    E record;
+    try {
+      record = reader.next();
+    } finally {
+      metrics.decoded();
+    }
+
+    metrics.recordRead();
+    return record;
   }
 
   @Override
@@ -96,6 +136,8 @@ class FileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
       reader.close();
     } catch (IOException e) {
       throw new DatasetReaderException("Unable to close reader path:" + path, e);
+    } finally {
+      metrics.closed();
     }
 
     state = ReaderWriterState.CLOSED;
@@ -106,6 +148,11 @@ class FileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
     return state.equals(ReaderWriterState.OPEN);
   }
 
+  @Override
+  public MetricGroup getMetrics() {
+    return metrics.getMetrics();
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
@@ -117,4 +164,41 @@ class FileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
       .toString();
   }
 
+  /**
+   * Counts the size of each decompressed block. Records are decoded from a
+   * decoder over the current block, so the bytes remaining in it only grow
+   * when a new block has been read.
+   */
+  private class BlockCountingDatumReader implements DatumReader<E> {
+
+    private final DatumReader<E> delegate;
+    private int remaining;
+
+    BlockCountingDatumReader(DatumReader<E> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void setSchema(Schema schema) {
+      delegate.setSchema(schema);
+    }
+
+    @Override
+    public E read(E reuse, Decoder in) throws IOException {
+      if (!(in instanceof BinaryDecoder)) {
+        return delegate.read(reuse, in);
+      }
+
+      int available = ((BinaryDecoder) in).inputStream().available();
+      if (available > remaining) {
+        metrics.decompressed(available);
+      }
+
+      E datum = delegate.read(reuse, in);
+      remaining = ((BinaryDecoder) in).inputStream().available();
+      return datum;
+    }
+
+  }
+
 }
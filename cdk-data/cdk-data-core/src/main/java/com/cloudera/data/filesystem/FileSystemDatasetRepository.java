@@ -17,6 +17,7 @@ package com.cloudera.data.filesystem;
 
 import com.cloudera.data.*;
 import com.cloudera.data.filesystem.impl.Accessor;
+import com.cloudera.data.metrics.DatasetMetrics;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
@@ -133,10 +134,21 @@ public class FileSystemDatasetRepository implements DatasetRepository {
 
   @Override
   public Dataset create(String name, DatasetDescriptor descriptor) {
+    InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+      .begin(name, "create");
+    try {
+      return createDataset(name, descriptor);
+    } finally {
+      operation.end();
+    }
+  }
 
+  private Dataset createDataset(String name, DatasetDescriptor descriptor) {
     Preconditions.checkArgument(name != null, "Name can not be null");
     Preconditions.checkArgument(descriptor != null,
       "Descriptor can not be null");
+    // fail now, rather than when the first writer is created
+    WriterProperties.of(descriptor);
 
     Schema schema = descriptor.getSchema();
     Path datasetPath = pathForDataset(name);
@@ -149,6 +161,9 @@ public class FileSystemDatasetRepository implements DatasetRepository {
       throw new DatasetRepositoryException("Internal error while determining if dataset path already exists:" + datasetPath, e);
     }
 
+    // the calls that create the dataset are recorded in its new metrics
+    DatasetMetrics.get().group(name);
+
     logger.debug("Creating dataset:{} schema:{} datasetPath:{}", new Object[] {
       name, schema, datasetPath });
 
@@ -174,6 +189,17 @@ public class FileSystemDatasetRepository implements DatasetRepository {
 
   @Override
   public Dataset update(String name, DatasetDescriptor descriptor) {
+    InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+      .begin(name, "update");
+    try {
+      return updateDataset(name, descriptor);
+    } finally {
+      operation.end();
+    }
+  }
+
+  private Dataset updateDataset(String name, DatasetDescriptor descriptor) {
+    WriterProperties.of(descriptor);
     DatasetDescriptor oldDescriptor = metadataProvider.load(name);
 
     if (!oldDescriptor.getFormat().equals(descriptor.getFormat())) {
@@ -213,6 +239,16 @@ public class FileSystemDatasetRepository implements DatasetRepository {
 
   @Override
   public Dataset get(String name) {
+    InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+      .begin(name, "get");
+    try {
+      return loadDataset(name);
+    } finally {
+      operation.end();
+    }
+  }
+
+  private Dataset loadDataset(String name) {
     Preconditions.checkArgument(name != null, "Name can not be null");
 
     logger.debug("Loading dataset:{}", name);
@@ -232,6 +268,20 @@ public class FileSystemDatasetRepository implements DatasetRepository {
 
   @Override
   public boolean drop(String name) {
+    InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+      .begin(name, "drop");
+    try {
+      return dropDataset(name);
+    } finally {
+      operation.end();
+      // once the drop's own calls are recorded
+      if (name != null) {
+        DatasetMetrics.get().remove(name);
+      }
+    }
+  }
+
+  private boolean dropDataset(String name) {
     Preconditions.checkArgument(name != null, "Name can not be null");
 
     logger.debug("Dropping dataset:{}", name);
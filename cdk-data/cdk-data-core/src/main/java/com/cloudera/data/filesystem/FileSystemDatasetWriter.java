@@ -15,17 +15,23 @@
  */
 package com.cloudera.data.filesystem;
 
-import com.cloudera.data.DatasetWriter;
+import com.cloudera.data.AbstractDatasetWriter;
 import com.cloudera.data.DatasetWriterException;
+import com.cloudera.data.metrics.Counter;
+import com.cloudera.data.metrics.DatasetEvent;
+import com.cloudera.data.metrics.DatasetEvents;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.Instrumented;
+import com.cloudera.data.metrics.MetricGroup;
+import com.cloudera.data.metrics.Timer;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.io.Closeables;
+import com.google.common.io.CountingOutputStream;
 import org.apache.avro.Schema;
-import org.apache.avro.file.CodecFactory;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.io.DatumWriter;
-import org.apache.avro.reflect.ReflectDatumWriter;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.slf4j.Logger;
@@ -34,9 +40,11 @@ import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
 
-class FileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
-  Closeable {
+class FileSystemDatasetWriter<E> extends AbstractDatasetWriter<E> implements
+  Flushable, Closeable, Instrumented {
 
   private static final Logger logger = LoggerFactory
     .getLogger(FileSystemDatasetWriter.class);
@@ -44,22 +52,80 @@ class FileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
   private Path path;
   private Schema schema;
   private FileSystem fileSystem;
-  private boolean enableCompression;
+  private WriterProperties properties;
+  private boolean encoded;
 
   private Path pathTmp;
   private DataFileWriter<E> dataFileWriter;
+  private PipelinedDataFileWriter<E> pipelinedWriter;
   private DatumWriter<E> writer;
+  private CountingOutputStream out;
+  private long bytesCounted;
   private ReaderWriterState state;
 
+  private final String datasetName;
+  private final MetricGroup metrics;
+  private final Counter recordsWritten;
+  private final Counter bytesWritten;
+  private final Counter openFiles;
+  private final Timer flushTime;
+  private final Timer closeTime;
+  private final Timer commitTime;
+
   public FileSystemDatasetWriter(FileSystem fileSystem, Path path,
     Schema schema, boolean enableCompression) {
 
+    this(fileSystem, path, schema, enableCompression, null);
+  }
+
+  /**
+   * @param datasetMetrics The metrics of the dataset (or partitioned writer)
+   *                       this writer contributes to, if any.
+   */
+  public FileSystemDatasetWriter(FileSystem fileSystem, Path path,
+    Schema schema, boolean enableCompression,
+    @Nullable MetricGroup datasetMetrics) {
+
+    this(fileSystem, path, schema, WriterProperties.of(enableCompression),
+      datasetMetrics);
+  }
+
+  /**
+   * @param properties     The codec and sync interval of the data file.
+   * @param datasetMetrics The metrics of the dataset (or partitioned writer)
+   *                       this writer contributes to, if any.
+   */
+  FileSystemDatasetWriter(FileSystem fileSystem, Path path, Schema schema,
+    WriterProperties properties, @Nullable MetricGroup datasetMetrics) {
+
+    this(fileSystem, path, schema, properties, false, datasetMetrics);
+  }
+
+  /**
+   * @param encoded If true, entities are {@link ByteBuffer}s holding the
+   *                Avro binary encoding of a datum of {@code schema}, which
+   *                are appended to the file without decoding them.
+   */
+  FileSystemDatasetWriter(FileSystem fileSystem, Path path, Schema schema,
+    WriterProperties properties, boolean encoded,
+    @Nullable MetricGroup datasetMetrics) {
+
     this.fileSystem = fileSystem;
     this.path = path;
     this.pathTmp = new Path(path.getParent(), "." + path.getName() + ".tmp");
     this.schema = schema;
-    this.enableCompression = enableCompression;
+    this.properties = properties;
+    this.encoded = encoded;
     this.state = ReaderWriterState.NEW;
+
+    this.datasetName = datasetMetrics != null ? datasetMetrics.getName() : null;
+    this.metrics = new MetricGroup(path.getName(), datasetMetrics);
+    this.recordsWritten = metrics.counter(DatasetMetrics.RECORDS_WRITTEN);
+    this.bytesWritten = metrics.counter(DatasetMetrics.BYTES_WRITTEN);
+    this.openFiles = metrics.counter(DatasetMetrics.OPEN_FILES);
+    this.flushTime = metrics.timer(DatasetMetrics.FLUSH_TIME);
+    this.closeTime = metrics.timer(DatasetMetrics.CLOSE_TIME);
+    this.commitTime = metrics.timer(DatasetMetrics.COMMIT_TIME);
   }
 
   @Override
@@ -71,24 +137,44 @@ class FileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
       "Opening data file with pathTmp:{} (final path will be path:{})",
       pathTmp, path);
 
-    writer = new ReflectDatumWriter<E>();
-    dataFileWriter = new DataFileWriter<E>(writer);
+    writer = new EntityDatumWriter<E>();
 
-    /*
-     * We may want to expose the codec in the writer and simply rely on the
-     * builder and proper instantiation from dataset-level configuration.
-     * Hard-coding snappy seems a little too draconian.
-     */
-    if (enableCompression) {
-      dataFileWriter.setCodec(CodecFactory.snappyCodec());
+    // compress blocks on other threads only if there is compression to do
+    boolean pipelined = properties.isCompressed()
+      && properties.getCompressionThreads() > 0;
+
+    if (pipelined) {
+      pipelinedWriter = new PipelinedDataFileWriter<E>(writer,
+        properties.getAvroCodecName(), properties.getCompressionLevel(),
+        properties.getAvroSyncInterval(),
+        PipelinedDataFileWriter.sharedCompressors(),
+        2 * properties.getCompressionThreads());
+    } else {
+      dataFileWriter = new DataFileWriter<E>(writer);
+
+      if (properties.isCompressed()) {
+        dataFileWriter.setCodec(properties.getAvroCodec());
+      }
+      dataFileWriter.setSyncInterval(properties.getAvroSyncInterval());
     }
 
+    DatasetEvents.Recording event = DatasetEvents.begin(
+      DatasetEvent.Type.WRITER_OPEN, datasetName, pathTmp.toString());
     try {
-      dataFileWriter.create(schema, fileSystem.create(pathTmp, true));
+      // count the encoded (and compressed) bytes as they reach the file
+      out = new CountingOutputStream(fileSystem.create(pathTmp, true));
+      if (pipelined) {
+        pipelinedWriter.create(schema, out);
+      } else {
+        dataFileWriter.create(schema, out);
+      }
     } catch (IOException e) {
       throw new DatasetWriterException("Unable to create writer to path:" + pathTmp, e);
+    } finally {
+      event.end(out != null ? out.getCount() : -1);
     }
 
+    openFiles.inc();
     state = ReaderWriterState.OPEN;
   }
 
@@ -97,25 +183,87 @@ class FileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
     Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
       "Attempt to write to a writer in state:%s", state);
 
+    append(entity);
+
+    recordsWritten.inc();
+    countBytes();
+  }
+
+  @Override
+  public void writeAll(Iterable<? extends E> entities) {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+      "Attempt to write to a writer in state:%s", state);
+
+    long count = 0;
+    try {
+      for (E entity : entities) {
+        append(entity);
+        count++;
+      }
+    } finally {
+      recordsWritten.inc(count);
+      countBytes();
+    }
+  }
+
+  private void append(E entity) {
     try {
-      dataFileWriter.append(entity);
+      if (pipelinedWriter != null) {
+        if (encoded) {
+          pipelinedWriter.appendEncoded((ByteBuffer) entity);
+        } else {
+          pipelinedWriter.append(entity);
+        }
+      } else if (encoded) {
+        dataFileWriter.appendEncoded(arrayBacked((ByteBuffer) entity));
+      } else {
+        dataFileWriter.append(entity);
+      }
     } catch (IOException e) {
       throw new DatasetWriterException(
-        "Unable to write entity:" + entity + " with writer:" + dataFileWriter, e);
+        "Unable to write entity:" + entity + " with writer:" + fileWriter(), e);
     }
   }
 
+  /**
+   * Return {@code datum}, or a copy of its remaining bytes if it doesn't
+   * start at the beginning of a backing array. Avro reads encoded data from
+   * the array and ignores the buffer's array offset.
+   */
+  static ByteBuffer arrayBacked(ByteBuffer datum) {
+    if (datum.hasArray() && datum.arrayOffset() == 0) {
+      return datum;
+    }
+
+    ByteBuffer copy = ByteBuffer.allocate(datum.remaining());
+    copy.put(datum.duplicate());
+    copy.flip();
+    return copy;
+  }
+
   @Override
   public void flush() {
     Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
       "Attempt to write to a writer in state:%s", state);
 
+    Timer.Context timer = flushTime.time();
+    DatasetEvents.Recording event = DatasetEvents.begin(
+      DatasetEvent.Type.WRITER_FLUSH, datasetName, pathTmp.toString());
     try {
-      dataFileWriter.flush();
+      if (pipelinedWriter != null) {
+        pipelinedWriter.flush();
+      } else {
+        dataFileWriter.flush();
+      }
     } catch (IOException e) {
       throw new DatasetWriterException(
-        "Unable to flush file writer:" + dataFileWriter);
+        "Unable to flush file writer:" + fileWriter());
+    } finally {
+      timer.stop();
+      event.end(out.getCount());
     }
+
+    countBytes();
   }
 
   @Override
@@ -123,15 +271,29 @@ class FileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
     if (state.equals(ReaderWriterState.OPEN)) {
       logger.debug("Closing pathTmp:{}", pathTmp);
 
+      Timer.Context timer = closeTime.time();
+      DatasetEvents.Recording event = DatasetEvents.begin(
+        DatasetEvent.Type.WRITER_CLOSE, datasetName, pathTmp.toString());
       try {
-        Closeables.close(dataFileWriter, false);
+        Closeables.close(fileWriter(), false);
       } catch (IOException e) {
         throw new DatasetWriterException(
-          "Unable to close writer:" + dataFileWriter + " to path:" + pathTmp);
+          "Unable to close writer:" + fileWriter() + " to path:" + pathTmp);
+      } finally {
+        timer.stop();
+        event.end(out.getCount());
+        // a writer that fails to close is not closed, or counted, again
+        openFiles.dec();
+        state = ReaderWriterState.CLOSED;
       }
 
+      countBytes();
+
       logger.debug("Committing pathTmp:{} to path:{}", pathTmp, path);
 
+      timer = commitTime.time();
+      event = DatasetEvents.begin(DatasetEvent.Type.WRITER_COMMIT,
+        datasetName, path.toString());
       try {
         if (!fileSystem.rename(pathTmp, path)) {
           throw new DatasetWriterException(
@@ -140,9 +302,10 @@ class FileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
       } catch (IOException e) {
         throw new DatasetWriterException(
           "Internal error while trying to commit path:" + pathTmp, e);
+      } finally {
+        timer.stop();
+        event.end(out.getCount());
       }
-
-      state = ReaderWriterState.CLOSED;
     }
   }
 
@@ -151,15 +314,38 @@ class FileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
     return state.equals(ReaderWriterState.OPEN);
   }
 
+  @Override
+  public MetricGroup getMetrics() {
+    return metrics;
+  }
+
+  private Closeable fileWriter() {
+    return pipelinedWriter != null ? pipelinedWriter : dataFileWriter;
+  }
+
+  /*
+   * Avro buffers a block at a time, so the count only changes when a block is
+   * written, and this is cheap enough to do after each record.
+   */
+  private void countBytes() {
+    long count = out.getCount();
+    if (count != bytesCounted) {
+      bytesWritten.inc(count - bytesCounted);
+      bytesCounted = count;
+    }
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
       .add("path", path)
       .add("schema", schema)
       .add("fileSystem", fileSystem)
-      .add("enableCompression", enableCompression)
+      .add("properties", properties)
+      .add("encoded", encoded)
       .add("pathTmp", pathTmp)
       .add("dataFileWriter", dataFileWriter)
+      .add("pipelinedWriter", pipelinedWriter)
       .add("writer", writer)
       .add("state", state)
       .omitNullValues()
@@ -172,10 +358,12 @@ class FileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
     private FileSystem fileSystem;
     private Path path;
     private Schema schema;
-    private boolean enableCompression;
+    private WriterProperties properties;
+    private boolean encoded;
+    private MetricGroup datasetMetrics;
 
     public Builder() {
-      enableCompression = true;
+      properties = WriterProperties.DEFAULT;
     }
 
     public Builder<E> fileSystem(FileSystem fileSystem) {
@@ -194,7 +382,26 @@ class FileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
     }
 
     public Builder<E> enableCompression(boolean enableCompression) {
-      this.enableCompression = enableCompression;
+      this.properties = WriterProperties.of(enableCompression);
+      return this;
+    }
+
+    Builder<E> properties(WriterProperties properties) {
+      this.properties = properties;
+      return this;
+    }
+
+    /**
+     * Accept the Avro binary encoding of each entity, as a
+     * {@link ByteBuffer}, rather than the entity itself.
+     */
+    Builder<E> encoded(boolean encoded) {
+      this.encoded = encoded;
+      return this;
+    }
+
+    public Builder<E> datasetMetrics(MetricGroup datasetMetrics) {
+      this.datasetMetrics = datasetMetrics;
       return this;
     }
 
@@ -206,7 +413,7 @@ class FileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
       Preconditions.checkState(schema != null, "Schema is not defined");
 
       return new FileSystemDatasetWriter<E>(
-        fileSystem, path, schema, enableCompression);
+        fileSystem, path, schema, properties, encoded, datasetMetrics);
     }
 
   }
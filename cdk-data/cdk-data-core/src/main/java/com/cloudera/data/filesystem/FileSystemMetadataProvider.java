@@ -19,9 +19,12 @@ import com.cloudera.data.DatasetDescriptor;
 import com.cloudera.data.MetadataProvider;
 import com.cloudera.data.MetadataProviderException;
 import com.cloudera.data.impl.Accessor;
+import com.cloudera.data.metrics.DatasetEvent;
+import com.cloudera.data.metrics.DatasetEvents;
 import com.google.common.base.Charsets;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Closer;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
@@ -32,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * <p>
@@ -47,6 +51,11 @@ import java.util.Properties;
  * if it doesn't exist, and the serialized descriptor will be stored in the file
  * {@code descriptor.avro}.
  * </p>
+ * <p>
+ * Descriptor properties are stored in {@code descriptor.properties} with the
+ * rest of the descriptor, so their names may not be {@code version},
+ * {@code format} or {@code partitionExpression}.
+ * </p>
  */
 public class FileSystemMetadataProvider implements MetadataProvider {
 
@@ -60,6 +69,8 @@ public class FileSystemMetadataProvider implements MetadataProvider {
   private static final String VERSION_FIELD_NAME = "version";
   private static final String METADATA_VERSION = "1";
   private static final String FORMAT_FIELD_NAME = "format";
+  private static final Set<String> RESERVED_FIELD_NAMES = ImmutableSet.of(
+    PARTITION_EXPRESSION_FIELD_NAME, VERSION_FIELD_NAME, FORMAT_FIELD_NAME);
 
   private final Path rootDirectory;
   private final FileSystem fileSystem;
@@ -71,6 +82,19 @@ public class FileSystemMetadataProvider implements MetadataProvider {
 
   @Override
   public DatasetDescriptor load(String name) {
+    InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+      .begin(name, "loadDescriptor");
+    DatasetEvents.Recording event = DatasetEvents.begin(
+      DatasetEvent.Type.METADATA_LOAD, name, null);
+    try {
+      return loadDescriptor(name);
+    } finally {
+      event.end();
+      operation.end();
+    }
+  }
+
+  private DatasetDescriptor loadDescriptor(String name) {
     logger.debug("Loading dataset metadata name:{}", name);
 
     Path directory = new Path(pathForDataset(name), METADATA_DIRECTORY);
@@ -94,6 +118,11 @@ public class FileSystemMetadataProvider implements MetadataProvider {
         builder.partitionStrategy(Accessor.getDefault().fromExpression(properties
           .getProperty(PARTITION_EXPRESSION_FIELD_NAME)));
       }
+      for (String property : properties.stringPropertyNames()) {
+        if (!RESERVED_FIELD_NAMES.contains(property)) {
+          builder.property(property, properties.getProperty(property));
+        }
+      }
     } catch (IOException e) {
       throw new MetadataProviderException(
         "Unable to load descriptor file:" + descriptorPath + " for dataset:" + name, e);
@@ -118,9 +147,27 @@ public class FileSystemMetadataProvider implements MetadataProvider {
 
   @Override
   public void save(String name, DatasetDescriptor descriptor) {
+    InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+      .begin(name, "saveDescriptor");
+    DatasetEvents.Recording event = DatasetEvents.begin(
+      DatasetEvent.Type.METADATA_SAVE, name, null);
+    try {
+      saveDescriptor(name, descriptor);
+    } finally {
+      event.end();
+      operation.end();
+    }
+  }
+
+  private void saveDescriptor(String name, DatasetDescriptor descriptor) {
     logger.debug("Saving dataset metadata name:{} descriptor:{}", name,
       descriptor);
 
+    for (String property : descriptor.listProperties()) {
+      Preconditions.checkArgument(!RESERVED_FIELD_NAMES.contains(property),
+        "Descriptor property name:%s is reserved", property);
+    }
+
     FSDataOutputStream outputStream = null;
     Path directory = new Path(pathForDataset(name), METADATA_DIRECTORY);
 
@@ -153,6 +200,9 @@ public class FileSystemMetadataProvider implements MetadataProvider {
     }
 
     Properties properties = new Properties();
+    for (String property : descriptor.listProperties()) {
+      properties.setProperty(property, descriptor.getProperty(property));
+    }
     properties.setProperty(VERSION_FIELD_NAME, METADATA_VERSION);
     properties.setProperty(FORMAT_FIELD_NAME, descriptor.getFormat().getName());
 
@@ -182,6 +232,16 @@ public class FileSystemMetadataProvider implements MetadataProvider {
 
   @Override
   public boolean delete(String name) {
+    InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+      .begin(name, "deleteDescriptor");
+    try {
+      return deleteDescriptor(name);
+    } finally {
+      operation.end();
+    }
+  }
+
+  private boolean deleteDescriptor(String name) {
     logger.debug("Deleting dataset metadata name:{}", name);
 
     Path directory = new Path(pathForDataset(name), METADATA_DIRECTORY);
@@ -0,0 +1,312 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.Instrumented;
+import com.cloudera.data.metrics.MetricGroup;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.util.Progressable;
+
+/**
+ * <p>
+ * A {@link FileSystem} that counts and times the calls made through it, and
+ * attributes them to the dataset operation that made them.
+ * </p>
+ * <p>
+ * To use it, wrap the {@link FileSystem} given to a
+ * {@link FileSystemDatasetRepository}:
+ * </p>
+ * <pre>
+ * FileSystem fileSystem = new InstrumentedFileSystem(FileSystem.get(conf));
+ * DatasetRepository repo = new FileSystemDatasetRepository(fileSystem, root);
+ * </pre>
+ * <p>
+ * Calls to {@code exists}, {@code getFileStatus}, {@code listStatus},
+ * {@code mkdirs}, {@code create}, {@code open}, {@code rename} and
+ * {@code delete} are timed. A call made while a dataset operation is in
+ * progress, such as {@link FileSystemDataset#getPartition} or a reader opening
+ * its next file, is recorded in that dataset's {@link DatasetMetrics} group
+ * as the timer {@code fs.<operation>.<call>}, for example
+ * {@code fs.getPartition.exists}. Calls for a dataset that has no metrics
+ * group, because it doesn't exist or has been dropped, aren't recorded there.
+ * Every call is also recorded in this file system's own
+ * {@link #getMetrics() metrics} as the timer {@code <call>}.
+ * </p>
+ * <p>
+ * Only the outermost call is recorded, so {@code exists}, which is
+ * implemented with {@code getFileStatus}, counts once.
+ * </p>
+ */
+public class InstrumentedFileSystem extends FilterFileSystem implements
+  Instrumented {
+
+  static final String EXISTS = "exists";
+  static final String GET_FILE_STATUS = "getFileStatus";
+  static final String LIST_STATUS = "listStatus";
+  static final String MKDIRS = "mkdirs";
+  static final String CREATE = "create";
+  static final String OPEN = "open";
+  static final String RENAME = "rename";
+  static final String DELETE = "delete";
+
+  private static final ThreadLocal<Operation> currentOperation =
+    new ThreadLocal<Operation>();
+
+  private static final ThreadLocal<int[]> callDepth = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[1];
+    }
+  };
+
+  private final MetricGroup metrics;
+
+  public InstrumentedFileSystem(FileSystem fileSystem) {
+    super(fileSystem);
+
+    Preconditions.checkArgument(fileSystem != null,
+      "FileSystem can not be null");
+
+    setConf(fileSystem.getConf());
+    this.metrics = new MetricGroup("fileSystem");
+  }
+
+  /**
+   * All calls made through this file system, by call.
+   */
+  @Override
+  public MetricGroup getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * <p>
+   * Attribute file system calls made by this thread to {@code operation} on
+   * {@code dataset}, until {@link Operation#end()}. If an operation is
+   * already in progress, or {@code dataset} is null, this has no effect.
+   * </p>
+   * <p>
+   * This is cheap, and may be used whether or not the file system is
+   * instrumented.
+   * </p>
+   */
+  static Operation begin(@Nullable String dataset, String operation) {
+    if (dataset == null || currentOperation.get() != null) {
+      return Operation.NESTED;
+    }
+
+    Operation current = new Operation(dataset, operation);
+    currentOperation.set(current);
+    return current;
+  }
+
+  @Override
+  public boolean exists(Path f) throws IOException {
+    Call call = begin(EXISTS);
+    try {
+      return super.exists(f);
+    } finally {
+      call.end();
+    }
+  }
+
+  @Override
+  public FileStatus getFileStatus(Path f) throws IOException {
+    Call call = begin(GET_FILE_STATUS);
+    try {
+      return super.getFileStatus(f);
+    } finally {
+      call.end();
+    }
+  }
+
+  @Override
+  public FileStatus[] listStatus(Path f) throws IOException {
+    Call call = begin(LIST_STATUS);
+    try {
+      return super.listStatus(f);
+    } finally {
+      call.end();
+    }
+  }
+
+  @Override
+  public FileStatus[] listStatus(Path f, PathFilter filter) throws IOException {
+    Call call = begin(LIST_STATUS);
+    try {
+      return super.listStatus(f, filter);
+    } finally {
+      call.end();
+    }
+  }
+
+  @Override
+  public boolean mkdirs(Path f, FsPermission permission) throws IOException {
+    Call call = begin(MKDIRS);
+    try {
+      return super.mkdirs(f, permission);
+    } finally {
+      call.end();
+    }
+  }
+
+  @Override
+  public FSDataOutputStream create(Path f, FsPermission permission,
+    boolean overwrite, int bufferSize, short replication, long blockSize,
+    Progressable progress) throws IOException {
+
+    Call call = begin(CREATE);
+    try {
+      return super.create(f, permission, overwrite, bufferSize, replication,
+        blockSize, progress);
+    } finally {
+      call.end();
+    }
+  }
+
+  @Override
+  public FSDataInputStream open(Path f, int bufferSize) throws IOException {
+    Call call = begin(OPEN);
+    try {
+      return super.open(f, bufferSize);
+    } finally {
+      call.end();
+    }
+  }
+
+  @Override
+  public boolean rename(Path src, Path dst) throws IOException {
+    Call call = begin(RENAME);
+    try {
+      return super.rename(src, dst);
+    } finally {
+      call.end();
+    }
+  }
+
+  @Override
+  public boolean delete(Path f, boolean recursive) throws IOException {
+    Call call = begin(DELETE);
+    try {
+      return super.delete(f, recursive);
+    } finally {
+      call.end();
+    }
+  }
+
+  private Call begin(String name) {
+    int[] depth = callDepth.get();
+    depth[0]++;
+    return new Call(name, depth);
+  }
+
+  /**
+   * A dataset operation in progress on a thread.
+   */
+  static class Operation {
+
+    private static final Operation NESTED = new Operation(null, null);
+
+    private final String dataset;
+    private final String operation;
+    private Map<String, Long> calls;
+
+    private Operation(String dataset, String operation) {
+      this.dataset = dataset;
+      this.operation = operation;
+    }
+
+    /**
+     * End the operation. Must be called, usually from a {@code finally}
+     * block, by the thread that began it.
+     */
+    void end() {
+      if (this != NESTED) {
+        currentOperation.remove();
+      }
+    }
+
+    /**
+     * The calls made through an {@link InstrumentedFileSystem} during this
+     * operation, by call. A nested operation's calls are counted in the
+     * operation it is nested in, so it has none.
+     */
+    Map<String, Long> getCalls() {
+      return calls == null ? Collections.<String, Long>emptyMap() : calls;
+    }
+
+    private void called(String call) {
+      if (calls == null) {
+        calls = Maps.newTreeMap();
+      }
+      Long count = calls.get(call);
+      calls.put(call, count == null ? 1 : count + 1);
+    }
+
+  }
+
+  private class Call {
+
+    private final String name;
+    private final int[] depth;
+    private final long startNanos;
+
+    Call(String name, int[] depth) {
+      this.name = name;
+      this.depth = depth;
+      this.startNanos = System.nanoTime();
+    }
+
+    void end() {
+      if (--depth[0] > 0) {
+        return;
+      }
+
+      long elapsed = System.nanoTime() - startNanos;
+      metrics.timer(name).update(elapsed, TimeUnit.NANOSECONDS);
+
+      Operation operation = currentOperation.get();
+      if (operation != null) {
+        operation.called(name);
+      }
+
+      // a missing or dropped dataset has no metrics, and doesn't get them
+      MetricGroup group = operation != null ?
+        DatasetMetrics.get().getGroup(operation.dataset) : null;
+      if (group != null) {
+        group.timer("fs." + operation.operation + "." + name)
+          .update(elapsed, TimeUnit.NANOSECONDS);
+      }
+    }
+
+  }
+
+}
@@ -18,6 +18,8 @@ package com.cloudera.data.filesystem;
 import com.cloudera.data.DatasetDescriptor;
 import com.cloudera.data.DatasetReader;
 import com.cloudera.data.Formats;
+import com.cloudera.data.metrics.Instrumented;
+import com.cloudera.data.metrics.MetricGroup;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import org.apache.hadoop.fs.FileSystem;
@@ -26,7 +28,7 @@ import org.apache.hadoop.fs.Path;
 import java.util.Iterator;
 import java.util.List;
 
-class MultiFileDatasetReader<E> implements DatasetReader<E> {
+class MultiFileDatasetReader<E> implements DatasetReader<E>, Instrumented {
 
   private final FileSystem fileSystem;
   private final DatasetDescriptor descriptor;
@@ -35,13 +37,24 @@ class MultiFileDatasetReader<E> implements DatasetReader<E> {
   private DatasetReader<E> reader;
 
   private ReaderWriterState state;
+  private final MetricGroup metrics;
 
   public MultiFileDatasetReader(FileSystem fileSystem, List<Path> files,
       DatasetDescriptor descriptor) {
+    this(fileSystem, files, descriptor, new MetricGroup("reader"));
+  }
+
+  /**
+   * @param metrics The metrics of this reader, to which the reader of each
+   *                file contributes.
+   */
+  public MultiFileDatasetReader(FileSystem fileSystem, List<Path> files,
+      DatasetDescriptor descriptor, MetricGroup metrics) {
 
     this.fileSystem = fileSystem;
     this.descriptor = descriptor;
     this.filesIter = files.iterator();
+    this.metrics = metrics;
 
     this.state = ReaderWriterState.NEW;
   }
@@ -60,12 +73,20 @@ class MultiFileDatasetReader<E> implements DatasetReader<E> {
   private void openNextReader() {
     if (Formats.PARQUET.equals(descriptor.getFormat())) {
       reader = new ParquetFileSystemDatasetReader<E>(fileSystem, filesIter.next(),
-          descriptor.getSchema());
+          descriptor.getSchema(), metrics);
     } else {
       reader = new FileSystemDatasetReader<E>(fileSystem, filesIter.next(),
-          descriptor.getSchema());
+          descriptor.getSchema(), metrics);
+    }
+
+    // readers of a dataset have metrics named for it
+    InstrumentedFileSystem.Operation operation = InstrumentedFileSystem.begin(
+      metrics.getParent() != null ? metrics.getName() : null, "read");
+    try {
+      reader.open();
+    } finally {
+      operation.end();
     }
-    reader.open();
   }
 
   @Override
@@ -116,6 +137,16 @@ class MultiFileDatasetReader<E> implements DatasetReader<E> {
     return state.equals(ReaderWriterState.OPEN);
   }
 
+  /**
+   * The metrics of this reader, including the time taken to list its files
+   * and those of each file read so far. Per record metrics of a file are
+   * added when the file has been read.
+   */
+  @Override
+  public MetricGroup getMetrics() {
+    return metrics;
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
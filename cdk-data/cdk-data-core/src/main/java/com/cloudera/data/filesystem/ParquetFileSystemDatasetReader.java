@@ -17,11 +17,14 @@ package com.cloudera.data.filesystem;
 
 import com.cloudera.data.DatasetReader;
 import com.cloudera.data.DatasetReaderException;
+import com.cloudera.data.metrics.Instrumented;
+import com.cloudera.data.metrics.MetricGroup;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
+import javax.annotation.Nullable;
 import org.apache.avro.Schema;
 import org.apache.avro.file.DataFileReader;
 import org.apache.avro.reflect.ReflectDatumReader;
@@ -32,7 +35,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import parquet.avro.AvroParquetReader;
 
-class ParquetFileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
+class ParquetFileSystemDatasetReader<E> implements DatasetReader<E>, Closeable,
+  Instrumented {
 
   private FileSystem fileSystem;
   private Path path;
@@ -42,14 +46,26 @@ class ParquetFileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
   private AvroParquetReader<E> reader;
 
   private E next;
+  private final FileReaderMetrics metrics;
 
   private static final Logger logger = LoggerFactory
     .getLogger(ParquetFileSystemDatasetReader.class);
 
   public ParquetFileSystemDatasetReader(FileSystem fileSystem, Path path, Schema schema) {
+    this(fileSystem, path, schema, null);
+  }
+
+  /**
+   * @param readerMetrics The metrics of the dataset reader this file reader
+   *                      contributes to, if any.
+   */
+  public ParquetFileSystemDatasetReader(FileSystem fileSystem, Path path, Schema schema,
+    @Nullable MetricGroup readerMetrics) {
+
     this.fileSystem = fileSystem;
     this.path = path;
     this.schema = schema;
+    this.metrics = new FileReaderMetrics(path, readerMetrics);
 
     this.state = ReaderWriterState.NEW;
   }
@@ -61,12 +77,20 @@ class ParquetFileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
 
     logger.debug("Opening reader on path:{}", path);
 
+    metrics.opening();
+
     try {
       reader = new AvroParquetReader<E>(path.makeQualified(fileSystem));
     } catch (IOException e) {
       throw new DatasetReaderException("Unable to create reader path:" + path, e);
     }
 
+    /*
+     * Parquet decompresses pages internally, so only the stored size is
+     * known, and that would cost another call to the NameNode. Neither is
+     * counted.
+     */
+    metrics.opened(-1);
     state = ReaderWriterState.OPEN;
   }
 
@@ -75,12 +99,19 @@ class ParquetFileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
     Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
       "Attempt to read from a file in state:%s", state);
     if (next == null) {
+      metrics.decoding();
       try {
         next = reader.read();
       } catch (EOFException e) {
         return false;
       } catch (IOException e) {
         throw new DatasetReaderException("Unable to read next record from: " + path, e);
+      } finally {
+        metrics.decoded();
+      }
+
+      if (next != null) {
+        metrics.recordRead();
       }
     }
     return next != null;
@@ -108,6 +139,8 @@ class ParquetFileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
       reader.close();
     } catch (IOException e) {
       throw new DatasetReaderException("Unable to close reader path:" + path, e);
+    } finally {
+      metrics.closed();
     }
 
     state = ReaderWriterState.CLOSED;
@@ -118,6 +151,11 @@ class ParquetFileSystemDatasetReader<E> implements DatasetReader<E>, Closeable {
     return state.equals(ReaderWriterState.OPEN);
   }
 
+  @Override
+  public MetricGroup getMetrics() {
+    return metrics.getMetrics();
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
@@ -15,39 +15,78 @@
  */
 package com.cloudera.data.filesystem;
 
-import com.cloudera.data.DatasetWriter;
+import com.cloudera.data.AbstractDatasetWriter;
 import com.cloudera.data.DatasetWriterException;
+import com.cloudera.data.metrics.Counter;
+import com.cloudera.data.metrics.DatasetEvent;
+import com.cloudera.data.metrics.DatasetEvents;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.Instrumented;
+import com.cloudera.data.metrics.MetricGroup;
+import com.cloudera.data.metrics.Timer;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
+import com.google.common.io.CountingOutputStream;
 import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
 import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.compress.SnappyCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import parquet.avro.AvroParquetWriter;
-import parquet.hadoop.ParquetWriter;
-import parquet.hadoop.metadata.CompressionCodecName;
 
-class ParquetFileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
-    Closeable {
+class ParquetFileSystemDatasetWriter<E> extends AbstractDatasetWriter<E>
+    implements Flushable, Closeable, Instrumented {
 
   private static final Logger logger = LoggerFactory
     .getLogger(ParquetFileSystemDatasetWriter.class);
 
+  /**
+   * The interval, in records, at which the size of a record is sampled to
+   * estimate how much of its row group a file has buffered.
+   */
+  static final int SIZE_SAMPLE_INTERVAL = 1000;
+
   private Path path;
+  private final Path firstPath;
   private Schema schema;
   private FileSystem fileSystem;
-  private boolean enableCompression;
+  private WriterProperties properties;
+  private GenericDatumReader<E> datumReader;
+  private BinaryDecoder decoder;
+  private EntityDatumWriter<E> sizeWriter;
+  private CountingOutputStream sizeCounter;
+  private BinaryEncoder sizeEncoder;
+  private long sampledRecordSize;
+  private long appended;
 
   private Path pathTmp;
   private AvroParquetWriter<E> avroParquetWriter;
+  private ParquetMemoryManager.Allocation allocation;
+  private int continuations;
   private ReaderWriterState state;
 
+  private final ParquetMemoryManager memoryManager;
+
+  private final String datasetName;
+  private final MetricGroup metrics;
+  private final Counter recordsWritten;
+  private final Counter bytesWritten;
+  private final Counter openFiles;
+  private final Timer closeTime;
+  private final Timer commitTime;
+
   public ParquetFileSystemDatasetWriter(FileSystem fileSystem, Path path,
       Schema schema) {
     this(fileSystem, path, schema, true);
@@ -55,12 +94,70 @@ class ParquetFileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
 
   public ParquetFileSystemDatasetWriter(FileSystem fileSystem, Path path,
       Schema schema, boolean enableCompression) {
+    this(fileSystem, path, schema, enableCompression, null);
+  }
+
+  /**
+   * @param datasetMetrics The metrics of the dataset (or partitioned writer)
+   *                       this writer contributes to, if any.
+   */
+  public ParquetFileSystemDatasetWriter(FileSystem fileSystem, Path path,
+      Schema schema, boolean enableCompression,
+      @Nullable MetricGroup datasetMetrics) {
+    this(fileSystem, path, schema, WriterProperties.of(enableCompression),
+        datasetMetrics);
+  }
+
+  /**
+   * @param properties     The codec, row group and page sizes, and encoding
+   *                       of the data file.
+   * @param datasetMetrics The metrics of the dataset (or partitioned writer)
+   *                       this writer contributes to, if any.
+   */
+  ParquetFileSystemDatasetWriter(FileSystem fileSystem, Path path,
+      Schema schema, WriterProperties properties,
+      @Nullable MetricGroup datasetMetrics) {
+    this(fileSystem, path, schema, properties, false, datasetMetrics);
+  }
+
+  /**
+   * @param encoded If true, entities are {@link ByteBuffer}s holding the
+   *                Avro binary encoding of a datum of {@code schema}, which
+   *                are decoded to generic records to write them.
+   */
+  ParquetFileSystemDatasetWriter(FileSystem fileSystem, Path path,
+      Schema schema, WriterProperties properties, boolean encoded,
+      @Nullable MetricGroup datasetMetrics) {
+    this(fileSystem, path, schema, properties, encoded, datasetMetrics,
+        ParquetMemoryManager.get());
+  }
+
+  /**
+   * @param memoryManager Allocates the row groups of the data file, and may
+   *                      ask the writer to continue in a new file to release
+   *                      its row group.
+   */
+  ParquetFileSystemDatasetWriter(FileSystem fileSystem, Path path,
+      Schema schema, WriterProperties properties, boolean encoded,
+      @Nullable MetricGroup datasetMetrics,
+      ParquetMemoryManager memoryManager) {
     this.fileSystem = fileSystem;
     this.path = path;
+    this.firstPath = path;
     this.pathTmp = new Path(path.getParent(), "." + path.getName() + ".tmp");
     this.schema = schema;
-    this.enableCompression = enableCompression;
+    this.properties = properties;
+    this.datumReader = encoded ? new GenericDatumReader<E>(schema) : null;
+    this.memoryManager = memoryManager;
     this.state = ReaderWriterState.NEW;
+
+    this.datasetName = datasetMetrics != null ? datasetMetrics.getName() : null;
+    this.metrics = new MetricGroup(path.getName(), datasetMetrics);
+    this.recordsWritten = metrics.counter(DatasetMetrics.RECORDS_WRITTEN);
+    this.bytesWritten = metrics.counter(DatasetMetrics.BYTES_WRITTEN);
+    this.openFiles = metrics.counter(DatasetMetrics.OPEN_FILES);
+    this.closeTime = metrics.timer(DatasetMetrics.CLOSE_TIME);
+    this.commitTime = metrics.timer(DatasetMetrics.COMMIT_TIME);
   }
 
   @Override
@@ -68,28 +165,54 @@ class ParquetFileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
     Preconditions.checkState(state.equals(ReaderWriterState.NEW),
       "Unable to open a writer from state:%s", state);
 
+    openFile();
+
+    openFiles.inc();
+    state = ReaderWriterState.OPEN;
+  }
+
+  private void openFile() {
     logger.debug(
       "Opening data file with pathTmp:{} (final path will be path:{})",
       pathTmp, path);
 
+    allocation = memoryManager.allocate(properties.getParquetBlockSize());
+
+    DatasetEvents.Recording event = DatasetEvents.begin(
+      DatasetEvent.Type.WRITER_OPEN, datasetName, pathTmp.toString());
     try {
-      CompressionCodecName codecName = CompressionCodecName.UNCOMPRESSED;
-      if (enableCompression) {
-         if (SnappyCodec.isNativeCodeLoaded()) {
-           codecName = CompressionCodecName.SNAPPY;
-         } else {
-           logger.warn("Compression enabled, but Snappy native code not loaded. " +
-               "Parquet file will not be compressed.");
-         }
-      }
       avroParquetWriter = new AvroParquetWriter<E>(pathTmp.makeQualified(fileSystem),
-          schema, codecName, ParquetWriter.DEFAULT_BLOCK_SIZE,
-          ParquetWriter.DEFAULT_PAGE_SIZE);
+          schema, properties.getParquetCodec(), allocation.getRowGroupSize(),
+          properties.getParquetPageSize(), properties.isParquetDictionary());
     } catch (IOException e) {
+      memoryManager.release(allocation);
       throw new DatasetWriterException("Unable to create writer to path:" + pathTmp, e);
+    } finally {
+      event.end();
     }
+  }
 
-    state = ReaderWriterState.OPEN;
+  /*
+   * Parquet only writes a row group when it is full or the file is closed, so
+   * the row group is released by committing this file and continuing in the
+   * next, named after the first.
+   */
+  private void continueInNewFile() {
+    logger.debug("Releasing the row group of path:{} by starting a new file",
+      path);
+
+    closeFile();
+    commitFile();
+
+    continuations++;
+    String name = firstPath.getName();
+    int dot = name.lastIndexOf('.');
+    path = new Path(firstPath.getParent(), dot > 0 ?
+        name.substring(0, dot) + "-" + continuations + name.substring(dot) :
+        name + "-" + continuations);
+    pathTmp = new Path(path.getParent(), "." + path.getName() + ".tmp");
+
+    openFile();
   }
 
   @Override
@@ -97,14 +220,70 @@ class ParquetFileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
     Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
       "Attempt to write to a writer in state:%s", state);
 
+    append(entity);
+
+    recordsWritten.inc();
+  }
+
+  @Override
+  public void writeAll(Iterable<? extends E> entities) {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+      "Attempt to write to a writer in state:%s", state);
+
+    long count = 0;
+    try {
+      for (E entity : entities) {
+        append(entity);
+        count++;
+      }
+    } finally {
+      recordsWritten.inc(count);
+    }
+  }
+
+  private void append(E entity) {
+    if (allocation.isReleaseRequested()) {
+      continueInNewFile();
+    }
+
     try {
-      avroParquetWriter.write(entity);
+      if (datumReader != null) {
+        // Parquet shreds records into columns, so encoded data is decoded
+        ByteBuffer datum = FileSystemDatasetWriter.arrayBacked((ByteBuffer) entity);
+        decoder = DecoderFactory.get().binaryDecoder(datum.array(),
+            datum.position(), datum.remaining(), decoder);
+        avroParquetWriter.write(datumReader.read(null, decoder));
+        allocation.buffered(datum.remaining());
+      } else {
+        avroParquetWriter.write(entity);
+        allocation.buffered(recordSize(entity));
+      }
     } catch (IOException e) {
       throw new DatasetWriterException(
         "Unable to write entity:" + entity + " with writer:" + avroParquetWriter, e);
     }
   }
 
+  /*
+   * Parquet doesn't expose how much it has buffered, so it is estimated from
+   * the Avro binary size of every SIZE_SAMPLE_INTERVAL'th record.
+   */
+  private long recordSize(E entity) throws IOException {
+    if (appended++ % SIZE_SAMPLE_INTERVAL == 0) {
+      if (sizeWriter == null) {
+        sizeWriter = new EntityDatumWriter<E>();
+        sizeWriter.setSchema(schema);
+        sizeCounter = new CountingOutputStream(ByteStreams.nullOutputStream());
+      }
+      long before = sizeCounter.getCount();
+      sizeEncoder = EncoderFactory.get().directBinaryEncoder(sizeCounter,
+          sizeEncoder);
+      sizeWriter.write(entity, sizeEncoder);
+      sampledRecordSize = sizeCounter.getCount() - before;
+    }
+    return sampledRecordSize;
+  }
+
   @Override
   public void flush() {
     Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
@@ -116,28 +295,65 @@ class ParquetFileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
   @Override
   public void close() {
     if (state.equals(ReaderWriterState.OPEN)) {
-      logger.debug("Closing pathTmp:{}", pathTmp);
-
       try {
-        Closeables.close(avroParquetWriter, false);
-      } catch (IOException e) {
-        throw new DatasetWriterException(
-          "Unable to close writer:" + avroParquetWriter + " to path:" + pathTmp);
+        closeFile();
+      } finally {
+        // a writer that fails to close is not closed, or counted, again
+        openFiles.dec();
+        state = ReaderWriterState.CLOSED;
       }
 
-      logger.debug("Committing pathTmp:{} to path:{}", pathTmp, path);
+      commitFile();
+    }
+  }
+
+  private void closeFile() {
+    logger.debug("Closing pathTmp:{}", pathTmp);
 
-      try {
-        if (!fileSystem.rename(pathTmp, path)) {
-          throw new DatasetWriterException(
-            "Failed to move " + pathTmp + " to " + path);
-        }
-      } catch (IOException e) {
+    Timer.Context timer = closeTime.time();
+    DatasetEvents.Recording event = DatasetEvents.begin(
+      DatasetEvent.Type.WRITER_CLOSE, datasetName, pathTmp.toString());
+    try {
+      Closeables.close(avroParquetWriter, false);
+    } catch (IOException e) {
+      throw new DatasetWriterException(
+        "Unable to close writer:" + avroParquetWriter + " to path:" + pathTmp);
+    } finally {
+      timer.stop();
+      event.end();
+      memoryManager.release(allocation);
+    }
+  }
+
+  private void commitFile() {
+    logger.debug("Committing pathTmp:{} to path:{}", pathTmp, path);
+
+    Timer.Context timer = commitTime.time();
+    DatasetEvents.Recording event = DatasetEvents.begin(
+      DatasetEvent.Type.WRITER_COMMIT, datasetName, path.toString());
+    try {
+      if (!fileSystem.rename(pathTmp, path)) {
         throw new DatasetWriterException(
-          "Internal error while trying to commit path:" + pathTmp, e);
+          "Failed to move " + pathTmp + " to " + path);
       }
+    } catch (IOException e) {
+      throw new DatasetWriterException(
+        "Internal error while trying to commit path:" + pathTmp, e);
+    } finally {
+      timer.stop();
+      event.end();
+    }
 
-      state = ReaderWriterState.CLOSED;
+    /*
+     * The Parquet writer opens its own stream, so the encoded size is only
+     * known from the file, at the cost of a call to the NameNode per file.
+     */
+    if (properties.isParquetCountBytes()) {
+      try {
+        bytesWritten.inc(fileSystem.getFileStatus(path).getLen());
+      } catch (IOException e) {
+        logger.warn("Unable to determine size of path:{}", path, e);
+      }
     }
   }
 
@@ -146,14 +362,21 @@ class ParquetFileSystemDatasetWriter<E> implements DatasetWriter<E>, Flushable,
     return state.equals(ReaderWriterState.OPEN);
   }
 
+  @Override
+  public MetricGroup getMetrics() {
+    return metrics;
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
       .add("path", path)
       .add("schema", schema)
       .add("fileSystem", fileSystem)
+      .add("properties", properties)
       .add("pathTmp", pathTmp)
       .add("avroParquetWriter", avroParquetWriter)
+      .add("continuations", continuations)
       .add("state", state)
       .omitNullValues()
       .toString();
@@ -0,0 +1,272 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Shares a JVM-wide pool of heap between the row groups that open Parquet
+ * writers buffer.
+ * </p>
+ * <p>
+ * Parquet buffers a whole row group in memory before writing it, and fixes
+ * the size of a writer's row groups when the writer is created. So each data
+ * file is given a row group size when it is opened: the size it asks for, or
+ * an equal share of the pool if that is smaller, but no less than
+ * {@link #MIN_ROW_GROUP_SIZE}. As more files open, their shares shrink.
+ * </p>
+ * <p>
+ * When the row groups of the open files add up to more than the pool, the
+ * files that have buffered the most are asked to release their row groups,
+ * until the rest would fit. A Parquet writer can only release its buffer by
+ * closing its file, so a file that is asked commits itself and continues in
+ * a new file with a row group of the current share. Files that have buffered
+ * less than {@link #MIN_ROW_GROUP_SIZE} are not asked, since committing them
+ * would leave small files that are slow to read. Instead, while the pool is
+ * over-committed, newly opened files get the minimum row group, and files are
+ * asked as they fill.
+ * </p>
+ */
+@ThreadSafe
+class ParquetMemoryManager {
+
+  private static final Logger logger = LoggerFactory
+    .getLogger(ParquetMemoryManager.class);
+
+  /**
+   * The fraction of the maximum heap that row groups may use.
+   */
+  static final double DEFAULT_POOL_RATIO = 0.5;
+
+  /**
+   * The smallest row group a file is given, however many files are open, and
+   * the least a file must have buffered before it is asked to release it.
+   */
+  static final int MIN_ROW_GROUP_SIZE = 1024 * 1024;
+
+  private static final ParquetMemoryManager instance = new ParquetMemoryManager(
+    (long) (Runtime.getRuntime().maxMemory() * DEFAULT_POOL_RATIO),
+    MIN_ROW_GROUP_SIZE);
+
+  private static final Comparator<Allocation> MOST_BUFFERED_FIRST =
+    new Comparator<Allocation>() {
+      @Override
+      public int compare(Allocation a, Allocation b) {
+        return a.reclaimBuffered > b.reclaimBuffered ? -1 :
+          (a.reclaimBuffered == b.reclaimBuffered ? 0 : 1);
+      }
+    };
+
+  private final long poolBytes;
+  private final int minRowGroupSize;
+
+  private final Set<Allocation> allocations = Sets.newHashSet();
+  private long allocatedBytes;
+  private boolean overCommitted;
+
+  /**
+   * The memory manager shared by all Parquet writers in this JVM.
+   */
+  static ParquetMemoryManager get() {
+    return instance;
+  }
+
+  ParquetMemoryManager(long poolBytes, int minRowGroupSize) {
+    Preconditions.checkArgument(poolBytes > 0,
+      "Memory pool:%s must be positive", poolBytes);
+    Preconditions.checkArgument(minRowGroupSize > 0,
+      "Minimum row group size:%s must be positive", minRowGroupSize);
+
+    this.poolBytes = poolBytes;
+    this.minRowGroupSize = minRowGroupSize;
+  }
+
+  /**
+   * Allocate the row group of a file that is being opened.
+   *
+   * @param requestedRowGroupSize The row group size the file is configured
+   *                              with, which is the most it is given.
+   * @return The allocation, which must be released when the file is closed.
+   */
+  synchronized Allocation allocate(int requestedRowGroupSize) {
+    Preconditions.checkArgument(requestedRowGroupSize > 0,
+      "Row group size:%s must be positive", requestedRowGroupSize);
+
+    int share = overCommitted ? minRowGroupSize :
+      share(allocations.size() + 1, requestedRowGroupSize);
+    Allocation allocation = new Allocation(this, share);
+    allocations.add(allocation);
+    allocatedBytes += share;
+
+    if (allocatedBytes > poolBytes) {
+      reclaim(share(allocations.size(), Integer.MAX_VALUE));
+    } else {
+      overCommitted = false;
+    }
+
+    logger.debug("Allocated row group of {} bytes, {} of {} bytes in use by {} files",
+      new Object[] { share, allocatedBytes, poolBytes, allocations.size() });
+
+    return allocation;
+  }
+
+  synchronized void release(Allocation allocation) {
+    if (allocations.remove(allocation)) {
+      allocatedBytes -= allocation.rowGroupSize;
+      if (allocatedBytes <= poolBytes) {
+        overCommitted = false;
+      }
+    }
+  }
+
+  synchronized long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  long getPoolBytes() {
+    return poolBytes;
+  }
+
+  private int share(int files, int requestedRowGroupSize) {
+    long share = Math.min(requestedRowGroupSize, poolBytes / files);
+    return (int) Math.max(minRowGroupSize, share);
+  }
+
+  /*
+   * Called when a file has buffered the minimum, and so may be asked to
+   * release its row group if the pool is over-committed.
+   */
+  private synchronized void filled(Allocation allocation) {
+    if (overCommitted && allocations.contains(allocation)) {
+      reclaim(share(allocations.size(), Integer.MAX_VALUE));
+    }
+  }
+
+  /*
+   * Ask the files that have buffered the most to release their row groups
+   * until the rest, and those files reopened with the current share, would
+   * fit in the pool.
+   */
+  private void reclaim(int share) {
+    // writers go on buffering, so sort by what they had buffered at this point
+    List<Allocation> mostBuffered = Lists.newArrayList(allocations);
+    for (Allocation allocation : mostBuffered) {
+      allocation.reclaimBuffered = allocation.bufferedBytes;
+    }
+    Collections.sort(mostBuffered, MOST_BUFFERED_FIRST);
+
+    long projectedBytes = allocatedBytes;
+    for (Allocation allocation : mostBuffered) {
+      if (allocation.releaseRequested && allocation.rowGroupSize > share) {
+        projectedBytes -= allocation.rowGroupSize - share;
+      }
+    }
+
+    for (Allocation allocation : mostBuffered) {
+      if (projectedBytes <= poolBytes ||
+        allocation.reclaimBuffered < minRowGroupSize) {
+        break;
+      }
+      if (!allocation.releaseRequested && allocation.rowGroupSize > share) {
+        allocation.releaseRequested = true;
+        projectedBytes -= allocation.rowGroupSize - share;
+      }
+    }
+
+    // files that haven't filled, or are at the minimum, can't be reclaimed yet
+    boolean over = projectedBytes > poolBytes;
+    if (over && !overCommitted) {
+      logger.warn("Parquet row groups of {} open files need {} bytes, more than"
+        + " the memory pool of {} bytes", new Object[] { allocations.size(),
+        projectedBytes, poolBytes });
+    }
+    overCommitted = over;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return Objects.toStringHelper(this)
+      .add("poolBytes", poolBytes)
+      .add("minRowGroupSize", minRowGroupSize)
+      .add("allocatedBytes", allocatedBytes)
+      .add("files", allocations.size())
+      .toString();
+  }
+
+  /**
+   * The row group of one open file.
+   */
+  static class Allocation {
+
+    private final ParquetMemoryManager manager;
+    private final int rowGroupSize;
+    private volatile long bufferedBytes;
+    private volatile boolean releaseRequested;
+
+    // guarded by the manager
+    private long reclaimBuffered;
+
+    private Allocation(ParquetMemoryManager manager, int rowGroupSize) {
+      this.manager = manager;
+      this.rowGroupSize = rowGroupSize;
+    }
+
+    int getRowGroupSize() {
+      return rowGroupSize;
+    }
+
+    /**
+     * Record that the file has buffered a record of about {@code bytes}. This
+     * must only be called by the file's writer.
+     */
+    void buffered(long bytes) {
+      long before = bufferedBytes;
+      long after = before + bytes;
+      if (after > rowGroupSize) {
+        // Parquet writes out the row group once it is full
+        bufferedBytes = 0;
+      } else {
+        bufferedBytes = after;
+        if (before < manager.minRowGroupSize &&
+          after >= manager.minRowGroupSize) {
+          manager.filled(this);
+        }
+      }
+    }
+
+
+    /**
+     * Returns true if the file should close to give back its row group. This
+     * is set by other threads, and is cheap to check after each record.
+     */
+    boolean isReleaseRequested() {
+      return releaseRequested;
+    }
+
+  }
+
+}
@@ -15,54 +15,141 @@
  */
 package com.cloudera.data.filesystem;
 
+import com.cloudera.data.AbstractDatasetWriter;
 import com.cloudera.data.Dataset;
 import com.cloudera.data.DatasetWriter;
 import com.cloudera.data.DatasetWriterException;
 import com.cloudera.data.PartitionKey;
 import com.cloudera.data.PartitionStrategy;
+import com.cloudera.data.metrics.Counter;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.Instrumented;
+import com.cloudera.data.metrics.MetricGroup;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.base.Ticker;
 import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.RemovalListener;
-import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.RemovalCause;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
-class PartitionedDatasetWriter<E> implements DatasetWriter<E>, Closeable {
+class PartitionedDatasetWriter<E> extends AbstractDatasetWriter<E> implements
+  Closeable, Instrumented {
 
   private static final Logger logger = LoggerFactory
     .getLogger(PartitionedDatasetWriter.class);
 
+  /**
+   * Evictions per second of partition writers above which a warning is
+   * logged. Each eviction closes a file that is reopened as a new, smaller
+   * file if its partition is written to again.
+   */
+  static final double EVICTION_WARNING_RATE = 10;
+
   private Dataset dataset;
   private int maxWriters;
+  private long idleNanos;
 
   private final PartitionStrategy partitionStrategy;
-  private LoadingCache<PartitionKey, DatasetWriter<E>> cachedWriters;
+  private WriterCache<E> cachedWriters;
   private PartitionKey key;
+  private PartitionKey nextKey;
+  private final Map<PartitionKey, List<E>> groups = Maps.newLinkedHashMap();
 
   private ReaderWriterState state;
 
+  private final boolean encoded;
+  private final EncodedPartitionKeys encodedKeys;
+
+  private final MetricGroup metrics;
+  private final Counter cacheHits;
+  private final Counter cacheMisses;
+  private final Counter cacheEvictions;
+  private final Counter cacheExpirations;
+  private final EvictionRate evictionRate;
+
   public PartitionedDatasetWriter(Dataset dataset) {
+    this(dataset, DatasetMetrics.get().group(dataset.getName()));
+  }
+
+  /**
+   * @param datasetMetrics The metrics this writer's partition writers
+   *                       contribute to, through those of this writer.
+   */
+  PartitionedDatasetWriter(Dataset dataset, MetricGroup datasetMetrics) {
+    this(dataset, datasetMetrics, false);
+  }
+
+  /**
+   * @param encoded If true, entities are {@link ByteBuffer}s holding their
+   *                Avro binary encoding, which are partitioned by decoding
+   *                only the fields the partition strategy reads.
+   */
+  PartitionedDatasetWriter(Dataset dataset, MetricGroup datasetMetrics,
+    boolean encoded) {
+    this(dataset, datasetMetrics, encoded, 1);
+  }
+
+  /**
+   * @param shares The number of writers sharing the dataset's budget of open
+   *               partition writers, such as the stripes of a
+   *               {@link ConcurrentDatasetWriter}. This writer keeps open its
+   *               share of the budget, but at least one partition writer.
+   */
+  PartitionedDatasetWriter(Dataset dataset, MetricGroup datasetMetrics,
+    boolean encoded, int shares) {
+
+    Preconditions.checkArgument(shares > 0,
+      "Number of shares must be positive, not %s", shares);
     Preconditions.checkArgument(dataset.getDescriptor().isPartitioned(),
       "Dataset " + dataset + " is not partitioned");
 
     this.dataset = dataset;
+    this.encoded = encoded;
+    this.encodedKeys = encoded ? new EncodedPartitionKeys(
+      dataset.getDescriptor().getSchema(),
+      dataset.getDescriptor().getPartitionStrategy()) : null;
     this.partitionStrategy = dataset.getDescriptor().getPartitionStrategy();
-    this.maxWriters = Math.min(10, partitionStrategy.getCardinality());
+    WriterProperties properties = WriterProperties.of(dataset.getDescriptor());
+    this.maxWriters = Math.min(Math.max(1,
+      properties.getPartitionMaxWriters(dataset.getDescriptor().getFormat())
+        / shares),
+      partitionStrategy.getCardinality());
+    this.idleNanos = TimeUnit.SECONDS.toNanos(
+      properties.getPartitionIdleSeconds());
     this.state = ReaderWriterState.NEW;
+    this.metrics = new MetricGroup(dataset.getName(), datasetMetrics);
+    this.cacheHits = metrics.counter(DatasetMetrics.WRITER_CACHE_HITS);
+    this.cacheMisses = metrics.counter(DatasetMetrics.WRITER_CACHE_MISSES);
+    this.cacheEvictions = metrics.counter(
+      DatasetMetrics.WRITER_CACHE_EVICTIONS);
+    this.cacheExpirations = metrics.counter(
+      DatasetMetrics.WRITER_CACHE_EXPIRATIONS);
+    this.evictionRate = new EvictionRate(dataset.getName(),
+      EVICTION_WARNING_RATE, Ticker.systemTicker());
   }
 
   @Deprecated
   public PartitionedDatasetWriter(Dataset dataset,
     PartitionStrategy partitionStrategy) {
 
+    this(checkPartitionStrategy(dataset, partitionStrategy),
+      DatasetMetrics.get().group(dataset.getName()), false, 1);
+  }
+
+  private static Dataset checkPartitionStrategy(Dataset dataset,
+    PartitionStrategy partitionStrategy) {
+
     Preconditions.checkArgument(dataset.getDescriptor().isPartitioned(),
       "Dataset " + dataset + " is not partitioned");
     Preconditions
@@ -70,11 +157,7 @@ class PartitionedDatasetWriter<E> implements DatasetWriter<E>, Closeable {
         dataset.getDescriptor().getPartitionStrategy()
           .equals(partitionStrategy),
         "Dataset descriptor's partitions strategy doesn't match the provided partition strategy");
-
-    this.dataset = dataset;
-    this.partitionStrategy = dataset.getDescriptor().getPartitionStrategy();
-    this.maxWriters = Math.min(10, this.partitionStrategy.getCardinality());
-    this.state = ReaderWriterState.NEW;
+    return dataset;
   }
 
   @Override
@@ -85,9 +168,11 @@ class PartitionedDatasetWriter<E> implements DatasetWriter<E>, Closeable {
     logger.debug("Opening partitioned dataset writer w/strategy:{}",
       partitionStrategy);
 
-    cachedWriters = CacheBuilder.newBuilder().maximumSize(maxWriters)
-      .removalListener(new DatasetWriterRemovalStrategy<E>())
-      .build(new DatasetWriterCacheLoader<E>(dataset));
+    cachedWriters = new WriterCache<E>(
+      new DatasetWriterCacheLoader<E>(dataset, metrics, encoded), maxWriters,
+      idleNanos, Ticker.systemTicker(),
+      new DatasetWriterRemovalStrategy<E>(cacheEvictions, cacheExpirations,
+        evictionRate));
 
     state = ReaderWriterState.OPEN;
   }
@@ -97,17 +182,98 @@ class PartitionedDatasetWriter<E> implements DatasetWriter<E>, Closeable {
     Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
       "Attempt to write to a writer in state:%s", state);
 
-    key = partitionStrategy.partitionKeyForEntity(entity, key);
-    DatasetWriter<E> writer;
+    E writable = arrayBacked(entity);
+    key = partitionKey(writable, key);
+    writerFor(key, writable, 1).write(writable);
+  }
+
+  /**
+   * Write a batch grouped by partition, looking up the writer of each
+   * partition once per batch. Entities are written in their batch order
+   * within each partition, but partitions are not written in any particular
+   * order.
+   */
+  @Override
+  public void writeAll(Iterable<? extends E> entities) {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+      "Attempt to write to a writer in state:%s", state);
 
     try {
-      writer = cachedWriters.get(key);
-    } catch (ExecutionException e) {
-      throw new DatasetWriterException("Unable to get a writer for entity:" + entity
-        + " partition key:" + Arrays.asList(key), e);
+      for (E entity : entities) {
+        E writable = arrayBacked(entity);
+        nextKey = partitionKey(writable, nextKey);
+        List<E> group = groups.get(nextKey);
+        if (group == null) {
+          // nextKey is reused, so the groups keep a copy
+          group = Lists.newArrayList();
+          groups.put(partitionStrategy.partitionKey(
+            nextKey.getValues().toArray()), group);
+        }
+        group.add(writable);
+      }
+      for (Map.Entry<PartitionKey, List<E>> entry : groups.entrySet()) {
+        List<E> group = entry.getValue();
+        if (!group.isEmpty()) {
+          writerFor(entry.getKey(), group.get(0), group.size())
+            .writeAll(group);
+          group.clear();
+        }
+      }
+    } finally {
+      // keep the lists of as many partitions as there are open writers
+      if (groups.size() > maxWriters) {
+        groups.clear();
+      } else {
+        for (List<E> group : groups.values()) {
+          group.clear();
+        }
+      }
     }
+  }
+
+  /*
+   * Encoded entities are decoded from their backing array both to partition
+   * and to write them, so one that needs a copy is copied once, here.
+   */
+  @SuppressWarnings("unchecked")
+  private E arrayBacked(E entity) {
+    return encoded ?
+      (E) FileSystemDatasetWriter.arrayBacked((ByteBuffer) entity) : entity;
+  }
 
-    writer.write(entity);
+  private PartitionKey partitionKey(E entity, @Nullable PartitionKey reuseKey) {
+    if (encoded) {
+      return encodedKeys.partitionKey((ByteBuffer) entity, reuseKey);
+    }
+    return partitionStrategy.partitionKeyForEntity(entity, reuseKey);
+  }
+
+  /*
+   * Get the writer for a partition, counting the records about to be written
+   * to it as cache hits, except for the first if the writer has to be opened.
+   */
+  private DatasetWriter<E> writerFor(PartitionKey partitionKey, E entity,
+    int records) {
+
+    DatasetWriter<E> writer = cachedWriters.getIfPresent(partitionKey, records);
+
+    if (writer != null) {
+      cacheHits.inc(records);
+    } else {
+      // write() reuses its key, so the cache keeps a copy
+      PartitionKey copy = partitionStrategy.partitionKey(
+        partitionKey.getValues().toArray());
+      try {
+        writer = cachedWriters.load(copy, records);
+      } catch (Exception e) {
+        throw new DatasetWriterException("Unable to get a writer for entity:" + entity
+          + " partition key:" + Arrays.asList(partitionKey), e);
+      }
+      cacheMisses.inc();
+      cacheHits.inc(records - 1);
+    }
+
+    return writer;
   }
 
   @Override
@@ -140,13 +306,23 @@ class PartitionedDatasetWriter<E> implements DatasetWriter<E>, Closeable {
       logger.debug("Closing all cached writers for partition strategy:{}",
         partitionStrategy);
 
-      for (Map.Entry<PartitionKey, DatasetWriter<E>> entry : cachedWriters
-        .asMap().entrySet()) {
-        logger.debug("Closing partition writer:{}.{}", entry.getKey(),
-          entry.getValue());
-        entry.getValue().close();
+      InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+        .begin(dataset.getName(), "write");
+      try {
+        for (Map.Entry<PartitionKey, DatasetWriter<E>> entry : cachedWriters
+          .asMap().entrySet()) {
+          logger.debug("Closing partition writer:{}.{}", entry.getKey(),
+            entry.getValue());
+          entry.getValue().close();
+        }
+        cachedWriters.clear();
+      } finally {
+        operation.end();
       }
 
+      logger.debug("Wrote {} records per file on average, {} writers evicted",
+        getRecordsPerFile(), cacheEvictions.getCount());
+
       state = ReaderWriterState.CLOSED;
     }
   }
@@ -156,11 +332,33 @@ class PartitionedDatasetWriter<E> implements DatasetWriter<E>, Closeable {
     return state.equals(ReaderWriterState.OPEN);
   }
 
+  /**
+   * The metrics of all partition writers opened by this writer. Records
+   * written and open files are counted by the partition writers, and hits,
+   * misses and evictions of the cache of partition writers by this writer.
+   */
+  @Override
+  public MetricGroup getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * The average number of records written to each file opened by this
+   * writer, or zero if none have been opened.
+   */
+  public double getRecordsPerFile() {
+    long files = cacheMisses.getCount();
+    return files == 0 ? 0 :
+      (double) metrics.counter(DatasetMetrics.RECORDS_WRITTEN).getCount()
+        / files;
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
       .add("partitionStrategy", partitionStrategy)
-      .add("maxWriters", maxWriters).add("dataset", dataset)
+      .add("maxWriters", maxWriters).add("idleNanos", idleNanos)
+      .add("dataset", dataset)
       .add("cachedWriters", cachedWriters).toString();
   }
 
@@ -168,35 +366,358 @@ class PartitionedDatasetWriter<E> implements DatasetWriter<E>, Closeable {
     CacheLoader<PartitionKey, DatasetWriter<E>> {
 
     private Dataset dataset;
+    private MetricGroup metrics;
+    private boolean encoded;
 
-    public DatasetWriterCacheLoader(Dataset dataset) {
+    public DatasetWriterCacheLoader(Dataset dataset, MetricGroup metrics,
+      boolean encoded) {
       this.dataset = dataset;
+      this.metrics = metrics;
+      this.encoded = encoded;
     }
 
     @Override
     public DatasetWriter<E> load(PartitionKey key) throws Exception {
-      Dataset partition = dataset.getPartition(key, true);
-      DatasetWriter<E> writer = partition.getWriter();
-
-      writer.open();
-      return writer;
+      InstrumentedFileSystem.Operation operation = InstrumentedFileSystem
+        .begin(dataset.getName(), "write");
+      try {
+        Dataset partition = dataset.getPartition(key, true);
+        DatasetWriter<E> writer;
+
+        if (partition instanceof FileSystemDataset) {
+          writer = ((FileSystemDataset) partition).getWriter(metrics, encoded);
+        } else if (encoded) {
+          @SuppressWarnings("unchecked")
+          DatasetWriter<E> encodedWriter =
+            (DatasetWriter<E>) partition.getEncodedWriter();
+          writer = encodedWriter;
+        } else {
+          writer = partition.getWriter();
+        }
+
+        writer.open();
+        return writer;
+      } finally {
+        operation.end();
+      }
     }
 
   }
 
   private static class DatasetWriterRemovalStrategy<E> implements
-    RemovalListener<PartitionKey, DatasetWriter<E>> {
+    WriterCache.RemovalListener<E> {
 
-    @Override
-    public void onRemoval(
-      RemovalNotification<PartitionKey, DatasetWriter<E>> notification) {
+    private Counter evictions;
+    private Counter expirations;
+    private EvictionRate evictionRate;
+
+    public DatasetWriterRemovalStrategy(Counter evictions, Counter expirations,
+      EvictionRate evictionRate) {
+      this.evictions = evictions;
+      this.expirations = expirations;
+      this.evictionRate = evictionRate;
+    }
 
-      DatasetWriter<E> writer = notification.getValue();
+    @Override
+    public void onRemoval(PartitionKey key, DatasetWriter<E> writer,
+      RemovalCause cause) {
 
-      logger.debug("Removing writer:{} for partition:{}", writer,
-        notification.getKey());
+      logger.debug("Removing writer:{} for partition:{}", writer, key);
 
       writer.close();
+
+      // idle writers are expected to close, only evictions mean thrashing
+      if (cause == RemovalCause.SIZE) {
+        evictions.inc();
+        evictionRate.evicted();
+      } else if (cause == RemovalCause.EXPIRED) {
+        expirations.inc();
+      }
+    }
+
+  }
+
+  /**
+   * <p>
+   * The open partition writers, at most {@code maxWriters} of them.
+   * </p>
+   * <p>
+   * When another partition has to be opened and the cache is full, the writer
+   * evicted is the one written least often recently, rather than the one
+   * written least recently. Each writer counts the records written to it, and
+   * the count halves every {@link #HALF_LIFE_NANOS}, so a partition that is
+   * written steadily outlasts one that was written once or in a short burst.
+   * Among writers with equal counts, the least recently written is evicted.
+   * </p>
+   * <p>
+   * A writer opened less than {@link #PROBATION_NANOS} ago hasn't had time to
+   * build up a count, so it is only evicted if every open writer is that new,
+   * and then the least recently written goes. Otherwise, when a new set of
+   * partitions starts, such as the next hour of a time-partitioned dataset,
+   * the new writers would evict each other while the previous set's counts
+   * decay. With probation, the previous set is closed instead.
+   * </p>
+   * <p>
+   * Writers not written for {@code idleNanos} are closed, checked as writers
+   * are looked up. Like the rest of {@link PartitionedDatasetWriter}, this
+   * class is not thread-safe.
+   * </p>
+   */
+  static class WriterCache<E> {
+
+    static final long HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * How long a newly opened writer is protected from eviction by
+     * frequency, long enough for established writers no longer written to
+     * decay below the new ones.
+     */
+    static final long PROBATION_NANOS = HALF_LIFE_NANOS;
+
+    /*
+     * Counts are decayed at most this often, so most lookups only add to
+     * them, rather than computing a power.
+     */
+    private static final long DECAY_INTERVAL_NANOS =
+      TimeUnit.SECONDS.toNanos(1);
+
+    private final CacheLoader<PartitionKey, DatasetWriter<E>> loader;
+    private final int maxWriters;
+    private final long idleNanos;
+    private final Ticker ticker;
+    private final RemovalListener<E> listener;
+
+    private final Map<PartitionKey, Entry<E>> entries = Maps.newHashMap();
+    private long lastExpiry;
+
+    /**
+     * @param idleNanos How long a writer may go without being written before
+     *                  it is closed, or zero to keep idle writers open.
+     */
+    WriterCache(CacheLoader<PartitionKey, DatasetWriter<E>> loader,
+      int maxWriters, long idleNanos, Ticker ticker,
+      RemovalListener<E> listener) {
+
+      Preconditions.checkArgument(maxWriters > 0,
+        "Max writers:%s must be positive", maxWriters);
+
+      this.loader = loader;
+      this.maxWriters = maxWriters;
+      this.idleNanos = idleNanos;
+      this.ticker = ticker;
+      this.listener = listener;
+      this.lastExpiry = ticker.read();
+    }
+
+    /**
+     * The writer of a partition, if it is open, counting {@code records}
+     * about to be written to it.
+     */
+    @Nullable
+    DatasetWriter<E> getIfPresent(PartitionKey key, int records) {
+      long now = ticker.read();
+      expireIdle(now);
+
+      Entry<E> entry = entries.get(key);
+      if (entry == null) {
+        return null;
+      }
+
+      entry.written(now, records);
+      return entry.writer;
+    }
+
+    /**
+     * Open the writer of a partition that isn't cached, evicting another if
+     * the cache is full.
+     *
+     * @param key A key that will not be modified while it is cached.
+     */
+    DatasetWriter<E> load(PartitionKey key, int records) throws Exception {
+      Preconditions.checkState(!entries.containsKey(key),
+        "Partition:%s is already open", key);
+
+      long now = ticker.read();
+      expireIdle(now);
+
+      if (entries.size() >= maxWriters) {
+        evict(now);
+      }
+
+      Entry<E> entry = new Entry<E>(loader.load(key), now);
+      entries.put(key, entry);
+      entry.written(now, records);
+      return entry.writer;
+    }
+
+    Map<PartitionKey, DatasetWriter<E>> asMap() {
+      Map<PartitionKey, DatasetWriter<E>> writers = Maps.newLinkedHashMap();
+      for (Map.Entry<PartitionKey, Entry<E>> entry : entries.entrySet()) {
+        writers.put(entry.getKey(), entry.getValue().writer);
+      }
+      return writers;
+    }
+
+    int size() {
+      return entries.size();
+    }
+
+    /**
+     * Forget all writers, without closing them.
+     */
+    void clear() {
+      entries.clear();
+    }
+
+    private void evict(long now) {
+      PartitionKey victim = null;
+      double lowest = Double.MAX_VALUE;
+      long oldest = Long.MAX_VALUE;
+
+      // the least often written established writer
+      for (Map.Entry<PartitionKey, Entry<E>> entry : entries.entrySet()) {
+        Entry<E> candidate = entry.getValue();
+        if (now - candidate.opened < PROBATION_NANOS) {
+          continue;
+        }
+        double frequency = candidate.frequency(now);
+        if (frequency < lowest || (frequency == lowest
+          && candidate.lastWritten < oldest)) {
+          victim = entry.getKey();
+          lowest = frequency;
+          oldest = candidate.lastWritten;
+        }
+      }
+
+      // or, if all are on probation, the least recently written
+      if (victim == null) {
+        for (Map.Entry<PartitionKey, Entry<E>> entry : entries.entrySet()) {
+          if (entry.getValue().lastWritten < oldest) {
+            victim = entry.getKey();
+            oldest = entry.getValue().lastWritten;
+          }
+        }
+      }
+
+      remove(victim, RemovalCause.SIZE);
+    }
+
+    private void expireIdle(long now) {
+      // scan at most a few times per timeout, not on every lookup
+      if (idleNanos == 0 || now - lastExpiry < idleNanos / 4) {
+        return;
+      }
+      lastExpiry = now;
+
+      List<PartitionKey> idle = Lists.newArrayList();
+      for (Map.Entry<PartitionKey, Entry<E>> entry : entries.entrySet()) {
+        if (now - entry.getValue().lastWritten >= idleNanos) {
+          idle.add(entry.getKey());
+        }
+      }
+      for (PartitionKey key : idle) {
+        remove(key, RemovalCause.EXPIRED);
+      }
+    }
+
+    private void remove(PartitionKey key, RemovalCause cause) {
+      Entry<E> entry = entries.remove(key);
+      listener.onRemoval(key, entry.writer, cause);
+    }
+
+    /**
+     * Closes writers as they are removed from the cache.
+     */
+    interface RemovalListener<E> {
+
+      void onRemoval(PartitionKey key, DatasetWriter<E> writer,
+        RemovalCause cause);
+
+    }
+
+    private static class Entry<E> {
+
+      private final DatasetWriter<E> writer;
+      private final long opened;
+      private double count;
+      private long decayedAt;
+      private long lastWritten;
+
+      Entry(DatasetWriter<E> writer, long now) {
+        this.writer = writer;
+        this.opened = now;
+        this.decayedAt = now;
+        this.lastWritten = now;
+      }
+
+      void written(long now, int records) {
+        if (now - decayedAt >= DECAY_INTERVAL_NANOS) {
+          count = frequency(now);
+          decayedAt = now;
+        }
+        count += records;
+        lastWritten = now;
+      }
+
+      /*
+       * The count of records written, decayed to now.
+       */
+      double frequency(long now) {
+        return count * Math.pow(0.5, (double) (now - decayedAt) / HALF_LIFE_NANOS);
+      }
+
+    }
+
+  }
+
+  /**
+   * Warns when partition writers are evicted faster than a threshold,
+   * measured over windows of {@link #WINDOW_NANOS}. Writers evicted this
+   * often are thrashing the cache and producing many small files.
+   */
+  static class EvictionRate {
+
+    static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final String dataset;
+    private final double warningRate;
+    private final Ticker ticker;
+
+    private long windowStart;
+    private long evictions;
+
+    EvictionRate(String dataset, double warningRate, Ticker ticker) {
+      this.dataset = dataset;
+      this.warningRate = warningRate;
+      this.ticker = ticker;
+      this.windowStart = ticker.read();
+    }
+
+    /**
+     * Record an eviction, returning true if a warning was logged.
+     */
+    boolean evicted() {
+      evictions++;
+
+      long now = ticker.read();
+      long elapsed = now - windowStart;
+      if (elapsed < WINDOW_NANOS) {
+        return false;
+      }
+
+      double rate = evictions * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+      windowStart = now;
+      evictions = 0;
+
+      if (rate > warningRate) {
+        logger.warn("Partition writers for dataset:{} are being evicted {} "
+          + "times per second, creating many small files. Write records "
+          + "sorted by partition, or to fewer partitions at once, or raise "
+          + WriterProperties.PARTITION_MAX_WRITERS + ".",
+          dataset, String.format("%.1f", rate));
+        return true;
+      }
+      return false;
     }
 
   }
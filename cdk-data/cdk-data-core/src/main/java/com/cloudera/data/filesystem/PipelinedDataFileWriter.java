@@ -0,0 +1,446 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileWriter.AppendWriteException;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.xerial.snappy.Snappy;
+
+/**
+ * <p>
+ * Writes Avro data files like {@link org.apache.avro.file.DataFileWriter},
+ * but compresses each block on a pool of threads while the caller fills the
+ * next one.
+ * </p>
+ * <p>
+ * Blocks are written to the file in the order they were filled. At most
+ * {@code maxInFlight} blocks of a file are buffered or being compressed at
+ * once; past that, appending waits for the oldest block to be written. The
+ * threads are shared by all writers, see {@link #sharedCompressors()}, so
+ * the number of open files doesn't change the number of threads. The files are
+ * the same format as those of {@code DataFileWriter}, with the same
+ * {@code snappy} and {@code deflate} codecs, so any Avro reader can read
+ * them.
+ * </p>
+ * <p>
+ * This class is not thread-safe: appends, flushes and close must come from
+ * one thread at a time.
+ * </p>
+ */
+class PipelinedDataFileWriter<D> implements Flushable, Closeable {
+
+  private final DatumWriter<D> datumWriter;
+  private final BlockCompressor compressor;
+  private final int syncInterval;
+  private final ExecutorService compressors;
+  private final int maxInFlight;
+
+  private final Deque<PendingBlock> inFlight;
+  private OutputStream out;
+  private BinaryEncoder fileOut;
+  private byte[] sync;
+
+  private BlockBuffer buffer;
+  private BinaryEncoder bufferOut;
+  private long blockCount;
+
+  /**
+   * @param codec        The Avro codec name, {@code snappy} or
+   *                     {@code deflate}.
+   * @param level        The compression level of {@code deflate}.
+   * @param syncInterval The approximate size of each block, before
+   *                     compression.
+   * @param compressors  Compresses blocks, usually
+   *                     {@link #sharedCompressors()}.
+   * @param maxInFlight  The most blocks of this file to hold in memory at
+   *                     once, which is also the most compressed at once.
+   */
+  PipelinedDataFileWriter(DatumWriter<D> datumWriter, String codec, int level,
+    int syncInterval, ExecutorService compressors, int maxInFlight) {
+
+    Preconditions.checkArgument(maxInFlight > 0,
+      "Blocks in flight:%s must be positive", maxInFlight);
+
+    this.datumWriter = datumWriter;
+    this.compressor = BlockCompressor.forCodec(codec, level);
+    this.syncInterval = syncInterval;
+    this.compressors = compressors;
+    this.maxInFlight = maxInFlight;
+    this.inFlight = Queues.newArrayDeque();
+  }
+
+  /**
+   * Write the file header to {@code out}.
+   */
+  PipelinedDataFileWriter<D> create(Schema schema, OutputStream out)
+    throws IOException {
+
+    Preconditions.checkState(this.out == null, "Writer is already open");
+
+    this.out = out;
+    this.fileOut = EncoderFactory.get().binaryEncoder(out, null);
+    this.sync = generateSync();
+
+    fileOut.writeFixed(DataFileConstants.MAGIC);
+    fileOut.writeMapStart();
+    fileOut.setItemCount(2);
+    fileOut.startItem();
+    fileOut.writeString(DataFileConstants.SCHEMA);
+    fileOut.writeBytes(schema.toString().getBytes(Charsets.UTF_8));
+    fileOut.startItem();
+    fileOut.writeString(DataFileConstants.CODEC);
+    fileOut.writeBytes(compressor.getName().getBytes(Charsets.UTF_8));
+    fileOut.writeMapEnd();
+    fileOut.writeFixed(sync);
+    fileOut.flush();
+
+    datumWriter.setSchema(schema);
+    newBlock();
+
+    return this;
+  }
+
+  /**
+   * The compression threads shared by all pipelined writers in this JVM, one
+   * per processor. They are daemon threads, started when first needed.
+   */
+  static ExecutorService sharedCompressors() {
+    return SharedCompressors.EXECUTOR;
+  }
+
+  /**
+   * Append a datum. If it can't be written, the block is restored to what it
+   * was before, and {@link AppendWriteException} is thrown, so the writer can
+   * still be used.
+   */
+  void append(D datum) throws IOException {
+    int mark = bufferInUse();
+    try {
+      datumWriter.write(datum, bufferOut);
+    } catch (IOException e) {
+      resetBufferTo(mark);
+      throw new AppendWriteException(e);
+    } catch (RuntimeException e) {
+      resetBufferTo(mark);
+      throw new AppendWriteException(e);
+    }
+    blockCount++;
+    sealIfFull();
+  }
+
+  /**
+   * Append a datum that is already encoded, the remaining bytes of
+   * {@code datum}.
+   */
+  void appendEncoded(ByteBuffer datum) throws IOException {
+    int mark = bufferInUse();
+    try {
+      if (datum.hasArray()) {
+        bufferOut.writeFixed(datum.array(), datum.arrayOffset() +
+          datum.position(), datum.remaining());
+      } else {
+        bufferOut.writeFixed(datum.duplicate());
+      }
+    } catch (IOException e) {
+      resetBufferTo(mark);
+      throw new AppendWriteException(e);
+    } catch (RuntimeException e) {
+      resetBufferTo(mark);
+      throw new AppendWriteException(e);
+    }
+    blockCount++;
+    sealIfFull();
+  }
+
+  /**
+   * Compress and write the current block and all those in flight, then flush
+   * the file.
+   */
+  @Override
+  public void flush() throws IOException {
+    sealBlock();
+    while (!inFlight.isEmpty()) {
+      writeBlock(inFlight.removeFirst());
+    }
+    fileOut.flush();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (out == null) {
+      return;
+    }
+
+    try {
+      flush();
+    } finally {
+      // the threads are shared, so only this file's blocks are cancelled
+      for (PendingBlock block : inFlight) {
+        block.compressed.cancel(true);
+      }
+      inFlight.clear();
+      out.close();
+      out = null;
+    }
+  }
+
+  private void sealIfFull() throws IOException {
+    if (bufferInUse() >= syncInterval) {
+      sealBlock();
+    }
+  }
+
+  private int bufferInUse() {
+    return buffer.size() + bufferOut.bytesBuffered();
+  }
+
+  /*
+   * Drop the bytes of a datum that failed part way through, as
+   * DataFileWriter does, so the block only holds whole datums.
+   */
+  private void resetBufferTo(int size) throws IOException {
+    bufferOut.flush();
+    buffer.truncate(size);
+  }
+
+  /*
+   * Hand the current block to the compressors and start the next one. Before
+   * that, write any blocks that are already compressed, and if too many are
+   * in flight, wait for the oldest.
+   */
+  private void sealBlock() throws IOException {
+    if (blockCount == 0) {
+      return;
+    }
+
+    bufferOut.flush();
+    final ByteBuffer data = buffer.asByteBuffer();
+    PendingBlock block = new PendingBlock(blockCount,
+      compressors.submit(new Callable<ByteBuffer>() {
+        @Override
+        public ByteBuffer call() throws IOException {
+          return compressor.compress(data);
+        }
+      }));
+
+    while (!inFlight.isEmpty() && (inFlight.size() >= maxInFlight
+      || inFlight.peekFirst().compressed.isDone())) {
+      writeBlock(inFlight.removeFirst());
+    }
+    inFlight.addLast(block);
+
+    newBlock();
+  }
+
+  private void newBlock() {
+    buffer = new BlockBuffer(syncInterval);
+    bufferOut = EncoderFactory.get().binaryEncoder(buffer, bufferOut);
+    blockCount = 0;
+  }
+
+  private void writeBlock(PendingBlock block) throws IOException {
+    ByteBuffer compressed;
+    try {
+      compressed = block.compressed.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(
+        "Interrupted while waiting for a block to be compressed");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Unable to compress block", e.getCause());
+    }
+
+    fileOut.writeLong(block.count);
+    fileOut.writeLong(compressed.remaining());
+    fileOut.writeFixed(compressed.array(), compressed.arrayOffset() +
+      compressed.position(), compressed.remaining());
+    fileOut.writeFixed(sync);
+  }
+
+  private static byte[] generateSync() {
+    UUID uuid = UUID.randomUUID();
+    return ByteBuffer.allocate(DataFileConstants.SYNC_SIZE)
+      .putLong(uuid.getMostSignificantBits())
+      .putLong(uuid.getLeastSignificantBits()).array();
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("codec", compressor.getName())
+      .add("syncInterval", syncInterval)
+      .add("maxInFlight", maxInFlight)
+      .add("inFlight", inFlight.size())
+      .toString();
+  }
+
+  private static class SharedCompressors {
+
+    static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+      Runtime.getRuntime().availableProcessors(),
+      new ThreadFactoryBuilder().setDaemon(true)
+        .setNameFormat("PipelinedDataFileWriter-compressor-%d").build());
+
+  }
+
+  private static class PendingBlock {
+
+    private final long count;
+    private final Future<ByteBuffer> compressed;
+
+    PendingBlock(long count, Future<ByteBuffer> compressed) {
+      this.count = count;
+      this.compressed = compressed;
+    }
+
+  }
+
+  /*
+   * A ByteArrayOutputStream whose contents can be handed off without a copy.
+   */
+  private static class BlockBuffer extends ByteArrayOutputStream {
+
+    BlockBuffer(int size) {
+      super(size);
+    }
+
+    ByteBuffer asByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+
+    void truncate(int size) {
+      Preconditions.checkArgument(size <= count,
+        "Can not truncate a buffer of %s bytes to %s", count, size);
+      count = size;
+    }
+
+  }
+
+  /**
+   * Compresses blocks the way Avro's codecs of the same name do. Avro's own
+   * codecs can't be called outside DataFileWriter.
+   */
+  abstract static class BlockCompressor {
+
+    static BlockCompressor forCodec(String codec, int level) {
+      if (DataFileConstants.SNAPPY_CODEC.equals(codec)) {
+        return new SnappyCompressor();
+      } else if (DataFileConstants.DEFLATE_CODEC.equals(codec)) {
+        return new DeflateCompressor(level);
+      }
+      throw new IllegalArgumentException("Unsupported codec:" + codec);
+    }
+
+    abstract String getName();
+
+    abstract ByteBuffer compress(ByteBuffer data) throws IOException;
+
+  }
+
+  /*
+   * Raw deflate data, with no zlib header or checksum.
+   */
+  private static class DeflateCompressor extends BlockCompressor {
+
+    private final int level;
+
+    DeflateCompressor(int level) {
+      this.level = level;
+    }
+
+    @Override
+    String getName() {
+      return DataFileConstants.DEFLATE_CODEC;
+    }
+
+    @Override
+    ByteBuffer compress(ByteBuffer data) throws IOException {
+      Deflater deflater = new Deflater(level, true);
+      try {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(
+          data.remaining() / 2);
+        DeflaterOutputStream out = new DeflaterOutputStream(compressed,
+          deflater);
+        out.write(data.array(), data.arrayOffset() + data.position(),
+          data.remaining());
+        out.finish();
+        return ByteBuffer.wrap(compressed.toByteArray());
+      } finally {
+        deflater.end();
+      }
+    }
+
+  }
+
+  /*
+   * Snappy data followed by the big-endian CRC32 of the uncompressed data.
+   */
+  private static class SnappyCompressor extends BlockCompressor {
+
+    @Override
+    String getName() {
+      return DataFileConstants.SNAPPY_CODEC;
+    }
+
+    @Override
+    ByteBuffer compress(ByteBuffer data) throws IOException {
+      int offset = data.arrayOffset() + data.position();
+      ByteBuffer compressed = ByteBuffer.allocate(
+        Snappy.maxCompressedLength(data.remaining()) + 4);
+      int size = Snappy.compress(data.array(), offset, data.remaining(),
+        compressed.array(), 0);
+
+      CRC32 crc = new CRC32();
+      crc.update(data.array(), offset, data.remaining());
+      compressed.putInt(size, (int) crc.getValue());
+      compressed.limit(size + 4);
+
+      return compressed;
+    }
+
+  }
+
+}
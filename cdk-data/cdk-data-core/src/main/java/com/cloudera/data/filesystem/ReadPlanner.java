@@ -0,0 +1,169 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.DatasetDescriptor;
+import com.cloudera.data.Format;
+import com.cloudera.data.Formats;
+import com.cloudera.data.ReadPlan;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import parquet.format.converter.ParquetMetadataConverter;
+import parquet.hadoop.ParquetFileReader;
+import parquet.hadoop.ParquetFileWriter;
+import parquet.hadoop.metadata.BlockMetaData;
+import parquet.hadoop.metadata.ParquetMetadata;
+
+/**
+ * Builds the {@link ReadPlan} of a {@link FileSystemDataset}, walking its
+ * directory as {@link FileSystemDataset#getReader()} does and reading the
+ * header of each data file to find its codec. File system calls are counted
+ * by an {@link InstrumentedFileSystem}, so a plan of a dataset on an
+ * uninstrumented file system has none.
+ */
+class ReadPlanner {
+
+  private static final Logger logger = LoggerFactory
+    .getLogger(ReadPlanner.class);
+
+  private static final String UNCOMPRESSED = "uncompressed";
+
+  // the Parquet footer ends with its length and the magic number
+  private static final int FOOTER_TAIL_LENGTH =
+    4 + ParquetFileWriter.MAGIC.length;
+
+  private final FileSystem fileSystem;
+  private final String name;
+  private final Path directory;
+  private final Format format;
+
+  ReadPlanner(FileSystem fileSystem, String name, Path directory,
+    DatasetDescriptor descriptor) {
+
+    this.fileSystem = fileSystem;
+    this.name = name;
+    this.directory = directory;
+    this.format = descriptor.getFormat();
+  }
+
+  /**
+   * @param operation The operation planning the read, which counts its file
+   *                  system calls.
+   */
+  ReadPlan plan(InstrumentedFileSystem.Operation operation)
+    throws IOException {
+
+    long startNanos = System.nanoTime();
+
+    List<FileStatus> statuses = Lists.newArrayList();
+    FileSystemDataset.accumulateDatafiles(fileSystem, directory, statuses);
+
+    List<ReadPlan.DataFile> files = Lists.newArrayListWithCapacity(
+      statuses.size());
+    for (FileStatus status : statuses) {
+      files.add(new ReadPlan.DataFile(status.getPath().toString(),
+        partition(status.getPath()), status.getLen(), format,
+        codec(status)));
+    }
+
+    return new ReadPlan(name, format, files, operation.getCalls(),
+      System.nanoTime() - startNanos);
+  }
+
+  private String partition(Path file) {
+    String relative = directory.toUri().relativize(file.getParent().toUri())
+      .getPath();
+    return relative.endsWith("/") ?
+      relative.substring(0, relative.length() - 1) : relative;
+  }
+
+  private String codec(FileStatus status) {
+    try {
+      if (Formats.PARQUET.equals(format)) {
+        for (BlockMetaData block : readFooter(status).getBlocks()) {
+          if (!block.getColumns().isEmpty()) {
+            return block.getColumns().get(0).getCodec().name().toLowerCase();
+          }
+        }
+        return UNCOMPRESSED;
+      } else {
+        DataFileStream<Object> stream = new DataFileStream<Object>(
+          fileSystem.open(status.getPath()),
+          new GenericDatumReader<Object>());
+        try {
+          String codec = stream.getMetaString(DataFileConstants.CODEC);
+          return codec == null || DataFileConstants.NULL_CODEC.equals(codec) ?
+            UNCOMPRESSED : codec;
+        } finally {
+          Closeables.close(stream, true);
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Unable to read the header of data file:{}",
+        status.getPath(), e);
+      return null;
+    }
+  }
+
+  /**
+   * Read a Parquet footer through this planner's file system, where
+   * {@link ParquetFileReader#readFooter} would open the file through the
+   * file system of its path, which isn't instrumented.
+   */
+  private ParquetMetadata readFooter(FileStatus status) throws IOException {
+    FSDataInputStream in = fileSystem.open(status.getPath());
+    try {
+      long tailStart = status.getLen() - FOOTER_TAIL_LENGTH;
+      if (tailStart < ParquetFileWriter.MAGIC.length) {
+        throw new IOException("Not a Parquet file: " + status.getPath());
+      }
+
+      byte[] tail = new byte[FOOTER_TAIL_LENGTH];
+      in.readFully(tailStart, tail);
+      if (!Arrays.equals(ParquetFileWriter.MAGIC, Arrays.copyOfRange(tail, 4,
+        tail.length))) {
+        throw new IOException("Not a Parquet file: " + status.getPath());
+      }
+
+      // the footer length is little endian
+      long footerLength = (tail[0] & 0xff) | (tail[1] & 0xff) << 8
+        | (tail[2] & 0xff) << 16 | (tail[3] & 0xffL) << 24;
+      long footerStart = tailStart - footerLength;
+      if (footerStart < ParquetFileWriter.MAGIC.length) {
+        throw new IOException("Corrupt Parquet footer in: " +
+          status.getPath());
+      }
+
+      in.seek(footerStart);
+      return new ParquetMetadataConverter().readParquetMetadata(in);
+    } finally {
+      Closeables.close(in, true);
+    }
+  }
+
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.AbstractDatasetWriter;
+import com.cloudera.data.DatasetWriter;
+import com.cloudera.data.metrics.Counter;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.Instrumented;
+import com.cloudera.data.metrics.MetricGroup;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A {@link DatasetWriter} that writes a series of data files, committing the
+ * current file and starting another when the file reaches a target size,
+ * number of records or age.
+ * </p>
+ * <p>
+ * Each file is written by a writer from a factory that is given the metrics
+ * the file's writer should contribute to. A new file is only started by the
+ * next write after a roll, so no empty files are written. The age of a file is
+ * checked when a record is written to it and when the writer is flushed, so
+ * callers that may go idle should flush periodically to commit old files.
+ * </p>
+ * <p>
+ * Avro writers count their bytes as each block is written, so a file is
+ * rolled when another block might take it over the target size. Parquet
+ * writers only know the size of a file once it is closed, so the size of a
+ * Parquet file is estimated from the bytes per record of the files already
+ * written, and only the record count and age can roll the first file.
+ * </p>
+ */
+class RollingDatasetWriter<E> extends AbstractDatasetWriter<E> implements
+  Flushable, Closeable, Instrumented {
+
+  private static final Logger logger = LoggerFactory
+    .getLogger(RollingDatasetWriter.class);
+
+  private final Function<MetricGroup, DatasetWriter<E>> fileWriters;
+  private final Policy policy;
+  private final Ticker ticker;
+
+  private final MetricGroup metrics;
+  private final Counter recordsWritten;
+  private final Counter bytesWritten;
+  private final Counter filesRolled;
+
+  private DatasetWriter<E> writer;
+  private long fileRecords;
+  private long fileStartNanos;
+  private ReaderWriterState state;
+
+  /**
+   * @param name           The name of the writer's metrics.
+   * @param fileWriters    Returns an unopened writer to a new data file, given
+   *                       the metrics it should contribute to.
+   * @param datasetMetrics The metrics this writer contributes to.
+   */
+  RollingDatasetWriter(String name,
+    Function<MetricGroup, DatasetWriter<E>> fileWriters, Policy policy,
+    MetricGroup datasetMetrics, Ticker ticker) {
+
+    this.fileWriters = fileWriters;
+    this.policy = policy;
+    this.ticker = ticker;
+    this.metrics = new MetricGroup(name, datasetMetrics);
+    this.recordsWritten = metrics.counter(DatasetMetrics.RECORDS_WRITTEN);
+    this.bytesWritten = metrics.counter(DatasetMetrics.BYTES_WRITTEN);
+    this.filesRolled = metrics.counter(DatasetMetrics.FILES_ROLLED);
+    this.state = ReaderWriterState.NEW;
+  }
+
+  @Override
+  public void open() {
+    Preconditions.checkState(state.equals(ReaderWriterState.NEW),
+      "Unable to open a writer from state:%s", state);
+
+    logger.debug("Opening rolling writer with policy:{}", policy);
+
+    // open the first file now, so that failures are thrown from here
+    openFile();
+    state = ReaderWriterState.OPEN;
+  }
+
+  @Override
+  public void write(E entity) {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+      "Attempt to write to a writer in state:%s", state);
+
+    append(entity);
+  }
+
+  @Override
+  public void writeAll(Iterable<? extends E> entities) {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+      "Attempt to write to a writer in state:%s", state);
+
+    for (E entity : entities) {
+      append(entity);
+    }
+  }
+
+  private void append(E entity) {
+    if (writer == null) {
+      openFile();
+    }
+
+    writer.write(entity);
+    fileRecords++;
+
+    rollIfDue();
+  }
+
+  private boolean rollIfDue() {
+    if (policy.shouldRoll(fileRecords, fileBytes(),
+      ticker.read() - fileStartNanos)) {
+
+      logger.debug("Rolling file after {} records", fileRecords);
+
+      closeFile();
+      filesRolled.inc();
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void flush() {
+    Preconditions.checkState(state.equals(ReaderWriterState.OPEN),
+      "Attempt to write to a writer in state:%s", state);
+
+    // an idle file that has reached its age is committed rather than flushed
+    if (writer != null && (fileRecords == 0 || !rollIfDue())) {
+      writer.flush();
+    }
+  }
+
+  @Override
+  public void close() {
+    if (state.equals(ReaderWriterState.OPEN)) {
+      if (writer != null) {
+        closeFile();
+      }
+
+      state = ReaderWriterState.CLOSED;
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return state.equals(ReaderWriterState.OPEN);
+  }
+
+  /**
+   * The metrics of all files written by this writer, and the number of times
+   * a file was rolled.
+   */
+  @Override
+  public MetricGroup getMetrics() {
+    return metrics;
+  }
+
+  private void openFile() {
+    DatasetWriter<E> opened = fileWriters.apply(metrics);
+    opened.open();
+
+    writer = opened;
+    fileRecords = 0;
+    fileStartNanos = ticker.read();
+  }
+
+  private void closeFile() {
+    DatasetWriter<E> closing = writer;
+    writer = null;
+    closing.close();
+  }
+
+  /*
+   * The bytes written to the current file, or an estimate if its writer
+   * doesn't count bytes until it is closed.
+   */
+  private long fileBytes() {
+    if (!(writer instanceof Instrumented)) {
+      return 0;
+    }
+
+    long bytes = ((Instrumented) writer).getMetrics()
+      .counter(DatasetMetrics.BYTES_WRITTEN).getCount();
+    if (bytes == 0) {
+      long closedRecords = recordsWritten.getCount() - fileRecords;
+      if (closedRecords > 0) {
+        bytes = fileRecords * bytesWritten.getCount() / closedRecords;
+      }
+    }
+
+    return bytes;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("policy", policy)
+      .add("writer", writer)
+      .add("fileRecords", fileRecords)
+      .add("state", state)
+      .toString();
+  }
+
+  /**
+   * When to roll a file. A limit of zero means no limit.
+   */
+  static class Policy {
+
+    private final long maxBytes;
+    private final long maxRecords;
+    private final long maxAgeNanos;
+    private final long blockBytes;
+
+    /**
+     * @param blockBytes The most bytes a writer might add to a file at once,
+     *                   which is subtracted from {@code maxBytes} so that
+     *                   files stay within it.
+     */
+    Policy(long maxBytes, long maxRecords, long maxAge, TimeUnit unit,
+      long blockBytes) {
+
+      Preconditions.checkArgument(maxBytes >= 0 && maxRecords >= 0
+        && maxAge >= 0, "Roll limits can not be negative");
+      Preconditions.checkArgument(maxBytes > 0 || maxRecords > 0 || maxAge > 0,
+        "A roll policy needs at least one limit");
+
+      this.maxBytes = maxBytes;
+      this.maxRecords = maxRecords;
+      this.maxAgeNanos = unit.toNanos(maxAge);
+      this.blockBytes = Math.min(blockBytes, maxBytes / 2);
+    }
+
+    boolean shouldRoll(long records, long bytes, long ageNanos) {
+      return (maxRecords > 0 && records >= maxRecords)
+        || (maxBytes > 0 && bytes + blockBytes >= maxBytes)
+        || (maxAgeNanos > 0 && ageNanos >= maxAgeNanos);
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+        .add("maxBytes", maxBytes)
+        .add("maxRecords", maxRecords)
+        .add("maxAgeNanos", maxAgeNanos)
+        .add("blockBytes", blockBytes)
+        .toString();
+    }
+
+  }
+
+}
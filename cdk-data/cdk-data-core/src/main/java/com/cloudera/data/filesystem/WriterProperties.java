@@ -0,0 +1,650 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.DatasetDescriptor;
+import com.cloudera.data.Format;
+import com.cloudera.data.Formats;
+import com.cloudera.data.PartitionStrategy;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xerial.snappy.Snappy;
+import parquet.hadoop.ParquetWriter;
+import parquet.hadoop.metadata.CompressionCodecName;
+
+/**
+ * <p>
+ * The {@link DatasetDescriptor} properties that tune how the writers of a
+ * {@link FileSystemDatasetRepository} write data files.
+ * </p>
+ * <p>
+ * All properties are optional. They are stored with the rest of the
+ * descriptor, so they apply to every writer of the dataset, and are checked
+ * when a writer is created.
+ * </p>
+ *
+ * @since 0.4.0
+ */
+@Immutable
+public class WriterProperties {
+
+  private static final Logger logger = LoggerFactory
+    .getLogger(WriterProperties.class);
+
+  /**
+   * The compression codec of data files: {@code snappy} (the default),
+   * {@code deflate} or {@code uncompressed}. Parquet files use gzip for
+   * {@code deflate}.
+   */
+  public static final String CODEC = "writer.codec";
+
+  /**
+   * The {@code deflate} compression level of Avro data files, from 1 (fastest)
+   * to 9 (smallest). Defaults to 6.
+   */
+  public static final String COMPRESSION_LEVEL = "writer.compression.level";
+
+  /**
+   * The number of threads each compressed Avro data file may keep busy
+   * compressing its blocks while its writer fills the next block. With
+   * {@code deflate}, this lets one writer use several cores. Blocks are
+   * compressed by a pool of one thread per processor, shared by all writers
+   * in the JVM, and each file holds at most twice this many blocks in memory,
+   * being compressed or waiting to be written.
+   * Defaults to none, which compresses each block in the thread that writes
+   * it.
+   */
+  public static final String COMPRESSION_THREADS = "writer.compression.threads";
+
+  /**
+   * The approximate number of bytes between sync markers in Avro data files,
+   * which is also the size of each compressed block. Defaults to Avro's
+   * default.
+   */
+  public static final String AVRO_SYNC_INTERVAL = "writer.avro.syncInterval";
+
+  /**
+   * The number of bytes buffered for each row group of Parquet data files.
+   * Defaults to Parquet's default.
+   */
+  public static final String PARQUET_BLOCK_SIZE = "writer.parquet.blockSize";
+
+  /**
+   * The number of bytes in each page of Parquet data files. Defaults to
+   * Parquet's default.
+   */
+  public static final String PARQUET_PAGE_SIZE = "writer.parquet.pageSize";
+
+  /**
+   * Whether Parquet data files use dictionary encoding: {@code true} or
+   * {@code false} (the default).
+   */
+  public static final String PARQUET_DICTIONARY = "writer.parquet.dictionary";
+
+  /**
+   * Whether Parquet writers count the bytes of the data files they write in
+   * their {@code bytesWritten} metric: {@code true} or {@code false} (the
+   * default). Parquet opens its own stream, so each file's size is read from
+   * the file system when it is committed, which costs a NameNode call per
+   * file. Files are always counted when they are rolled by size.
+   */
+  public static final String PARQUET_COUNT_BYTES = "writer.parquet.countBytes";
+
+  /**
+   * The size in bytes at which a writer commits its data file and starts
+   * another, or {@code block} for the file system's block size. Files are not
+   * rolled by size by default.
+   */
+  public static final String ROLL_BYTES = "writer.roll.bytes";
+
+  /**
+   * The number of records at which a writer commits its data file and starts
+   * another. Files are not rolled by record count by default.
+   */
+  public static final String ROLL_RECORDS = "writer.roll.records";
+
+  /**
+   * The age in seconds at which a writer commits its data file and starts
+   * another, checked when a record is written. Files are not rolled by age by
+   * default.
+   */
+  public static final String ROLL_AGE_SECONDS = "writer.roll.ageSeconds";
+
+  /**
+   * The most partition writers that the writer of a partitioned dataset keeps
+   * open at once, each with an open data file. When another partition is
+   * written, the writer written least often recently is closed. A concurrent
+   * writer divides this among its stripes. Defaults to 10.
+   */
+  public static final String PARTITION_MAX_WRITERS = "writer.partitions.maxOpen";
+
+  /**
+   * The memory, in bytes, that the open partition writers of a partitioned
+   * dataset may buffer, which further limits how many are kept open. Each
+   * Avro data file is estimated to buffer a block of the sync interval, and
+   * the blocks in flight if it has compression threads, and each Parquet data
+   * file a row group. A concurrent writer divides this among its stripes.
+   * Unlimited by default.
+   */
+  public static final String PARTITION_MEMORY_BYTES = "writer.partitions.memoryBytes";
+
+  /**
+   * The number of seconds after which a partition writer that hasn't been
+   * written to is closed, committing its data file. This is checked as other
+   * partitions are written. Idle writers are not closed by default.
+   */
+  public static final String PARTITION_IDLE_SECONDS = "writer.partitions.idleSeconds";
+
+  /**
+   * The number of stripes of a concurrent writer, each written by its own
+   * writer, so threads assigned different stripes don't wait for each other.
+   * Each stripe writes its own data file in every partition it writes to, and
+   * the stripes divide {@link #PARTITION_MAX_WRITERS} among them, so more
+   * stripes mean more, smaller files and fewer open writers per stripe. A
+   * concurrent writer to a partitioned dataset has at most as many stripes as
+   * leave each stripe four partition writers, or one for each partition if
+   * there are fewer. Defaults to the number of available processors.
+   */
+  public static final String CONCURRENT_STRIPES = "writer.concurrent.stripes";
+
+  private static final String SNAPPY = "snappy";
+  private static final String DEFLATE = "deflate";
+  private static final String UNCOMPRESSED = "uncompressed";
+  private static final String BLOCK = "block";
+
+  private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+  private static final int DEFAULT_PARTITION_MAX_WRITERS = 10;
+
+  /*
+   * The fewest partition writers a stripe of a concurrent writer keeps open.
+   * With fewer, unsorted input closes and rolls a file for almost every record.
+   */
+  private static final int MIN_STRIPE_PARTITION_WRITERS = 4;
+
+  static final WriterProperties DEFAULT = new Builder().get();
+
+  private final String codec;
+  private final int compressionLevel;
+  private final int compressionThreads;
+  private final int avroSyncInterval;
+  private final int parquetBlockSize;
+  private final int parquetPageSize;
+  private final boolean parquetDictionary;
+  private final boolean parquetCountBytes;
+  private final long rollBytes;
+  private final boolean rollAtBlockSize;
+  private final long rollRecords;
+  private final long rollAgeSeconds;
+  private final int partitionMaxWriters;
+  private final long partitionMemoryBytes;
+  private final long partitionIdleSeconds;
+  private final int concurrentStripes;
+
+  private WriterProperties(Builder builder) {
+    this.codec = builder.codec;
+    this.compressionLevel = builder.compressionLevel;
+    this.compressionThreads = builder.compressionThreads;
+    this.avroSyncInterval = builder.avroSyncInterval;
+    this.parquetBlockSize = builder.parquetBlockSize;
+    this.parquetPageSize = builder.parquetPageSize;
+    this.parquetDictionary = builder.parquetDictionary;
+    this.parquetCountBytes = builder.parquetCountBytes;
+    this.rollBytes = builder.rollBytes;
+    this.rollAtBlockSize = builder.rollAtBlockSize;
+    this.rollRecords = builder.rollRecords;
+    this.rollAgeSeconds = builder.rollAgeSeconds;
+    this.partitionMaxWriters = builder.partitionMaxWriters;
+    this.partitionMemoryBytes = builder.partitionMemoryBytes;
+    this.partitionIdleSeconds = builder.partitionIdleSeconds;
+    this.concurrentStripes = builder.concurrentStripes;
+  }
+
+  /**
+   * Read the properties of {@code descriptor}, using the default for those
+   * that aren't set.
+   *
+   * @throws IllegalArgumentException if a property has an invalid value.
+   */
+  static WriterProperties of(DatasetDescriptor descriptor) {
+    String codec = descriptor.hasProperty(CODEC) ?
+      descriptor.getProperty(CODEC).trim().toLowerCase() : DEFAULT.codec;
+    Preconditions.checkArgument(SNAPPY.equals(codec) || DEFLATE.equals(codec)
+      || UNCOMPRESSED.equals(codec),
+      "Unknown codec:%s, expected one of snappy, deflate or uncompressed", codec);
+
+    int compressionLevel = intProperty(descriptor, COMPRESSION_LEVEL,
+      DEFAULT.compressionLevel);
+    Preconditions.checkArgument(compressionLevel >= 1 && compressionLevel <= 9,
+      "Compression level:%s is not between 1 and 9", compressionLevel);
+
+    boolean rollAtBlockSize = descriptor.hasProperty(ROLL_BYTES) &&
+      BLOCK.equals(descriptor.getProperty(ROLL_BYTES).trim().toLowerCase());
+
+    return new Builder()
+      .codec(codec)
+      .compressionLevel(compressionLevel)
+      .compressionThreads(intProperty(descriptor, COMPRESSION_THREADS,
+        DEFAULT.compressionThreads))
+      .avroSyncInterval(intProperty(descriptor, AVRO_SYNC_INTERVAL,
+        DEFAULT.avroSyncInterval))
+      .parquetBlockSize(intProperty(descriptor, PARQUET_BLOCK_SIZE,
+        DEFAULT.parquetBlockSize))
+      .parquetPageSize(intProperty(descriptor, PARQUET_PAGE_SIZE,
+        DEFAULT.parquetPageSize))
+      .parquetDictionary(booleanProperty(descriptor, PARQUET_DICTIONARY,
+        DEFAULT.parquetDictionary))
+      .parquetCountBytes(booleanProperty(descriptor, PARQUET_COUNT_BYTES,
+        DEFAULT.parquetCountBytes))
+      .rollBytes(rollAtBlockSize ? 0 : longProperty(descriptor, ROLL_BYTES, 0))
+      .rollAtBlockSize(rollAtBlockSize)
+      .rollRecords(longProperty(descriptor, ROLL_RECORDS, 0))
+      .rollAgeSeconds(longProperty(descriptor, ROLL_AGE_SECONDS, 0))
+      .partitionMaxWriters(intProperty(descriptor, PARTITION_MAX_WRITERS,
+        DEFAULT.partitionMaxWriters))
+      .partitionMemoryBytes(longProperty(descriptor, PARTITION_MEMORY_BYTES, 0))
+      .partitionIdleSeconds(longProperty(descriptor, PARTITION_IDLE_SECONDS, 0))
+      .concurrentStripes(intProperty(descriptor, CONCURRENT_STRIPES,
+        DEFAULT.concurrentStripes))
+      .get();
+  }
+
+  /**
+   * The default properties, or those of uncompressed files if
+   * {@code enableCompression} is false.
+   */
+  static WriterProperties of(boolean enableCompression) {
+    return enableCompression ? DEFAULT :
+      new Builder().codec(UNCOMPRESSED).get();
+  }
+
+  private static boolean booleanProperty(DatasetDescriptor descriptor,
+    String name, boolean defaultValue) {
+
+    if (!descriptor.hasProperty(name)) {
+      return defaultValue;
+    }
+
+    String value = descriptor.getProperty(name).trim().toLowerCase();
+    Preconditions.checkArgument("true".equals(value) || "false".equals(value),
+      "Property:%s must be true or false, not:%s", name, value);
+
+    return Boolean.parseBoolean(value);
+  }
+
+  private static int intProperty(DatasetDescriptor descriptor, String name,
+    int defaultValue) {
+
+    long value = longProperty(descriptor, name, defaultValue);
+    Preconditions.checkArgument(value <= Integer.MAX_VALUE,
+      "Property:%s must be at most %s, not:%s", name, Integer.MAX_VALUE, value);
+
+    return (int) value;
+  }
+
+  private static long longProperty(DatasetDescriptor descriptor, String name,
+    long defaultValue) {
+
+    if (!descriptor.hasProperty(name)) {
+      return defaultValue;
+    }
+
+    long value;
+    try {
+      value = Long.parseLong(descriptor.getProperty(name).trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Property:" + name
+        + " must be an integer, not:" + descriptor.getProperty(name), e);
+    }
+    Preconditions.checkArgument(value > 0,
+      "Property:%s must be positive, not:%s", name, value);
+
+    return value;
+  }
+
+  boolean isCompressed() {
+    return !UNCOMPRESSED.equals(codec);
+  }
+
+  /**
+   * The codec of Avro data files, or null if they are uncompressed.
+   */
+  CodecFactory getAvroCodec() {
+    if (SNAPPY.equals(codec)) {
+      return CodecFactory.snappyCodec();
+    } else if (DEFLATE.equals(codec)) {
+      return CodecFactory.deflateCodec(compressionLevel);
+    }
+    return null;
+  }
+
+  /**
+   * The Avro name of the codec of Avro data files, {@code snappy},
+   * {@code deflate} or {@code null}.
+   */
+  String getAvroCodecName() {
+    if (SNAPPY.equals(codec)) {
+      return DataFileConstants.SNAPPY_CODEC;
+    } else if (DEFLATE.equals(codec)) {
+      return DataFileConstants.DEFLATE_CODEC;
+    }
+    return DataFileConstants.NULL_CODEC;
+  }
+
+  int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+   * The number of threads each Avro data file may keep busy compressing, or
+   * zero if blocks are compressed by the writing thread.
+   */
+  int getCompressionThreads() {
+    return compressionThreads;
+  }
+
+  int getAvroSyncInterval() {
+    return avroSyncInterval;
+  }
+
+  /**
+   * The codec of Parquet data files. Parquet compresses snappy with the
+   * snappy-java library, not Hadoop's native code. Where that library can't
+   * load, files are compressed with gzip, which falls back to pure Java,
+   * rather than not compressed at all.
+   */
+  CompressionCodecName getParquetCodec() {
+    if (SNAPPY.equals(codec)) {
+      return SnappyLoader.AVAILABLE ?
+        CompressionCodecName.SNAPPY : CompressionCodecName.GZIP;
+    } else if (DEFLATE.equals(codec)) {
+      return CompressionCodecName.GZIP;
+    }
+    return CompressionCodecName.UNCOMPRESSED;
+  }
+
+  int getParquetBlockSize() {
+    return parquetBlockSize;
+  }
+
+  int getParquetPageSize() {
+    return parquetPageSize;
+  }
+
+  boolean isParquetDictionary() {
+    return parquetDictionary;
+  }
+
+  /**
+   * Returns true if Parquet writers should count the bytes of their data
+   * files, because it is asked for or files are rolled by size.
+   */
+  boolean isParquetCountBytes() {
+    return parquetCountBytes || rollBytes > 0 || rollAtBlockSize;
+  }
+
+  /**
+   * Returns true if writers should roll their data files.
+   */
+  boolean isRolling() {
+    return rollBytes > 0 || rollAtBlockSize || rollRecords > 0
+      || rollAgeSeconds > 0;
+  }
+
+  /**
+   * The size at which to roll data files, or zero if they are not rolled by
+   * size.
+   *
+   * @param blockSize The block size of the file system, in case files are
+   *                  rolled at the block size.
+   */
+  long getRollBytes(long blockSize) {
+    return rollAtBlockSize ? blockSize : rollBytes;
+  }
+
+  long getRollRecords() {
+    return rollRecords;
+  }
+
+  long getRollAgeSeconds() {
+    return rollAgeSeconds;
+  }
+
+  /**
+   * The most partition writers to keep open, limited by the memory budget of
+   * the partition writers if there is one, but at least one.
+   *
+   * @param format The format of the dataset's data files.
+   */
+  int getPartitionMaxWriters(Format format) {
+    if (partitionMemoryBytes == 0) {
+      return partitionMaxWriters;
+    }
+    long withinBudget = partitionMemoryBytes / getBufferBytes(format);
+    return (int) Math.max(1, Math.min(partitionMaxWriters, withinBudget));
+  }
+
+  /**
+   * The estimated memory an open data file buffers.
+   */
+  long getBufferBytes(Format format) {
+    if (Formats.PARQUET.equals(format)) {
+      return parquetBlockSize;
+    }
+    // the block being filled, and up to two per thread being compressed
+    int blocks = isCompressed() ? 1 + 2 * compressionThreads : 1;
+    return (long) avroSyncInterval * blocks;
+  }
+
+  /**
+   * The seconds after which an idle partition writer is closed, or zero if
+   * idle writers are kept open.
+   */
+  long getPartitionIdleSeconds() {
+    return partitionIdleSeconds;
+  }
+
+  /**
+   * The number of stripes of a concurrent writer, which is the number of
+   * available processors unless it is set. For a partitioned dataset, this is
+   * limited so that each stripe's share of the partition writers is at least
+   * four, or the number of partitions if there are fewer.
+   *
+   * @param format            The format of the dataset's data files.
+   * @param partitionStrategy The dataset's partition strategy, if it is
+   *                          partitioned.
+   */
+  int getConcurrentStripes(Format format,
+    @Nullable PartitionStrategy partitionStrategy) {
+
+    int stripes = concurrentStripes > 0 ? concurrentStripes :
+      Runtime.getRuntime().availableProcessors();
+    if (partitionStrategy == null) {
+      return stripes;
+    }
+
+    // the cardinality of many partitioners overflows, so is not a limit
+    int cardinality = partitionStrategy.getCardinality();
+    int minShare = cardinality > 0 ?
+      Math.min(cardinality, MIN_STRIPE_PARTITION_WRITERS) :
+      MIN_STRIPE_PARTITION_WRITERS;
+    return Math.max(1,
+      Math.min(stripes, getPartitionMaxWriters(format) / minShare));
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("codec", codec)
+      .add("compressionLevel", compressionLevel)
+      .add("compressionThreads", compressionThreads)
+      .add("avroSyncInterval", avroSyncInterval)
+      .add("parquetBlockSize", parquetBlockSize)
+      .add("parquetPageSize", parquetPageSize)
+      .add("parquetDictionary", parquetDictionary)
+      .add("parquetCountBytes", parquetCountBytes)
+      .add("rollBytes", rollAtBlockSize ? BLOCK : String.valueOf(rollBytes))
+      .add("rollRecords", rollRecords)
+      .add("rollAgeSeconds", rollAgeSeconds)
+      .add("partitionMaxWriters", partitionMaxWriters)
+      .add("partitionMemoryBytes", partitionMemoryBytes)
+      .add("partitionIdleSeconds", partitionIdleSeconds)
+      .add("concurrentStripes", concurrentStripes)
+      .toString();
+  }
+
+  /**
+   * Builds {@link WriterProperties}, starting from the defaults.
+   */
+  static class Builder implements Supplier<WriterProperties> {
+
+    private String codec = SNAPPY;
+    private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+    private int compressionThreads = 0;
+    private int avroSyncInterval = DataFileConstants.DEFAULT_SYNC_INTERVAL;
+    private int parquetBlockSize = ParquetWriter.DEFAULT_BLOCK_SIZE;
+    private int parquetPageSize = ParquetWriter.DEFAULT_PAGE_SIZE;
+    private boolean parquetDictionary = false;
+    private boolean parquetCountBytes = false;
+    private long rollBytes = 0;
+    private boolean rollAtBlockSize = false;
+    private long rollRecords = 0;
+    private long rollAgeSeconds = 0;
+    private int partitionMaxWriters = DEFAULT_PARTITION_MAX_WRITERS;
+    private long partitionMemoryBytes = 0;
+    private long partitionIdleSeconds = 0;
+    private int concurrentStripes = 0;
+
+    Builder codec(String codec) {
+      this.codec = codec;
+      return this;
+    }
+
+    Builder compressionLevel(int compressionLevel) {
+      this.compressionLevel = compressionLevel;
+      return this;
+    }
+
+    Builder compressionThreads(int compressionThreads) {
+      this.compressionThreads = compressionThreads;
+      return this;
+    }
+
+    Builder avroSyncInterval(int avroSyncInterval) {
+      this.avroSyncInterval = avroSyncInterval;
+      return this;
+    }
+
+    Builder parquetBlockSize(int parquetBlockSize) {
+      this.parquetBlockSize = parquetBlockSize;
+      return this;
+    }
+
+    Builder parquetPageSize(int parquetPageSize) {
+      this.parquetPageSize = parquetPageSize;
+      return this;
+    }
+
+    Builder parquetDictionary(boolean parquetDictionary) {
+      this.parquetDictionary = parquetDictionary;
+      return this;
+    }
+
+    Builder parquetCountBytes(boolean parquetCountBytes) {
+      this.parquetCountBytes = parquetCountBytes;
+      return this;
+    }
+
+    Builder rollBytes(long rollBytes) {
+      this.rollBytes = rollBytes;
+      return this;
+    }
+
+    Builder rollAtBlockSize(boolean rollAtBlockSize) {
+      this.rollAtBlockSize = rollAtBlockSize;
+      return this;
+    }
+
+    Builder rollRecords(long rollRecords) {
+      this.rollRecords = rollRecords;
+      return this;
+    }
+
+    Builder rollAgeSeconds(long rollAgeSeconds) {
+      this.rollAgeSeconds = rollAgeSeconds;
+      return this;
+    }
+
+    Builder partitionMaxWriters(int partitionMaxWriters) {
+      this.partitionMaxWriters = partitionMaxWriters;
+      return this;
+    }
+
+    Builder partitionMemoryBytes(long partitionMemoryBytes) {
+      this.partitionMemoryBytes = partitionMemoryBytes;
+      return this;
+    }
+
+    Builder partitionIdleSeconds(long partitionIdleSeconds) {
+      this.partitionIdleSeconds = partitionIdleSeconds;
+      return this;
+    }
+
+    /**
+     * @param concurrentStripes The number of stripes, or zero for one per
+     *                          available processor.
+     */
+    Builder concurrentStripes(int concurrentStripes) {
+      this.concurrentStripes = concurrentStripes;
+      return this;
+    }
+
+    @Override
+    public WriterProperties get() {
+      return new WriterProperties(this);
+    }
+
+  }
+
+  /**
+   * Checks once whether snappy-java can load its native library, warning
+   * once if it can't.
+   */
+  private static class SnappyLoader {
+
+    static final boolean AVAILABLE = load();
+
+    private static boolean load() {
+      try {
+        Snappy.maxCompressedLength(1);
+        return true;
+      } catch (Throwable t) {
+        logger.warn("Snappy is not available on this platform. Parquet files"
+          + " will be compressed with gzip instead.");
+        logger.debug("Unable to load snappy-java", t);
+        return false;
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * <p>
+ * A count that may be incremented and decremented.
+ * </p>
+ * <p>
+ * A counter created in a child {@link MetricGroup} has the counter of the
+ * same name in the parent group as its parent, and every change is also
+ * applied to the parent.
+ * </p>
+ */
+@ThreadSafe
+public class Counter {
+
+  private final AtomicLong count;
+  private final Counter parent;
+
+  Counter(@Nullable Counter parent) {
+    this.count = new AtomicLong();
+    this.parent = parent;
+  }
+
+  public void inc() {
+    inc(1);
+  }
+
+  public void inc(long n) {
+    count.addAndGet(n);
+    if (parent != null) {
+      parent.inc(n);
+    }
+  }
+
+  public void dec() {
+    inc(-1);
+  }
+
+  public void dec(long n) {
+    inc(-n);
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  @Override
+  public String toString() {
+    return Long.toString(getCount());
+  }
+
+}
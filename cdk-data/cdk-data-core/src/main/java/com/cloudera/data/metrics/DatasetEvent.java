@@ -0,0 +1,144 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+import com.google.common.base.Objects;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * <p>
+ * A timed dataset I/O operation, such as opening or committing a data file.
+ * </p>
+ * <p>
+ * Events are delivered to {@link DatasetEventListener}s registered with
+ * {@link DatasetEvents}, and carry the wall clock start time of the
+ * operation so that they can be lined up with GC and other JVM events.
+ * </p>
+ */
+@Immutable
+public class DatasetEvent {
+
+  /**
+   * The operations that produce events.
+   */
+  public static enum Type {
+    /** A writer creating its data file. */
+    WRITER_OPEN,
+    /** A writer flushing its data file. */
+    WRITER_FLUSH,
+    /** A writer closing its data file, not including the commit. */
+    WRITER_CLOSE,
+    /** A writer renaming its temporary data file to its final path. */
+    WRITER_COMMIT,
+    /** A reader opening a data file. */
+    READER_OPEN,
+    /** A reader closing a data file. The duration is the time it was open. */
+    READER_CLOSE,
+    /** Creating a partition directory. */
+    PARTITION_CREATE,
+    /** Loading a dataset descriptor. */
+    METADATA_LOAD,
+    /** Saving a dataset descriptor. */
+    METADATA_SAVE,
+    /** Sending a log event to a Flume agent. */
+    APPEND
+  }
+
+  private final Type type;
+  private final String dataset;
+  private final String path;
+  private final long bytes;
+  private final long startTimeMillis;
+  private final long durationNanos;
+  private final String threadName;
+
+  public DatasetEvent(Type type, @Nullable String dataset,
+    @Nullable String path, long bytes, long startTimeMillis,
+    long durationNanos, String threadName) {
+
+    this.type = type;
+    this.dataset = dataset;
+    this.path = path;
+    this.bytes = bytes;
+    this.startTimeMillis = startTimeMillis;
+    this.durationNanos = durationNanos;
+    this.threadName = threadName;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * The name of the dataset, if known.
+   */
+  @Nullable
+  public String getDataset() {
+    return dataset;
+  }
+
+  /**
+   * The file, directory or (for {@link Type#APPEND}) agent address operated
+   * on, if any.
+   */
+  @Nullable
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * The bytes involved, or -1 if not known. For writers, this is the size of
+   * the data file so far.
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * The time the operation started, in milliseconds since the epoch.
+   */
+  public long getStartTimeMillis() {
+    return startTimeMillis;
+  }
+
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  /**
+   * The name of the thread that performed the operation.
+   */
+  public String getThreadName() {
+    return threadName;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("type", type)
+      .add("dataset", dataset)
+      .add("path", path)
+      .add("bytes", bytes)
+      .add("startTimeMillis", startTimeMillis)
+      .add("durationMillis", durationNanos / (double) TimeUnit.MILLISECONDS.toNanos(1))
+      .add("threadName", threadName)
+      .omitNullValues()
+      .toString();
+  }
+
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+/**
+ * <p>
+ * Receives {@link DatasetEvent}s as they happen.
+ * </p>
+ * <p>
+ * Register listeners with {@link DatasetEvents#addListener}. Listeners are
+ * called synchronously by the thread performing the I/O, so they must be
+ * cheap and must not block. A listener may, for example, commit events to a
+ * profiler's recording or append them to an in memory buffer.
+ * </p>
+ */
+public interface DatasetEventListener {
+
+  void onEvent(DatasetEvent event);
+
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Delivers {@link DatasetEvent}s for dataset I/O to registered
+ * {@link DatasetEventListener}s.
+ * </p>
+ * <p>
+ * Events are only created while at least one listener is registered. With
+ * none, {@link #begin(DatasetEvent.Type, String, String)} costs a volatile
+ * read, so instrumented code can call it unconditionally.
+ * </p>
+ * <pre>
+ * DatasetEvents.Recording recording = DatasetEvents.begin(
+ *   DatasetEvent.Type.WRITER_COMMIT, dataset, path.toString());
+ * try {
+ *   ...
+ * } finally {
+ *   recording.end(bytes);
+ * }
+ * </pre>
+ */
+public class DatasetEvents {
+
+  private static final Logger logger = LoggerFactory
+    .getLogger(DatasetEvents.class);
+
+  private static final List<DatasetEventListener> listeners =
+    new CopyOnWriteArrayList<DatasetEventListener>();
+
+  private static volatile boolean enabled;
+
+  private DatasetEvents() {
+  }
+
+  public static synchronized void addListener(DatasetEventListener listener) {
+    listeners.add(listener);
+    enabled = true;
+  }
+
+  public static synchronized void removeListener(
+    DatasetEventListener listener) {
+
+    listeners.remove(listener);
+    enabled = !listeners.isEmpty();
+  }
+
+  /**
+   * Return true if any listener is registered.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Start timing an operation. The event is delivered when the returned
+   * {@link Recording} is ended.
+   */
+  public static Recording begin(DatasetEvent.Type type,
+    @Nullable String dataset, @Nullable String path) {
+
+    if (!enabled) {
+      return Recording.DISABLED;
+    }
+
+    return new Recording(type, dataset, path, System.currentTimeMillis(),
+      System.nanoTime());
+  }
+
+  /**
+   * Deliver an event to all listeners. A listener that throws does not stop
+   * delivery to the others, or fail the operation.
+   */
+  public static void publish(DatasetEvent event) {
+    for (DatasetEventListener listener : listeners) {
+      try {
+        listener.onEvent(event);
+      } catch (RuntimeException e) {
+        logger.warn("Dataset event listener:{} failed", listener, e);
+      }
+    }
+  }
+
+  /**
+   * An operation being timed.
+   */
+  public static class Recording {
+
+    private static final Recording DISABLED = new Recording(null, null, null,
+      0, 0);
+
+    private final DatasetEvent.Type type;
+    private final String dataset;
+    private final String path;
+    private final long startTimeMillis;
+    private final long startNanos;
+
+    private Recording(DatasetEvent.Type type, String dataset, String path,
+      long startTimeMillis, long startNanos) {
+
+      this.type = type;
+      this.dataset = dataset;
+      this.path = path;
+      this.startTimeMillis = startTimeMillis;
+      this.startNanos = startNanos;
+    }
+
+    /**
+     * End the operation, with an unknown number of bytes.
+     */
+    public void end() {
+      end(-1);
+    }
+
+    /**
+     * End the operation, delivering its event.
+     *
+     * @param bytes The bytes involved, or -1 if not known.
+     */
+    public void end(long bytes) {
+      if (this == DISABLED) {
+        return;
+      }
+
+      publish(new DatasetEvent(type, dataset, path, bytes, startTimeMillis,
+        System.nanoTime() - startNanos, Thread.currentThread().getName()));
+    }
+
+  }
+
+}
@@ -0,0 +1,307 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * The registry of per dataset metrics.
+ * </p>
+ * <p>
+ * Each dataset's {@link MetricGroup} is created on first use and registered
+ * with the platform MBean server under
+ * {@code com.cloudera.data:type=Dataset,name=<dataset name>}. Counters are
+ * exposed as attributes of the same name. Each timer {@code t} is exposed as
+ * {@code t.count}, {@code t.meanMillis}, {@code t.p50Millis},
+ * {@code t.p99Millis} and {@code t.maxMillis}.
+ * </p>
+ * <p>
+ * To publish metrics elsewhere, add a {@link MetricsReporter} and
+ * {@link #start(long, TimeUnit)} periodic reporting.
+ * </p>
+ */
+@ThreadSafe
+public class DatasetMetrics {
+
+  private static final Logger logger = LoggerFactory
+    .getLogger(DatasetMetrics.class);
+
+  public static final String JMX_DOMAIN = "com.cloudera.data";
+
+  /* Writer metrics. */
+
+  /** Counter of records written. */
+  public static final String RECORDS_WRITTEN = "recordsWritten";
+  /** Counter of encoded bytes written to data files. */
+  public static final String BYTES_WRITTEN = "bytesWritten";
+  /** Counter of data files currently open for writing. */
+  public static final String OPEN_FILES = "openFiles";
+  /** Timer of writer flushes. */
+  public static final String FLUSH_TIME = "flushTime";
+  /** Timer of closing data files, not including their commit. */
+  public static final String CLOSE_TIME = "closeTime";
+  /** Timer of renaming temporary data files to their final path. */
+  public static final String COMMIT_TIME = "commitTime";
+  /**
+   * Timer of callers waiting for space in the buffer of an
+   * {@link com.cloudera.data.filesystem.AsyncDatasetWriter}, recorded only
+   * when the buffer is full.
+   */
+  public static final String BUFFER_WAIT_TIME = "bufferWaitTime";
+  /** Counter of data files committed by a rolling writer before it closed. */
+  public static final String FILES_ROLLED = "filesRolled";
+
+  /* Partitioned writer metrics. */
+
+  /** Counter of records written to an already open partition writer. */
+  public static final String WRITER_CACHE_HITS = "writerCacheHits";
+  /**
+   * Counter of partition writers opened, each of which writes a new data file.
+   * Average records per file is {@link #RECORDS_WRITTEN} divided by this.
+   */
+  public static final String WRITER_CACHE_MISSES = "writerCacheMisses";
+  /**
+   * Counter of partition writers closed to make room for another. Each such
+   * partition gets a new, smaller file if it is written again.
+   */
+  public static final String WRITER_CACHE_EVICTIONS = "writerCacheEvictions";
+  /**
+   * Counter of partition writers closed because they were not written for
+   * longer than the dataset's idle timeout.
+   */
+  public static final String WRITER_CACHE_EXPIRATIONS = "writerCacheExpirations";
+
+  /* Reader metrics. */
+
+  /** Timer of listing a dataset's data files when getting a reader. */
+  public static final String LIST_TIME = "listTime";
+  /** Counter of data files opened for reading. */
+  public static final String FILES_OPENED = "filesOpened";
+  /** Timer of opening data files for reading. */
+  public static final String OPEN_TIME = "openTime";
+  /** Timer from starting to open a data file to reading its first record. */
+  public static final String FIRST_RECORD_TIME = "firstRecordTime";
+  /** Counter of records read. */
+  public static final String RECORDS_READ = "recordsRead";
+  /** Counter of data file bytes, as stored, opened for reading. */
+  public static final String BYTES_READ = "bytesRead";
+  /** Counter of bytes read after decompression, where known. */
+  public static final String DECOMPRESSED_BYTES_READ = "decompressedBytesRead";
+  /**
+   * Counter of nanoseconds spent reading and decoding records, excluding
+   * opening files. Records read per second is {@link #RECORDS_READ} divided
+   * by this.
+   */
+  public static final String DECODE_NANOS = "decodeNanos";
+
+  private static final DatasetMetrics instance = new DatasetMetrics(
+    ManagementFactory.getPlatformMBeanServer());
+
+  private final MBeanServer mBeanServer;
+  private final ConcurrentMap<String, MetricGroup> groups;
+  private final List<MetricsReporter> reporters;
+  private ScheduledExecutorService executor;
+
+  DatasetMetrics(MBeanServer mBeanServer) {
+    this.mBeanServer = mBeanServer;
+    this.groups = Maps.newConcurrentMap();
+    this.reporters = new CopyOnWriteArrayList<MetricsReporter>();
+  }
+
+  public static DatasetMetrics get() {
+    return instance;
+  }
+
+  /**
+   * Get the metrics of the named dataset, creating and registering them if
+   * necessary.
+   */
+  public MetricGroup group(String datasetName) {
+    Preconditions.checkArgument(datasetName != null,
+      "Dataset name can not be null");
+
+    MetricGroup group = groups.get(datasetName);
+
+    if (group == null) {
+      MetricGroup created = new MetricGroup(datasetName);
+      group = groups.putIfAbsent(datasetName, created);
+      if (group == null) {
+        group = created;
+        register(group);
+      }
+    }
+
+    return group;
+  }
+
+  /**
+   * Get the metrics of the named dataset, or null if it has none.
+   */
+  @Nullable
+  public MetricGroup getGroup(String datasetName) {
+    Preconditions.checkArgument(datasetName != null,
+      "Dataset name can not be null");
+
+    return groups.get(datasetName);
+  }
+
+  /**
+   * Return the metrics of all datasets.
+   */
+  public Collection<MetricGroup> getGroups() {
+    return ImmutableList.copyOf(groups.values());
+  }
+
+  /**
+   * Discard and unregister the metrics of the named dataset, such as when it
+   * is dropped.
+   */
+  public void remove(String datasetName) {
+    MetricGroup group = groups.remove(datasetName);
+
+    if (group != null) {
+      try {
+        mBeanServer.unregisterMBean(objectName(group));
+      } catch (JMException e) {
+        logger.warn("Unable to unregister metrics MBean for dataset:{}",
+          datasetName, e);
+      }
+    }
+  }
+
+  public void addReporter(MetricsReporter reporter) {
+    Preconditions.checkArgument(reporter != null, "Reporter can not be null");
+
+    reporters.add(reporter);
+  }
+
+  public void removeReporter(MetricsReporter reporter) {
+    reporters.remove(reporter);
+  }
+
+  /**
+   * Pass the metrics of all datasets to each reporter now.
+   */
+  public void report() {
+    Collection<MetricGroup> snapshot = getGroups();
+
+    for (MetricsReporter reporter : reporters) {
+      try {
+        reporter.report(snapshot);
+      } catch (RuntimeException e) {
+        logger.warn("Metrics reporter:{} failed", reporter, e);
+      }
+    }
+  }
+
+  /**
+   * Start calling {@link #report()} every {@code period}, from a daemon
+   * thread.
+   */
+  public synchronized void start(long period, TimeUnit unit) {
+    Preconditions.checkState(executor == null, "Reporting is already started");
+    Preconditions.checkArgument(period > 0, "Period must be positive");
+
+    executor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setDaemon(true)
+        .setNameFormat("dataset-metrics-reporter").build());
+    executor.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        report();
+      }
+    }, period, period, unit);
+  }
+
+  /**
+   * Stop periodic reporting, if started.
+   */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Register a {@link MetricGroup} that isn't a dataset's, such as that of a
+   * client component, with the MBean server under {@code name}. The group's
+   * metrics are exposed in the same way as those of datasets, but are not
+   * passed to reporters.
+   *
+   * @return true if the group was registered.
+   */
+  public boolean registerMBean(ObjectName name, MetricGroup group) {
+    Preconditions.checkArgument(name != null, "Name can not be null");
+    Preconditions.checkArgument(group != null, "Group can not be null");
+
+    try {
+      mBeanServer.registerMBean(new MetricGroupMBean(group), name);
+      return true;
+    } catch (JMException e) {
+      logger.warn("Unable to register metrics MBean:{}", name, e);
+      return false;
+    }
+  }
+
+  /**
+   * Unregister an MBean registered with
+   * {@link #registerMBean(ObjectName, MetricGroup)}, if it is registered.
+   */
+  public void unregisterMBean(ObjectName name) {
+    try {
+      if (mBeanServer.isRegistered(name)) {
+        mBeanServer.unregisterMBean(name);
+      }
+    } catch (JMException e) {
+      logger.warn("Unable to unregister metrics MBean:{}", name, e);
+    }
+  }
+
+  private void register(MetricGroup group) {
+    try {
+      mBeanServer.registerMBean(new MetricGroupMBean(group), objectName(group));
+    } catch (JMException e) {
+      logger.warn("Unable to register metrics MBean for dataset:{}",
+        group.getName(), e);
+    }
+  }
+
+  static ObjectName objectName(MetricGroup group) throws JMException {
+    return new ObjectName(JMX_DOMAIN + ":type=Dataset,name="
+      + ObjectName.quote(group.getName()));
+  }
+
+}
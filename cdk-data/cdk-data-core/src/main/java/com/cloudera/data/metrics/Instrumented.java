@@ -0,0 +1,36 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+/**
+ * <p>
+ * Implemented by readers and writers that record metrics.
+ * </p>
+ * <p>
+ * The metrics of a reader or writer cover its own lifetime. Its
+ * {@link MetricGroup} is a child of the group for its dataset, which
+ * accumulates the metrics of all of the dataset's readers and writers and is
+ * available from {@link DatasetMetrics}.
+ * </p>
+ */
+public interface Instrumented {
+
+  /**
+   * Return the metrics of this object.
+   */
+  MetricGroup getMetrics();
+
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * <p>
+ * A named set of {@link Counter}s and {@link Timer}s, such as those of a
+ * single writer or of all writers to a dataset.
+ * </p>
+ * <p>
+ * Metrics are created on first use. If the group has a parent, each metric is
+ * linked to the parent's metric of the same name so that the parent
+ * aggregates the metrics of all of its children.
+ * </p>
+ * <p>
+ * The counters of a {@link #deferred(String, MetricGroup) deferred} group are
+ * instead added to the parent's when {@link #publish()} is called, so that
+ * groups counted by different threads don't contend on the parent's
+ * counters for every change.
+ * </p>
+ */
+@ThreadSafe
+public class MetricGroup {
+
+  private final String name;
+  private final MetricGroup parent;
+  private final ConcurrentMap<String, Counter> counters;
+  private final ConcurrentMap<String, Timer> timers;
+  private final Map<String, Long> published;
+
+  public MetricGroup(String name) {
+    this(name, null);
+  }
+
+  public MetricGroup(String name, @Nullable MetricGroup parent) {
+    this(name, parent, false);
+  }
+
+  private MetricGroup(String name, @Nullable MetricGroup parent,
+    boolean deferred) {
+
+    Preconditions.checkArgument(name != null, "Name can not be null");
+
+    this.name = name;
+    this.parent = parent;
+    this.counters = Maps.newConcurrentMap();
+    this.timers = Maps.newConcurrentMap();
+    this.published = deferred ? Maps.<String, Long>newHashMap() : null;
+  }
+
+  /**
+   * Create a group whose counters are added to those of {@code parent} only
+   * by {@link #publish()}. Its timers are linked to the parent's as usual.
+   *
+   * @since 0.4.0
+   */
+  public static MetricGroup deferred(String name, MetricGroup parent) {
+    Preconditions.checkArgument(parent != null, "Parent can not be null");
+
+    return new MetricGroup(name, parent, true);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  @Nullable
+  public MetricGroup getParent() {
+    return parent;
+  }
+
+  /**
+   * Get the counter with the given name, creating it if necessary.
+   */
+  public Counter counter(String name) {
+    Counter counter = counters.get(name);
+
+    if (counter == null) {
+      Counter created = new Counter(parent != null && published == null ?
+        parent.counter(name) : null);
+      counter = counters.putIfAbsent(name, created);
+      if (counter == null) {
+        counter = created;
+      }
+    }
+
+    return counter;
+  }
+
+  /**
+   * Get the timer with the given name, creating it if necessary.
+   */
+  public Timer timer(String name) {
+    Timer timer = timers.get(name);
+
+    if (timer == null) {
+      Timer created = new Timer(parent != null ? parent.timer(name) : null);
+      timer = timers.putIfAbsent(name, created);
+      if (timer == null) {
+        timer = created;
+      }
+    }
+
+    return timer;
+  }
+
+  /**
+   * Add the changes to the counters of a deferred group since they were last
+   * published to the counters of its parent. Other groups are always
+   * published.
+   *
+   * @since 0.4.0
+   */
+  public void publish() {
+    if (published == null) {
+      return;
+    }
+
+    synchronized (published) {
+      for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+        long count = entry.getValue().getCount();
+        Long last = published.get(entry.getKey());
+        long change = count - (last != null ? last : 0);
+        if (change != 0) {
+          parent.counter(entry.getKey()).inc(change);
+          published.put(entry.getKey(), count);
+        }
+      }
+    }
+  }
+
+  /**
+   * Return the counters in this group, by name.
+   */
+  public SortedMap<String, Counter> getCounters() {
+    return ImmutableSortedMap.copyOf(counters);
+  }
+
+  /**
+   * Return the timers in this group, by name.
+   */
+  public SortedMap<String, Timer> getTimers() {
+    return ImmutableSortedMap.copyOf(timers);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("name", name)
+      .add("counters", getCounters())
+      .add("timers", getTimers())
+      .toString();
+  }
+
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanConstructorInfo;
+
+/**
+ * Exposes the current values of a {@link MetricGroup}'s metrics as read only
+ * MBean attributes. Metrics added to the group after registration appear the
+ * next time the MBean's info is read.
+ */
+class MetricGroupMBean implements DynamicMBean {
+
+  private static final String COUNT = ".count";
+  private static final String MEAN = ".meanMillis";
+  private static final String P50 = ".p50Millis";
+  private static final String P99 = ".p99Millis";
+  private static final String MAX = ".maxMillis";
+
+  private static final double NANOS_PER_MILLI = 1000000.0;
+
+  private final MetricGroup group;
+
+  MetricGroupMBean(MetricGroup group) {
+    this.group = group;
+  }
+
+  @Override
+  public Object getAttribute(String attribute)
+    throws AttributeNotFoundException {
+
+    Counter counter = group.getCounters().get(attribute);
+    if (counter != null) {
+      return counter.getCount();
+    }
+
+    int suffix = attribute.lastIndexOf('.');
+    if (suffix > 0) {
+      Timer timer = group.getTimers().get(attribute.substring(0, suffix));
+      if (timer != null) {
+        String statistic = attribute.substring(suffix);
+        if (COUNT.equals(statistic)) {
+          return timer.getCount();
+        } else if (MEAN.equals(statistic)) {
+          return timer.getMeanNanos() / NANOS_PER_MILLI;
+        } else if (P50.equals(statistic)) {
+          return timer.getPercentileNanos(0.5) / NANOS_PER_MILLI;
+        } else if (P99.equals(statistic)) {
+          return timer.getPercentileNanos(0.99) / NANOS_PER_MILLI;
+        } else if (MAX.equals(statistic)) {
+          return timer.getMaxNanos() / NANOS_PER_MILLI;
+        }
+      }
+    }
+
+    throw new AttributeNotFoundException("No metric attribute:" + attribute);
+  }
+
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    AttributeList list = new AttributeList();
+
+    for (String attribute : attributes) {
+      try {
+        list.add(new Attribute(attribute, getAttribute(attribute)));
+      } catch (AttributeNotFoundException e) {
+        // omitted, as specified by DynamicMBean
+      }
+    }
+
+    return list;
+  }
+
+  @Override
+  public void setAttribute(Attribute attribute)
+    throws AttributeNotFoundException {
+
+    throw new AttributeNotFoundException("Metric attributes are read only");
+  }
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature) {
+    throw new UnsupportedOperationException("No operations:" + actionName);
+  }
+
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    List<MBeanAttributeInfo> attributes = Lists.newArrayList();
+
+    for (String name : group.getCounters().keySet()) {
+      attributes.add(attribute(name, Long.class, "Counter"));
+    }
+
+    for (Map.Entry<String, Timer> entry : group.getTimers().entrySet()) {
+      String name = entry.getKey();
+      attributes.add(attribute(name + COUNT, Long.class, "Timer count"));
+      attributes.add(attribute(name + MEAN, Double.class, "Timer mean"));
+      attributes.add(attribute(name + P50, Double.class, "Timer median"));
+      attributes.add(attribute(name + P99, Double.class, "Timer 99th percentile"));
+      attributes.add(attribute(name + MAX, Double.class, "Timer maximum"));
+    }
+
+    return new MBeanInfo(getClass().getName(),
+      "Metrics of dataset " + group.getName(),
+      attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+      new MBeanConstructorInfo[0], new MBeanOperationInfo[0],
+      new MBeanNotificationInfo[0]);
+  }
+
+  private static MBeanAttributeInfo attribute(String name, Class<?> type,
+    String description) {
+
+    return new MBeanAttributeInfo(name, type.getName(), description, true,
+      false, false);
+  }
+
+}
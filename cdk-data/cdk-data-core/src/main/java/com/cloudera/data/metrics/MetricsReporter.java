@@ -0,0 +1,38 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+import java.util.Collection;
+
+/**
+ * <p>
+ * Receives the dataset metric groups periodically, to publish them to a
+ * monitoring system.
+ * </p>
+ * <p>
+ * Register reporters with {@link DatasetMetrics#addReporter(MetricsReporter)}.
+ * Reporters are called from a single background thread and should not block
+ * for long.
+ * </p>
+ */
+public interface MetricsReporter {
+
+  /**
+   * Report the current value of each metric in {@code groups}.
+   */
+  void report(Collection<MetricGroup> groups);
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link MetricsReporter} that logs each dataset's metrics on a single line
+ * at INFO.
+ */
+public class Slf4jMetricsReporter implements MetricsReporter {
+
+  private final Logger logger;
+
+  public Slf4jMetricsReporter() {
+    this(LoggerFactory.getLogger(Slf4jMetricsReporter.class));
+  }
+
+  public Slf4jMetricsReporter(Logger logger) {
+    this.logger = logger;
+  }
+
+  @Override
+  public void report(Collection<MetricGroup> groups) {
+    if (!logger.isInfoEnabled()) {
+      return;
+    }
+
+    for (MetricGroup group : groups) {
+      StringBuilder line = new StringBuilder("dataset:").append(group.getName());
+
+      for (Map.Entry<String, Counter> entry : group.getCounters().entrySet()) {
+        line.append(' ').append(entry.getKey()).append(':')
+          .append(entry.getValue().getCount());
+      }
+
+      for (Map.Entry<String, Timer> entry : group.getTimers().entrySet()) {
+        Timer timer = entry.getValue();
+        line.append(' ').append(entry.getKey()).append(":{count:")
+          .append(timer.getCount()).append(" p99Millis:")
+          .append(millis(timer.getPercentileNanos(0.99))).append(" maxMillis:")
+          .append(millis(timer.getMaxNanos())).append('}');
+      }
+
+      logger.info(line.toString());
+    }
+  }
+
+  private static long millis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+}
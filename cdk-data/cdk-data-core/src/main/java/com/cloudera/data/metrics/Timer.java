@@ -0,0 +1,173 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * <p>
+ * Records the distribution of durations of an operation.
+ * </p>
+ * <p>
+ * Durations are counted in power of two buckets of nanoseconds, so recording
+ * is cheap and needs no locking, and percentiles are accurate to within a
+ * factor of two. The count, total and maximum are exact.
+ * </p>
+ * <p>
+ * As with {@link Counter}, a timer created in a child {@link MetricGroup}
+ * also records every duration in the timer of the same name in the parent.
+ * </p>
+ */
+@ThreadSafe
+public class Timer {
+
+  private static final int BUCKETS = 65;
+
+  private final AtomicLong count;
+  private final AtomicLong totalNanos;
+  private final AtomicLong maxNanos;
+  private final AtomicLongArray buckets;
+  private final Timer parent;
+
+  Timer(@Nullable Timer parent) {
+    this.count = new AtomicLong();
+    this.totalNanos = new AtomicLong();
+    this.maxNanos = new AtomicLong();
+    this.buckets = new AtomicLongArray(BUCKETS);
+    this.parent = parent;
+  }
+
+  /**
+   * Start timing an operation. Call {@link Context#stop()} when it completes.
+   */
+  public Context time() {
+    return new Context(this, System.nanoTime());
+  }
+
+  public void update(long duration, TimeUnit unit) {
+    long nanos = Math.max(0, unit.toNanos(duration));
+
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+    buckets.incrementAndGet(bucket(nanos));
+
+    long max = maxNanos.get();
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+      max = maxNanos.get();
+    }
+
+    if (parent != null) {
+      parent.update(nanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getTotalNanos() {
+    return totalNanos.get();
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  public double getMeanNanos() {
+    long n = count.get();
+    return n == 0 ? 0.0 : (double) totalNanos.get() / n;
+  }
+
+  /**
+   * Return an upper bound for the given quantile of the recorded durations,
+   * in nanoseconds, or 0 if none have been recorded.
+   *
+   * @param quantile A quantile between 0 and 1, such as 0.99.
+   */
+  public long getPercentileNanos(double quantile) {
+    Preconditions.checkArgument(quantile >= 0.0 && quantile <= 1.0,
+      "Quantile must be between 0 and 1:%s", quantile);
+
+    long total = 0;
+    long[] snapshot = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = buckets.get(i);
+      total += snapshot[i];
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(upperBound(i), maxNanos.get());
+      }
+    }
+
+    return 0;
+  }
+
+  private static int bucket(long nanos) {
+    return Long.SIZE - Long.numberOfLeadingZeros(nanos);
+  }
+
+  private static long upperBound(int bucket) {
+    return bucket == Long.SIZE ? Long.MAX_VALUE : (1L << bucket) - 1;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("count", getCount())
+      .add("meanNanos", (long) getMeanNanos())
+      .add("p99Nanos", getPercentileNanos(0.99))
+      .add("maxNanos", getMaxNanos())
+      .toString();
+  }
+
+  /**
+   * A single timed operation, started by {@link Timer#time()}.
+   */
+  public static class Context {
+
+    private final Timer timer;
+    private final long startNanos;
+
+    Context(Timer timer, long startNanos) {
+      this.timer = timer;
+      this.startNanos = startNanos;
+    }
+
+    /**
+     * Record the time since the operation started.
+     *
+     * @return The elapsed time in nanoseconds.
+     */
+    public long stop() {
+      long elapsed = System.nanoTime() - startNanos;
+      timer.update(elapsed, TimeUnit.NANOSECONDS);
+      return elapsed;
+    }
+
+  }
+
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * <p>
+ * Provides counters and timers for dataset readers and writers, and the means
+ * to export them.
+ * </p>
+ * <p>
+ * Metrics are organized in {@link com.cloudera.data.metrics.MetricGroup}s.
+ * Each reader or writer that implements
+ * {@link com.cloudera.data.metrics.Instrumented} has its own group, which is a
+ * child of a group for its dataset. The dataset groups are kept by
+ * {@link com.cloudera.data.metrics.DatasetMetrics}, which registers each of
+ * them as an MBean and periodically passes them to any registered
+ * {@link com.cloudera.data.metrics.MetricsReporter}s.
+ * </p>
+ */
+@ParametersAreNonnullByDefault
+package com.cloudera.data.metrics;
+
+import javax.annotation.ParametersAreNonnullByDefault;
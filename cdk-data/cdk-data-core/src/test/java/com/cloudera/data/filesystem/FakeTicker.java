@@ -0,0 +1,36 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.google.common.base.Ticker;
+
+/**
+ * A {@link Ticker} that only moves when a test {@link #advance(long)}s it.
+ */
+public class FakeTicker extends Ticker {
+
+  private long nanos;
+
+  @Override
+  public long read() {
+    return nanos;
+  }
+
+  void advance(long nanos) {
+    this.nanos += nanos;
+  }
+
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.util.Map;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.metrics2.AbstractMetric;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsInfo;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.MetricsTag;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+
+/**
+ * <p>
+ * Counts the RPCs a {@link MiniDFSCluster}'s NameNode has served, by method.
+ * </p>
+ * <p>
+ * Counts are read from the NameNode's per method RPC metrics rather than
+ * from the client, so they include calls made by the {@code DFSClient} on
+ * behalf of a single {@link org.apache.hadoop.fs.FileSystem} call (such as
+ * the {@code getFileInfo} that precedes a {@code mkdirs}). Take a
+ * {@link #snapshot()} before and after an operation and compare them with
+ * {@link Snapshot#since(Snapshot)}.
+ * </p>
+ */
+public class NameNodeRpcCounter {
+
+  /**
+   * The ClientProtocol methods that dataset operations use, and that are
+   * budgeted.
+   */
+  public static final String GET_LISTING = "getListing";
+  public static final String GET_FILE_INFO = "getFileInfo";
+  public static final String MKDIRS = "mkdirs";
+  public static final String RENAME = "rename";
+  public static final String CREATE = "create";
+  public static final String DELETE = "delete";
+
+  private static final String[] METHODS = { GET_LISTING, GET_FILE_INFO,
+    MKDIRS, RENAME, CREATE, DELETE };
+
+  private static final String NUM_OPS_SUFFIX = "NumOps";
+
+  private final String sourceName;
+
+  public NameNodeRpcCounter(MiniDFSCluster cluster) {
+    Preconditions.checkArgument(cluster != null, "Cluster can not be null");
+
+    this.sourceName = "RpcDetailedActivityForPort" + cluster.getNameNodePort();
+  }
+
+  /**
+   * Read the current call counts for each of the budgeted methods.
+   */
+  public Snapshot snapshot() {
+    MetricsSource source = DefaultMetricsSystem.instance().getSource(sourceName);
+
+    Preconditions.checkState(source != null,
+      "No RPC metrics source named:" + sourceName);
+
+    CounterCollector collector = new CounterCollector();
+    source.getMetrics(collector, true);
+
+    ImmutableMap.Builder<String, Long> counts = ImmutableMap.builder();
+    for (String method : METHODS) {
+      // methods are only registered once called
+      Long count = collector.counters.get(
+        (method + NUM_OPS_SUFFIX).toLowerCase());
+      counts.put(method, count != null ? count : 0L);
+    }
+
+    return new Snapshot(counts.build());
+  }
+
+  /**
+   * Per method RPC counts at a point in time, or the difference between two
+   * points in time.
+   */
+  public static class Snapshot {
+
+    private final Map<String, Long> counts;
+
+    Snapshot(Map<String, Long> counts) {
+      this.counts = counts;
+    }
+
+    /**
+     * The number of calls made to {@code method}.
+     */
+    public long get(String method) {
+      Long count = counts.get(method);
+
+      Preconditions.checkArgument(count != null, "Unknown method:" + method);
+
+      return count;
+    }
+
+    /**
+     * The total number of calls made to all budgeted methods.
+     */
+    public long total() {
+      long total = 0;
+      for (Long count : counts.values()) {
+        total += count;
+      }
+      return total;
+    }
+
+    /**
+     * The calls made between {@code earlier} and this snapshot.
+     */
+    public Snapshot since(Snapshot earlier) {
+      ImmutableMap.Builder<String, Long> deltas = ImmutableMap.builder();
+      for (Map.Entry<String, Long> entry : counts.entrySet()) {
+        deltas.put(entry.getKey(),
+          entry.getValue() - earlier.get(entry.getKey()));
+      }
+      return new Snapshot(deltas.build());
+    }
+
+    @Override
+    public String toString() {
+      Objects.ToStringHelper helper = Objects.toStringHelper(this);
+      for (Map.Entry<String, Long> entry : counts.entrySet()) {
+        helper.add(entry.getKey(), entry.getValue());
+      }
+      return helper.toString();
+    }
+
+  }
+
+  /**
+   * Collects the counters of all records from a metrics source, by lower case
+   * name. The RPC metrics system capitalizes method names differently between
+   * releases, so names are compared ignoring case.
+   */
+  private static class CounterCollector implements MetricsCollector {
+
+    private final Map<String, Long> counters = Maps.newHashMap();
+    private final MetricsRecordBuilder builder = new CounterRecordBuilder();
+
+    @Override
+    public MetricsRecordBuilder addRecord(String name) {
+      return builder;
+    }
+
+    @Override
+    public MetricsRecordBuilder addRecord(MetricsInfo info) {
+      return builder;
+    }
+
+    private class CounterRecordBuilder extends MetricsRecordBuilder {
+
+      @Override
+      public MetricsRecordBuilder tag(MetricsInfo info, String value) {
+        return this;
+      }
+
+      @Override
+      public MetricsRecordBuilder add(MetricsTag tag) {
+        return this;
+      }
+
+      @Override
+      public MetricsRecordBuilder add(AbstractMetric metric) {
+        return this;
+      }
+
+      @Override
+      public MetricsRecordBuilder setContext(String value) {
+        return this;
+      }
+
+      @Override
+      public MetricsRecordBuilder addCounter(MetricsInfo info, int value) {
+        return addCounter(info, (long) value);
+      }
+
+      @Override
+      public MetricsRecordBuilder addCounter(MetricsInfo info, long value) {
+        counters.put(info.name().toLowerCase(), value);
+        return this;
+      }
+
+      @Override
+      public MetricsRecordBuilder addGauge(MetricsInfo info, int value) {
+        return this;
+      }
+
+      @Override
+      public MetricsRecordBuilder addGauge(MetricsInfo info, long value) {
+        return this;
+      }
+
+      @Override
+      public MetricsRecordBuilder addGauge(MetricsInfo info, float value) {
+        return this;
+      }
+
+      @Override
+      public MetricsRecordBuilder addGauge(MetricsInfo info, double value) {
+        return this;
+      }
+
+      @Override
+      public MetricsCollector parent() {
+        return CounterCollector.this;
+      }
+
+    }
+
+  }
+
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.AbstractDatasetWriter;
+import com.cloudera.data.DatasetReader;
+import com.cloudera.data.DatasetWriter;
+import com.cloudera.data.DatasetWriterException;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Type;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAsyncDatasetWriter {
+
+  private File testDirectory;
+  private FileSystem fileSystem;
+
+  @Before
+  public void setUp() throws IOException {
+    testDirectory = Files.createTempDir();
+    fileSystem = FileSystem.get(new Configuration());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fileSystem.delete(new Path(testDirectory.getAbsolutePath()), true);
+  }
+
+  @Test
+  public void testWrite() throws IOException {
+    Path path = new Path(testDirectory.getAbsolutePath(), "write-1.avro");
+    Schema schema = Schema.create(Type.STRING);
+    AsyncDatasetWriter<String> writer = new AsyncDatasetWriter<String>(
+        new FileSystemDatasetWriter<String>(fileSystem, path, schema, true), 4);
+
+    writer.open();
+    Assert.assertTrue(writer.isOpen());
+
+    for (int i = 0; i < 1000; i++) {
+      writer.write("entry " + i);
+
+      if (i % 100 == 0) {
+        writer.flush();
+      }
+    }
+
+    writer.close();
+    Assert.assertFalse(writer.isOpen());
+
+    Assert.assertEquals(1000, writer.getMetrics()
+        .counter(DatasetMetrics.RECORDS_WRITTEN).getCount());
+    Assert.assertEquals(10,
+        writer.getMetrics().timer(DatasetMetrics.FLUSH_TIME).getCount());
+
+    DatasetReader<String> reader = new FileSystemDatasetReader<String>(
+        fileSystem, path, schema);
+    reader.open();
+    try {
+      for (int i = 0; i < 1000; i++) {
+        Assert.assertTrue(reader.hasNext());
+        Assert.assertEquals("entry " + i, reader.read().toString());
+      }
+      Assert.assertFalse(reader.hasNext());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testFailure() {
+    FailingWriter failing = new FailingWriter(10);
+    AsyncDatasetWriter<String> writer = new AsyncDatasetWriter<String>(
+        failing, 4);
+
+    writer.open();
+    try {
+      for (int i = 0; i < 100; i++) {
+        writer.write("entry " + i);
+      }
+      writer.flush();
+      Assert.fail("Expected the failed write to be thrown");
+    } catch (DatasetWriterException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    } finally {
+      try {
+        writer.close();
+      } catch (DatasetWriterException e) {
+        // expected, the failure is thrown again
+      }
+    }
+
+    Assert.assertEquals(10, failing.written);
+    Assert.assertTrue(failing.closed);
+  }
+
+  @Test
+  public void testCloseWhileWriting() throws Exception {
+    final CountingWriter counting = new CountingWriter();
+    final AsyncDatasetWriter<String> writer = new AsyncDatasetWriter<String>(
+        counting, 4);
+    final AtomicLong accepted = new AtomicLong();
+    final CountDownLatch started = new CountDownLatch(4);
+    List<Thread> producers = Lists.newArrayList();
+
+    writer.open();
+    for (int i = 0; i < 4; i++) {
+      Thread producer = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          started.countDown();
+          try {
+            while (true) {
+              writer.write("entry");
+              accepted.incrementAndGet();
+            }
+          } catch (IllegalStateException e) {
+            // expected once the writer is closed
+          }
+        }
+      });
+      producers.add(producer);
+      producer.start();
+    }
+
+    started.await();
+    Thread.sleep(50);
+    writer.close();
+
+    for (Thread producer : producers) {
+      producer.join(10000);
+      Assert.assertFalse("Producer should not block", producer.isAlive());
+    }
+
+    // every write that was accepted was written before the writer closed
+    Assert.assertTrue(counting.closed);
+    Assert.assertEquals(accepted.get(), counting.written.get());
+  }
+
+  @Test
+  public void testWritesBatchesBetweenFlushes() {
+    CountingWriter counting = new CountingWriter();
+    AsyncDatasetWriter<String> writer = new AsyncDatasetWriter<String>(
+        counting, 16);
+
+    writer.open();
+    for (int i = 0; i < 1000; i++) {
+      writer.write("entry " + i);
+
+      if (i % 100 == 0) {
+        writer.flush();
+      }
+    }
+    writer.close();
+
+    // buffered entities are written with writeAll, never one at a time
+    Assert.assertEquals(1000, counting.written.get());
+    Assert.assertEquals(0, counting.singleWrites.get());
+    Assert.assertEquals(10, counting.flushes.get());
+    Assert.assertTrue(counting.closed);
+  }
+
+  private static class CountingWriter extends AbstractDatasetWriter<String> {
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong singleWrites = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private volatile boolean closed;
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void write(String entity) {
+      singleWrites.incrementAndGet();
+      writeAll(Lists.newArrayList(entity));
+    }
+
+    @Override
+    public void writeAll(Iterable<? extends String> entities) {
+      Assert.assertFalse("Write after close", closed);
+      for (String entity : entities) {
+        written.incrementAndGet();
+      }
+    }
+
+    @Override
+    public void flush() {
+      flushes.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return !closed;
+    }
+
+  }
+
+  private static class FailingWriter extends AbstractDatasetWriter<String> {
+
+    private final int failAfter;
+    private int written;
+    private boolean closed;
+
+    FailingWriter(int failAfter) {
+      this.failAfter = failAfter;
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void write(String entity) {
+      if (written == failAfter) {
+        throw new IllegalStateException("Failed to write:" + entity);
+      }
+      written++;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return !closed;
+    }
+
+  }
+
+}
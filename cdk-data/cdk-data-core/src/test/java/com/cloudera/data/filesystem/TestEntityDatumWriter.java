@@ -0,0 +1,130 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData.Record;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.reflect.ReflectData;
+import org.apache.avro.reflect.ReflectDatumWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.cloudera.data.filesystem.DatasetTestUtilities.USER_SCHEMA;
+
+public class TestEntityDatumWriter {
+
+  @Test
+  public void testWriterSelection() {
+    Assert.assertEquals(GenericDatumWriter.class,
+      EntityDatumWriter.newWriter(Record.class, USER_SCHEMA).getClass());
+    Assert.assertEquals(EntityDatumWriter.PojoDatumWriter.class,
+      EntityDatumWriter.newWriter(Account.class, USER_SCHEMA).getClass());
+  }
+
+  @Test
+  public void testGenericRecord() throws IOException {
+    Record record = new GenericRecordBuilder(USER_SCHEMA)
+      .set("username", "test").set("email", "a@example.com").build();
+
+    Assert.assertArrayEquals(
+      encode(new ReflectDatumWriter<Object>(USER_SCHEMA), USER_SCHEMA, record),
+      encode(new EntityDatumWriter<Object>(), USER_SCHEMA, record));
+  }
+
+  @Test
+  public void testPojo() throws IOException {
+    Schema schema = ReflectData.get().getSchema(Account.class);
+    Account account = new Account("test", 42L, new Owner("a@example.com", 7),
+      Arrays.asList("x", "y"));
+
+    Assert.assertArrayEquals(
+      encode(new ReflectDatumWriter<Object>(schema), schema, account, account),
+      encode(new EntityDatumWriter<Object>(), schema, account, account));
+  }
+
+  @Test
+  public void testMixedEntityClasses() throws IOException {
+    Schema schema = ReflectData.get().getSchema(Owner.class);
+    Owner owner = new Owner("a@example.com", 7);
+    Record record = new GenericRecordBuilder(schema)
+      .set("email", "b@example.com").set("id", 8).build();
+
+    Assert.assertArrayEquals(
+      encode(new ReflectDatumWriter<Object>(schema), schema, owner, record,
+        owner),
+      encode(new EntityDatumWriter<Object>(), schema, owner, record, owner));
+  }
+
+  private static byte[] encode(DatumWriter<Object> writer, Schema schema,
+    Object... entities) throws IOException {
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    writer.setSchema(schema);
+    for (Object entity : entities) {
+      writer.write(entity, encoder);
+    }
+    encoder.flush();
+    return out.toByteArray();
+  }
+
+  private static class Owner {
+
+    private String email;
+    private int id;
+
+    Owner(String email, int id) {
+      this.email = email;
+      this.id = id;
+    }
+
+  }
+
+  private static class Named {
+
+    private String name;
+
+    Named(String name) {
+      this.name = name;
+    }
+
+  }
+
+  private static class Account extends Named {
+
+    private long balance;
+    private Owner owner;
+    private List<String> tags;
+
+    Account(String name, long balance, Owner owner, List<String> tags) {
+      super(name);
+      this.balance = balance;
+      this.owner = owner;
+      this.tags = tags;
+    }
+
+  }
+
+}
@@ -19,21 +19,34 @@ import com.cloudera.data.Dataset;
 import com.cloudera.data.DatasetDescriptor;
 import com.cloudera.data.DatasetException;
 import com.cloudera.data.DatasetReader;
+import com.cloudera.data.DatasetWriter;
 import com.cloudera.data.FieldPartitioner;
 import com.cloudera.data.Format;
 import com.cloudera.data.Formats;
 import com.cloudera.data.PartitionKey;
 import com.cloudera.data.PartitionStrategy;
+import com.cloudera.data.ReadPlan;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.Instrumented;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericData.Record;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.junit.After;
@@ -134,6 +147,278 @@ public class TestFileSystemDataset {
     checkTestUsers(records, 10);
   }
 
+  @Test
+  public void testWriterProperties() throws IOException {
+    FileSystemDataset ds = new FileSystemDataset.Builder()
+      .fileSystem(fileSystem)
+      .directory(testDirectory)
+      .name("users")
+      .descriptor(
+        new DatasetDescriptor.Builder().schema(USER_SCHEMA).format(format)
+          .property(WriterProperties.CODEC, "deflate")
+          .property(WriterProperties.COMPRESSION_LEVEL, "1")
+          .property(WriterProperties.AVRO_SYNC_INTERVAL, "4096")
+          .property(WriterProperties.PARQUET_PAGE_SIZE, "4096")
+          .property(WriterProperties.PARQUET_DICTIONARY, "false").get()).get();
+
+    writeTestUsers(ds, 10);
+    checkTestUsers(ds, 10);
+
+    List<ReadPlan.DataFile> files = ds.explain().getFiles();
+    Assert.assertEquals(1, files.size());
+    Assert.assertEquals(Formats.PARQUET.equals(format) ? "gzip" : "deflate",
+      files.get(0).getCodec());
+  }
+
+  @Test
+  public void testRollingWriter() throws IOException {
+    FileSystemDataset ds = new FileSystemDataset.Builder()
+      .fileSystem(fileSystem)
+      .directory(testDirectory)
+      .name("users")
+      .descriptor(
+        new DatasetDescriptor.Builder().schema(USER_SCHEMA).format(format)
+          .property(WriterProperties.ROLL_RECORDS, "3").get()).get();
+
+    writeTestUsers(ds, 10);
+    checkTestUsers(ds, 10);
+
+    Assert.assertEquals(4, ds.explain().getFiles().size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidWriterProperties() {
+    new FileSystemDataset.Builder()
+      .fileSystem(fileSystem)
+      .directory(testDirectory)
+      .name("users")
+      .descriptor(
+        new DatasetDescriptor.Builder().schema(USER_SCHEMA).format(format)
+          .property(WriterProperties.CODEC, "lzma").get()).get()
+      .getWriter();
+  }
+
+  @Test
+  public void testConcurrentWriter() throws Exception {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder().hash(
+      "username", 2).get();
+
+    FileSystemDataset ds = new FileSystemDataset.Builder()
+      .fileSystem(fileSystem)
+      .directory(testDirectory)
+      .name("concurrent-users")
+      .descriptor(
+        new DatasetDescriptor.Builder().schema(USER_SCHEMA).format(format)
+          .partitionStrategy(partitionStrategy).get()).get();
+
+    final DatasetWriter<Record> writer = ds.getConcurrentWriter();
+    final List<Throwable> failures = Collections
+      .synchronizedList(Lists.<Throwable>newArrayList());
+    List<Thread> threads = Lists.newArrayList();
+
+    writer.open();
+    try {
+      for (int t = 0; t < 4; t++) {
+        final int start = t * 25;
+        Thread thread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              for (int i = start; i < start + 25; i++) {
+                writer.write(new GenericRecordBuilder(USER_SCHEMA)
+                  .set("username", "test-" + i)
+                  .set("email", "email-" + i).build());
+              }
+            } catch (Throwable e) {
+              failures.add(e);
+            }
+          }
+        });
+        thread.start();
+        threads.add(thread);
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      // stripes add their counts to the writer's when they are flushed
+      writer.flush();
+      Assert.assertEquals(100, ((Instrumented) writer).getMetrics()
+        .counter(DatasetMetrics.RECORDS_WRITTEN).getCount());
+    } finally {
+      writer.close();
+    }
+
+    Assert.assertEquals(Collections.emptyList(), failures);
+    Assert.assertFalse(writer.isOpen());
+    checkTestUsers(ds, 100);
+  }
+
+  @Test
+  public void testConcurrentWriterStripes() {
+    FileSystemDataset ds = new FileSystemDataset.Builder()
+      .fileSystem(fileSystem)
+      .directory(testDirectory)
+      .name("concurrent-users")
+      .descriptor(
+        new DatasetDescriptor.Builder().schema(USER_SCHEMA).format(format)
+          .property(WriterProperties.CONCURRENT_STRIPES, "3").get()).get();
+
+    Assert.assertEquals(3, ((ConcurrentDatasetWriter<Record>) ds
+      .<Record>getConcurrentWriter()).getStripeCount());
+  }
+
+  @Test
+  public void testConcurrentWriterKeepsPartitionWritersOpen() throws Exception {
+    // more stripes than partition writers would leave each stripe one writer
+    FileSystemDataset ds = new FileSystemDataset.Builder()
+      .fileSystem(fileSystem)
+      .directory(testDirectory)
+      .name("concurrent-users")
+      .descriptor(
+        new DatasetDescriptor.Builder().schema(USER_SCHEMA).format(format)
+          .partitionStrategy(new PartitionStrategy.Builder().hash(
+            "username", 4).get())
+          .property(WriterProperties.PARTITION_MAX_WRITERS, "8")
+          .property(WriterProperties.CONCURRENT_STRIPES, "16").get()).get();
+
+    final DatasetWriter<Record> writer = ds.getConcurrentWriter();
+    Assert.assertEquals(2,
+      ((ConcurrentDatasetWriter<Record>) writer).getStripeCount());
+
+    final List<Throwable> failures = Collections
+      .synchronizedList(Lists.<Throwable>newArrayList());
+    List<Thread> threads = Lists.newArrayList();
+
+    writer.open();
+    try {
+      for (int t = 0; t < 8; t++) {
+        final int start = t * 100;
+        Thread thread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              // consecutive usernames fall in different partitions
+              for (int i = start; i < start + 100; i++) {
+                writer.write(new GenericRecordBuilder(USER_SCHEMA)
+                  .set("username", "test-" + i)
+                  .set("email", "email-" + i).build());
+              }
+            } catch (Throwable e) {
+              failures.add(e);
+            }
+          }
+        });
+        thread.start();
+        threads.add(thread);
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    } finally {
+      writer.close();
+    }
+
+    Assert.assertEquals(Collections.emptyList(), failures);
+    checkTestUsers(ds, 800);
+
+    // each stripe keeps a writer open for every partition
+    List<FileStatus> files = Lists.newArrayList();
+    FileSystemDataset.accumulateDatafiles(fileSystem, testDirectory, files);
+    Assert.assertTrue("Wrote " + files.size() + " files", files.size() <= 8);
+  }
+
+  @Test
+  public void testEncodedWriter() throws IOException {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder().hash(
+      "username", 2).get();
+
+    FileSystemDataset ds = new FileSystemDataset.Builder()
+      .fileSystem(fileSystem)
+      .directory(testDirectory)
+      .name("encoded-users")
+      .descriptor(
+        new DatasetDescriptor.Builder().schema(USER_SCHEMA).format(format)
+          .partitionStrategy(partitionStrategy).get()).get();
+
+    GenericDatumWriter<Record> datumWriter =
+      new GenericDatumWriter<Record>(USER_SCHEMA);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = null;
+
+    DatasetWriter<ByteBuffer> writer = ds.getEncodedWriter();
+    writer.open();
+    try {
+      for (int i = 0; i < 10; i++) {
+        out.reset();
+        encoder = EncoderFactory.get().binaryEncoder(out, encoder);
+        datumWriter.write(new GenericRecordBuilder(USER_SCHEMA)
+          .set("username", "test-" + i).set("email", "email-" + i).build(),
+          encoder);
+        encoder.flush();
+        // encoded entities need not start at the beginning of their buffer
+        ByteBuffer buffer = ByteBuffer.allocate(out.size() + 4);
+        buffer.position(4);
+        buffer.put(out.toByteArray()).position(4);
+        writer.write(buffer.slice());
+      }
+    } finally {
+      writer.close();
+    }
+
+    checkTestUsers(ds, 10);
+    Assert.assertEquals(10,
+      readTestUsersInPartition(ds, partitionStrategy.partitionKey(0), null)
+        + readTestUsersInPartition(ds, partitionStrategy.partitionKey(1), null));
+  }
+
+  @Test
+  public void testEncodedWriterDirectBuffers() throws IOException {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder().hash(
+      "username", 2).get();
+
+    FileSystemDataset ds = new FileSystemDataset.Builder()
+      .fileSystem(fileSystem)
+      .directory(testDirectory)
+      .name("encoded-users")
+      .descriptor(
+        new DatasetDescriptor.Builder().schema(USER_SCHEMA).format(format)
+          .partitionStrategy(partitionStrategy).get()).get();
+
+    GenericDatumWriter<Record> datumWriter =
+      new GenericDatumWriter<Record>(USER_SCHEMA);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = null;
+    List<ByteBuffer> buffers = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      out.reset();
+      encoder = EncoderFactory.get().binaryEncoder(out, encoder);
+      datumWriter.write(new GenericRecordBuilder(USER_SCHEMA)
+        .set("username", "test-" + i).set("email", "email-" + i).build(),
+        encoder);
+      encoder.flush();
+      // a direct buffer has no backing array
+      ByteBuffer buffer = ByteBuffer.allocateDirect(out.size());
+      buffer.put(out.toByteArray()).flip();
+      buffers.add(buffer);
+    }
+
+    DatasetWriter<ByteBuffer> writer = ds.getEncodedWriter();
+    writer.open();
+    try {
+      writer.writeAll(buffers.subList(0, 5));
+      for (ByteBuffer buffer : buffers.subList(5, 10)) {
+        writer.write(buffer);
+      }
+    } finally {
+      writer.close();
+    }
+
+    checkTestUsers(ds, 10);
+    Assert.assertEquals(10,
+      readTestUsersInPartition(ds, partitionStrategy.partitionKey(0), null)
+        + readTestUsersInPartition(ds, partitionStrategy.partitionKey(1), null));
+  }
+
   @Test
   public void testPartitionedWriterDouble() throws IOException {
     PartitionStrategy partitionStrategy = new PartitionStrategy.Builder()
@@ -184,6 +469,47 @@ public class TestFileSystemDataset {
 
   }
 
+  @Test
+  public void testExplain() throws IOException {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder().hash(
+      "username", 2).get();
+
+    FileSystemDataset ds = new FileSystemDataset.Builder()
+      .fileSystem(new InstrumentedFileSystem(fileSystem))
+      .directory(testDirectory)
+      .name("partitioned-users")
+      .descriptor(
+        new DatasetDescriptor.Builder().schema(USER_SCHEMA).format(format)
+          .partitionStrategy(partitionStrategy).get()).get();
+
+    writeTestUsers(ds, 10);
+
+    ReadPlan plan = ds.explain();
+
+    Assert.assertEquals("partitioned-users", plan.getDataset());
+    Assert.assertEquals(format, plan.getFormat());
+    Assert.assertEquals(Sets.newTreeSet(Arrays.asList("username=0",
+      "username=1")), plan.getPartitions());
+    Assert.assertEquals(2, plan.getFiles().size());
+
+    long totalBytes = 0;
+    for (ReadPlan.DataFile file : plan.getFiles()) {
+      long length = fileSystem.getFileStatus(new Path(file.getPath())).getLen();
+      Assert.assertEquals(length, file.getLength());
+      Assert.assertNotNull("Codec of " + file, file.getCodec());
+      totalBytes += length;
+    }
+    Assert.assertEquals(totalBytes, plan.getTotalBytes());
+
+    // the dataset directory and each partition are listed, and each file opened
+    Assert.assertEquals(Long.valueOf(3),
+      plan.getFileSystemCalls().get(InstrumentedFileSystem.LIST_STATUS));
+    Assert.assertEquals(Long.valueOf(2),
+      plan.getFileSystemCalls().get(InstrumentedFileSystem.OPEN));
+    Assert.assertTrue(plan.describe(),
+      plan.describe().contains("2 partitions, 2 files"));
+  }
+
   @Test
   public void testGetPartitionReturnsNullIfNoAutoCreate() throws IOException {
     PartitionStrategy partitionStrategy = new PartitionStrategy.Builder().hash(
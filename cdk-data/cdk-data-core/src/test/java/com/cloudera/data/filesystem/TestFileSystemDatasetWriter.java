@@ -15,18 +15,31 @@
  */
 package com.cloudera.data.filesystem;
 
+import com.cloudera.data.DatasetDescriptor;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.MetricGroup;
+import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData.Record;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecordBuilder;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import static com.cloudera.data.filesystem.DatasetTestUtilities.USER_SCHEMA;
+
 public class TestFileSystemDatasetWriter {
 
   private File testDirectory;
@@ -62,4 +75,147 @@ public class TestFileSystemDatasetWriter {
     writer.close();
   }
 
+  @Test
+  public void testWriteAll() throws IOException {
+    FileSystemDatasetWriter<String> writer = new FileSystemDatasetWriter<String>(
+        fileSystem, new Path(testDirectory.getAbsolutePath(), "write-1.avro"),
+        Schema.create(Type.STRING), true);
+
+    List<String> entries = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      entries.add("entry " + i);
+    }
+
+    writer.open();
+    writer.writeAll(entries);
+    writer.writeAll(new String[] { "entry 100", "entry 101" });
+    writer.close();
+
+    Assert.assertEquals(102, writer.getMetrics()
+        .counter(DatasetMetrics.RECORDS_WRITTEN).getCount());
+  }
+
+  @Test
+  public void testMetrics() throws IOException {
+    MetricGroup datasetMetrics = new MetricGroup("test");
+    Path path = new Path(testDirectory.getAbsolutePath(), "write-1.avro");
+    FileSystemDatasetWriter<String> writer = new FileSystemDatasetWriter.Builder<String>()
+        .fileSystem(fileSystem).path(path).schema(Schema.create(Type.STRING))
+        .datasetMetrics(datasetMetrics).get();
+
+    writer.open();
+    Assert.assertEquals(1,
+        datasetMetrics.counter(DatasetMetrics.OPEN_FILES).getCount());
+
+    for (int i = 0; i < 100; i++) {
+      writer.write("entry " + i);
+    }
+    writer.flush();
+    writer.close();
+
+    MetricGroup metrics = writer.getMetrics();
+    Assert.assertEquals(100,
+        metrics.counter(DatasetMetrics.RECORDS_WRITTEN).getCount());
+    Assert.assertEquals(fileSystem.getFileStatus(path).getLen(),
+        metrics.counter(DatasetMetrics.BYTES_WRITTEN).getCount());
+    Assert.assertEquals(1, metrics.timer(DatasetMetrics.FLUSH_TIME).getCount());
+    Assert.assertEquals(1, metrics.timer(DatasetMetrics.CLOSE_TIME).getCount());
+    Assert.assertEquals(1, metrics.timer(DatasetMetrics.COMMIT_TIME).getCount());
+
+    Assert.assertEquals(0,
+        datasetMetrics.counter(DatasetMetrics.OPEN_FILES).getCount());
+    Assert.assertEquals(100,
+        datasetMetrics.counter(DatasetMetrics.RECORDS_WRITTEN).getCount());
+  }
+
+  @Test
+  public void testPipelinedCompression() throws IOException {
+    for (String codec : new String[] { "deflate", "snappy" }) {
+      Path path = new Path(testDirectory.getAbsolutePath(),
+          "pipelined-" + codec + ".avro");
+      WriterProperties properties = WriterProperties.of(
+          new DatasetDescriptor.Builder().schema(Schema.create(Type.STRING))
+              .property(WriterProperties.CODEC, codec)
+              .property(WriterProperties.COMPRESSION_THREADS, "3")
+              .property(WriterProperties.AVRO_SYNC_INTERVAL, "1024").get());
+      FileSystemDatasetWriter<String> writer =
+          new FileSystemDatasetWriter.Builder<String>().fileSystem(fileSystem)
+              .path(path).schema(Schema.create(Type.STRING))
+              .properties(properties).get();
+
+      writer.open();
+      for (int i = 0; i < 5000; i++) {
+        writer.write("entry " + i);
+        if (i == 2500) {
+          writer.flush();
+        }
+      }
+      writer.close();
+
+      Assert.assertEquals(fileSystem.getFileStatus(path).getLen(),
+          writer.getMetrics().counter(DatasetMetrics.BYTES_WRITTEN).getCount());
+
+      // blocks must be readable by Avro, and in the order they were written
+      DataFileReader<Object> reader = new DataFileReader<Object>(
+          new File(path.toUri().getPath()), new GenericDatumReader<Object>());
+      try {
+        Assert.assertEquals(codec, reader.getMetaString("avro.codec"));
+        int count = 0;
+        while (reader.hasNext()) {
+          Assert.assertEquals("entry " + count, reader.next().toString());
+          count++;
+        }
+        Assert.assertEquals(5000, count);
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  @Test
+  public void testPipelinedFailedAppend() throws IOException {
+    Path path = new Path(testDirectory.getAbsolutePath(), "pipelined.avro");
+    WriterProperties properties = WriterProperties.of(
+        new DatasetDescriptor.Builder().schema(USER_SCHEMA)
+            .property(WriterProperties.COMPRESSION_THREADS, "2").get());
+    FileSystemDatasetWriter<Record> writer =
+        new FileSystemDatasetWriter.Builder<Record>().fileSystem(fileSystem)
+            .path(path).schema(USER_SCHEMA).properties(properties).get();
+
+    writer.open();
+    writer.write(user(0));
+    // the username is encoded before the missing email fails the write
+    Record bad = new Record(USER_SCHEMA);
+    bad.put("username", "bad");
+    try {
+      writer.write(bad);
+      Assert.fail("Expected the write to fail");
+    } catch (DataFileWriter.AppendWriteException e) {
+      // expected
+    }
+    for (int i = 1; i < 10; i++) {
+      writer.write(user(i));
+    }
+    writer.close();
+
+    DataFileReader<Record> reader = new DataFileReader<Record>(
+        new File(path.toUri().getPath()), new GenericDatumReader<Record>());
+    try {
+      int count = 0;
+      while (reader.hasNext()) {
+        Assert.assertEquals("test-" + count,
+            reader.next().get("username").toString());
+        count++;
+      }
+      Assert.assertEquals(10, count);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static Record user(int i) {
+    return new GenericRecordBuilder(USER_SCHEMA)
+        .set("username", "test-" + i).set("email", "email-" + i).build();
+  }
+
 }
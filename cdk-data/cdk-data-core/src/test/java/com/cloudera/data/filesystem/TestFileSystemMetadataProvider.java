@@ -19,6 +19,7 @@ import com.cloudera.data.DatasetDescriptor;
 import com.cloudera.data.Formats;
 import com.cloudera.data.MetadataProvider;
 import com.cloudera.data.PartitionStrategy;
+import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import java.io.IOException;
 import org.apache.hadoop.conf.Configuration;
@@ -119,4 +120,33 @@ public class TestFileSystemMetadataProvider {
     Assert.assertEquals(Formats.PARQUET, descriptor.getFormat());
   }
 
+  @Test
+  public void testProperties() throws IOException {
+    MetadataProvider provider = new FileSystemMetadataProvider(fileSystem,
+        testDirectory);
+
+    provider.save("test", new DatasetDescriptor.Builder().schema(USER_SCHEMA)
+        .property(WriterProperties.CODEC, "deflate")
+        .property(WriterProperties.COMPRESSION_LEVEL, "9").get());
+
+    DatasetDescriptor descriptor = provider.load("test");
+
+    Assert.assertEquals(Sets.newHashSet(WriterProperties.CODEC,
+        WriterProperties.COMPRESSION_LEVEL), descriptor.listProperties());
+    Assert.assertEquals("deflate",
+        descriptor.getProperty(WriterProperties.CODEC));
+    Assert.assertEquals("9",
+        descriptor.getProperty(WriterProperties.COMPRESSION_LEVEL));
+    Assert.assertFalse(descriptor.hasProperty("format"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReservedProperty() {
+    MetadataProvider provider = new FileSystemMetadataProvider(fileSystem,
+        testDirectory);
+
+    provider.save("test", new DatasetDescriptor.Builder().schema(USER_SCHEMA)
+        .property("format", "csv").get());
+  }
+
 }
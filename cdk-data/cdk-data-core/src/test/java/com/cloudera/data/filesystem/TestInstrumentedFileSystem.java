@@ -0,0 +1,145 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.Dataset;
+import com.cloudera.data.DatasetDescriptor;
+import com.cloudera.data.DatasetReader;
+import com.cloudera.data.MetadataProviderException;
+import com.cloudera.data.PartitionStrategy;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.MetricGroup;
+import com.cloudera.data.metrics.Timer;
+import com.google.common.io.Files;
+import java.io.IOException;
+import org.apache.avro.generic.GenericData.Record;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.cloudera.data.filesystem.DatasetTestUtilities.*;
+
+public class TestInstrumentedFileSystem {
+
+  private static final String NAME = "instrumented-test";
+
+  private InstrumentedFileSystem fileSystem;
+  private Path testDirectory;
+  private FileSystemDatasetRepository repo;
+  private PartitionStrategy partitionStrategy;
+
+  @Before
+  public void setUp() throws IOException {
+    fileSystem = new InstrumentedFileSystem(
+      FileSystem.get(new Configuration()));
+    testDirectory = new Path(Files.createTempDir().getAbsolutePath());
+    repo = new FileSystemDatasetRepository(fileSystem, testDirectory);
+    partitionStrategy = new PartitionStrategy.Builder()
+      .hash("username", 2).get();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fileSystem.delete(testDirectory, true);
+    DatasetMetrics.get().remove(NAME);
+  }
+
+  @Test
+  public void testCallsAreTaggedWithOperation() {
+    Dataset users = repo.create(NAME, new DatasetDescriptor.Builder()
+      .schema(USER_SCHEMA).partitionStrategy(partitionStrategy).get());
+    MetricGroup datasetMetrics = DatasetMetrics.get().group(NAME);
+
+    // the dataset and metadata directories, including the provider's calls
+    Assert.assertEquals(2, count(datasetMetrics, "fs.create.mkdirs"));
+
+    Assert.assertNotNull(users.getPartition(
+      partitionStrategy.partitionKey(1), true));
+
+    Assert.assertEquals(1, count(datasetMetrics, "fs.getPartition.exists"));
+    Assert.assertEquals(1, count(datasetMetrics, "fs.getPartition.mkdirs"));
+    // exists is implemented with getFileStatus, which isn't counted again
+    Assert.assertEquals(0,
+      count(datasetMetrics, "fs.getPartition.getFileStatus"));
+    Assert.assertEquals(0,
+      count(fileSystem.getMetrics(), InstrumentedFileSystem.GET_FILE_STATUS));
+
+    Assert.assertTrue(repo.drop(NAME));
+    Assert.assertEquals(2, count(datasetMetrics, "fs.drop.delete"));
+    // the dropped dataset's metrics are discarded
+    Assert.assertNull(DatasetMetrics.get().getGroup(NAME));
+  }
+
+  @Test
+  public void testMissingDatasetHasNoMetrics() {
+    try {
+      repo.get(NAME);
+      Assert.fail("Expected the missing dataset to be reported");
+    } catch (MetadataProviderException e) {
+      // expected
+    }
+    Assert.assertFalse(repo.drop(NAME));
+
+    Assert.assertNull(DatasetMetrics.get().getGroup(NAME));
+  }
+
+  @Test
+  public void testReadsAndWritesAreTagged() {
+    Dataset users = repo.create(NAME, new DatasetDescriptor.Builder()
+      .schema(USER_SCHEMA).partitionStrategy(partitionStrategy).get());
+    writeTestUsers(users, 10);
+    MetricGroup datasetMetrics = DatasetMetrics.get().group(NAME);
+
+    // the partition lookup is part of the write that needed it
+    Assert.assertEquals(0, count(datasetMetrics, "fs.getPartition.exists"));
+    Assert.assertEquals(2, count(datasetMetrics, "fs.write.exists"));
+    Assert.assertEquals(2, count(datasetMetrics, "fs.write.create"));
+    Assert.assertEquals(2, count(datasetMetrics, "fs.write.rename"));
+
+    DatasetReader<Record> reader = users.getReader();
+    Assert.assertTrue(count(datasetMetrics, "fs.getReader.listStatus") > 0);
+
+    reader.open();
+    try {
+      Assert.assertEquals(1, count(datasetMetrics, "fs.read.open"));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testUntaggedCalls() throws IOException {
+    Path path = new Path(testDirectory, "untagged");
+
+    Assert.assertTrue(fileSystem.mkdirs(path));
+    Assert.assertTrue(fileSystem.exists(path));
+
+    Assert.assertEquals(1,
+      count(fileSystem.getMetrics(), InstrumentedFileSystem.MKDIRS));
+    Assert.assertEquals(1,
+      count(fileSystem.getMetrics(), InstrumentedFileSystem.EXISTS));
+  }
+
+  private static long count(MetricGroup group, String timer) {
+    Timer t = group.getTimers().get(timer);
+    return t != null ? t.getCount() : 0;
+  }
+
+}
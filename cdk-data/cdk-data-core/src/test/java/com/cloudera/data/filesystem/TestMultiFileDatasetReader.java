@@ -16,6 +16,8 @@
 package com.cloudera.data.filesystem;
 
 import com.cloudera.data.DatasetDescriptor;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.MetricGroup;
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
 import java.io.IOException;
@@ -65,4 +67,41 @@ public class TestMultiFileDatasetReader {
     Assert.assertEquals(200, records);
   }
 
+  @Test
+  public void testMetrics() throws IOException {
+    Path testFile = new Path(Resources.getResource("data/strings-100.avro")
+        .getFile());
+
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder().schema(STRING_SCHEMA).get();
+    MetricGroup datasetMetrics = new MetricGroup("strings");
+    MultiFileDatasetReader<Record> reader = new MultiFileDatasetReader<Record>(
+        fileSystem, Lists.newArrayList(testFile, testFile), descriptor,
+        new MetricGroup("strings", datasetMetrics));
+
+    try {
+      reader.open();
+      while (reader.hasNext()) {
+        reader.read();
+      }
+    } finally {
+      reader.close();
+    }
+
+    MetricGroup metrics = reader.getMetrics();
+    long length = fileSystem.getFileStatus(testFile).getLen();
+    Assert.assertEquals(2, metrics.counter(DatasetMetrics.FILES_OPENED).getCount());
+    Assert.assertEquals(2, metrics.timer(DatasetMetrics.OPEN_TIME).getCount());
+    Assert.assertEquals(2,
+        metrics.timer(DatasetMetrics.FIRST_RECORD_TIME).getCount());
+    Assert.assertEquals(200, metrics.counter(DatasetMetrics.RECORDS_READ).getCount());
+    Assert.assertEquals(2 * length,
+        metrics.counter(DatasetMetrics.BYTES_READ).getCount());
+    Assert.assertTrue(
+        metrics.counter(DatasetMetrics.DECOMPRESSED_BYTES_READ).getCount() > 0);
+    Assert.assertTrue(metrics.counter(DatasetMetrics.DECODE_NANOS).getCount() > 0);
+
+    Assert.assertEquals(200,
+        datasetMetrics.counter(DatasetMetrics.RECORDS_READ).getCount());
+  }
+
 }
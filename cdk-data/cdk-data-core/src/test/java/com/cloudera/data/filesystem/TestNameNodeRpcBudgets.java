@@ -0,0 +1,323 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.Dataset;
+import com.cloudera.data.DatasetDescriptor;
+import com.cloudera.data.DatasetReader;
+import com.cloudera.data.DatasetWriter;
+import com.cloudera.data.Formats;
+import com.cloudera.data.PartitionKey;
+import com.cloudera.data.PartitionStrategy;
+import com.cloudera.data.filesystem.NameNodeRpcCounter.Snapshot;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import java.io.IOException;
+import java.util.Map;
+import org.apache.avro.generic.GenericData.Record;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.cloudera.data.filesystem.DatasetTestUtilities.*;
+import static com.cloudera.data.filesystem.NameNodeRpcCounter.*;
+
+/**
+ * <p>
+ * NameNode RPC budgets for dataset operations on HDFS.
+ * </p>
+ * <p>
+ * The NameNode is shared by every client of a cluster, so the number of calls
+ * each dataset operation makes matters more than its latency against a
+ * single test cluster. Each test counts the calls an operation makes and
+ * fails if any method exceeds its budget. Methods that aren't listed in a
+ * budget may not be called at all.
+ * </p>
+ * <p>
+ * Budgets are for a dataset partitioned two levels deep, with
+ * {@link #USERNAME_BUCKETS} x {@link #EMAIL_BUCKETS} leaf partitions. If a
+ * change legitimately needs more calls, raise the budget in the same change
+ * so that the increase is reviewed.
+ * </p>
+ */
+public class TestNameNodeRpcBudgets {
+
+  private static final Logger logger = LoggerFactory
+    .getLogger(TestNameNodeRpcBudgets.class);
+
+  private static final int USERNAME_BUCKETS = 2;
+  private static final int EMAIL_BUCKETS = 3;
+  private static final int PARTITIONS = USERNAME_BUCKETS * EMAIL_BUCKETS;
+
+  private static final int RECORDS = 60;
+
+  private static MiniDFSCluster cluster;
+  private static FileSystem fileSystem;
+  private static NameNodeRpcCounter counter;
+
+  private static int run;
+
+  private FileSystemDatasetRepository repo;
+  private PartitionStrategy partitionStrategy;
+  private DatasetDescriptor descriptor;
+
+  @BeforeClass
+  public static void setUpCluster() throws IOException {
+    cluster = new MiniDFSCluster.Builder(new Configuration()).build();
+    fileSystem = cluster.getFileSystem();
+    counter = new NameNodeRpcCounter(cluster);
+  }
+
+  @AfterClass
+  public static void tearDownCluster() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    Path root = new Path("/datasets-" + run++).makeQualified(fileSystem);
+
+    repo = new FileSystemDatasetRepository(fileSystem, root);
+    partitionStrategy = new PartitionStrategy.Builder()
+      .hash("username", USERNAME_BUCKETS)
+      .hash("email", EMAIL_BUCKETS)
+      .get();
+    descriptor = new DatasetDescriptor.Builder()
+      .schema(USER_SCHEMA)
+      .partitionStrategy(partitionStrategy)
+      .get();
+  }
+
+  @Test
+  public void testRepositoryCreate() {
+    Snapshot before = counter.snapshot();
+    repo.create("users", descriptor);
+
+    assertWithinBudget("FileSystemDatasetRepository.create", before,
+      ImmutableMap.of(GET_FILE_INFO, 2L, MKDIRS, 2L, CREATE, 2L));
+  }
+
+  @Test
+  public void testRepositoryGet() {
+    repo.create("users", descriptor);
+
+    Snapshot before = counter.snapshot();
+    repo.get("users");
+
+    // the descriptor is read with getBlockLocations, which isn't budgeted
+    assertWithinBudget("FileSystemDatasetRepository.get", before,
+      ImmutableMap.<String, Long>of());
+  }
+
+  @Test
+  public void testRepositoryUpdate() {
+    repo.create("users", descriptor);
+
+    Snapshot before = counter.snapshot();
+    repo.update("users", descriptor);
+
+    assertWithinBudget("FileSystemDatasetRepository.update", before,
+      ImmutableMap.of(GET_FILE_INFO, 1L, CREATE, 2L));
+  }
+
+  @Test
+  public void testRepositoryDrop() {
+    repo.create("users", descriptor);
+    writeTestUsers(repo.get("users"), RECORDS);
+
+    Snapshot before = counter.snapshot();
+    Assert.assertTrue(repo.drop("users"));
+
+    assertWithinBudget("FileSystemDatasetRepository.drop", before,
+      ImmutableMap.of(GET_FILE_INFO, 2L, DELETE, 2L));
+  }
+
+  @Test
+  public void testGetReader() {
+    Dataset users = repo.create("users", descriptor);
+    writeTestUsers(users, RECORDS);
+
+    Snapshot before = counter.snapshot();
+    DatasetReader<Record> reader = users.getReader();
+
+    // one listing for the dataset and for each partition directory
+    assertWithinBudget("FileSystemDataset.getReader", before,
+      ImmutableMap.of(GET_LISTING, 1L + USERNAME_BUCKETS + PARTITIONS));
+
+    reader.open();
+    try {
+      int count = 0;
+      while (reader.hasNext()) {
+        reader.read();
+        count++;
+      }
+      Assert.assertEquals(RECORDS, count);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testGetPartitions() {
+    Dataset users = repo.create("users", descriptor);
+    writeTestUsers(users, RECORDS);
+
+    Snapshot before = counter.snapshot();
+    Iterable<Dataset> partitions = users.getPartitions();
+
+    assertWithinBudget("FileSystemDataset.getPartitions", before,
+      ImmutableMap.of(GET_LISTING, 1L));
+    Assert.assertEquals(USERNAME_BUCKETS, Iterables.size(partitions));
+  }
+
+  @Test
+  public void testGetPartition() {
+    Dataset users = repo.create("users", descriptor);
+    writeTestUsers(users, RECORDS);
+    PartitionKey existing = partitionStrategy.partitionKey(0, 0);
+    PartitionKey missing = partitionStrategy.partitionKey(USERNAME_BUCKETS,
+      EMAIL_BUCKETS);
+
+    Snapshot before = counter.snapshot();
+    Assert.assertNotNull(users.getPartition(existing, false));
+    assertWithinBudget("FileSystemDataset.getPartition(existing)", before,
+      ImmutableMap.of(GET_FILE_INFO, 1L));
+
+    before = counter.snapshot();
+    Assert.assertNull(users.getPartition(missing, false));
+    assertWithinBudget("FileSystemDataset.getPartition(missing)", before,
+      ImmutableMap.of(GET_FILE_INFO, 1L));
+
+    before = counter.snapshot();
+    Assert.assertNotNull(users.getPartition(missing, true));
+    assertWithinBudget("FileSystemDataset.getPartition(missing, create)",
+      before, ImmutableMap.of(GET_FILE_INFO, 2L, MKDIRS, 1L));
+  }
+
+  @Test
+  public void testPartitionedWriterSession() {
+    Dataset users = repo.create("users", descriptor);
+    DatasetWriter<Record> writer = users.getWriter();
+
+    Snapshot before = counter.snapshot();
+    writer.open();
+    try {
+      for (int i = 0; i < RECORDS; i++) {
+        writer.write(new GenericRecordBuilder(USER_SCHEMA)
+          .set("username", "test-" + i)
+          .set("email", "email-" + i)
+          .build());
+      }
+    } finally {
+      writer.close();
+    }
+
+    /*
+     * For each partition: an existence check and mkdirs for its directory,
+     * the temporary file create and the rename on close.
+     */
+    assertWithinBudget("PartitionedDatasetWriter session", before,
+      ImmutableMap.of(
+        GET_FILE_INFO, (long) PARTITIONS,
+        MKDIRS, (long) PARTITIONS,
+        CREATE, (long) PARTITIONS,
+        RENAME, (long) PARTITIONS));
+  }
+
+  @Test
+  public void testParquetWriterSession() {
+    Dataset users = repo.create("users", new DatasetDescriptor.Builder(descriptor)
+      .format(Formats.PARQUET)
+      .get());
+    DatasetWriter<Record> writer = users.getWriter();
+
+    Snapshot before = counter.snapshot();
+    writeUsers(writer);
+
+    // as for Avro, unless Parquet files are counted
+    assertWithinBudget("Parquet PartitionedDatasetWriter session", before,
+      ImmutableMap.of(
+        GET_FILE_INFO, (long) PARTITIONS,
+        MKDIRS, (long) PARTITIONS,
+        CREATE, (long) PARTITIONS,
+        RENAME, (long) PARTITIONS));
+
+    Dataset counted = repo.create("counted-users",
+      new DatasetDescriptor.Builder(descriptor)
+        .format(Formats.PARQUET)
+        .property(WriterProperties.PARQUET_COUNT_BYTES, "true")
+        .get());
+    writer = counted.getWriter();
+
+    before = counter.snapshot();
+    writeUsers(writer);
+
+    // and the size of each file when it is committed
+    assertWithinBudget("Parquet PartitionedDatasetWriter session, counted",
+      before, ImmutableMap.of(
+        GET_FILE_INFO, 2L * PARTITIONS,
+        MKDIRS, (long) PARTITIONS,
+        CREATE, (long) PARTITIONS,
+        RENAME, (long) PARTITIONS));
+  }
+
+  private static void writeUsers(DatasetWriter<Record> writer) {
+    writer.open();
+    try {
+      for (int i = 0; i < RECORDS; i++) {
+        writer.write(new GenericRecordBuilder(USER_SCHEMA)
+          .set("username", "test-" + i)
+          .set("email", "email-" + i)
+          .build());
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Fail if the calls made since {@code before} exceed {@code budget} for any
+   * method. Methods not in the budget have a budget of zero.
+   */
+  private static void assertWithinBudget(String operation, Snapshot before,
+    Map<String, Long> budget) {
+
+    Snapshot used = counter.snapshot().since(before);
+
+    logger.info("NameNode RPCs for {}: {}", operation, used);
+
+    for (String method : new String[] { GET_LISTING, GET_FILE_INFO, MKDIRS,
+      RENAME, CREATE, DELETE }) {
+
+      long allowed = budget.containsKey(method) ? budget.get(method) : 0;
+      Assert.assertTrue("NameNode " + method + " calls for " + operation
+        + " exceeded budget of " + allowed + ", used:" + used,
+        used.get(method) <= allowed);
+    }
+  }
+
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.google.common.io.Files;
+import java.io.IOException;
+import org.apache.avro.generic.GenericData.Record;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.cloudera.data.filesystem.DatasetTestUtilities.USER_SCHEMA;
+
+public class TestParquetMemoryManager {
+
+  private static final int MB = 1024 * 1024;
+
+  private Path testDirectory;
+  private FileSystem fileSystem;
+
+  @Before
+  public void setUp() throws IOException {
+    testDirectory = new Path(Files.createTempDir().getAbsolutePath());
+    fileSystem = FileSystem.get(new Configuration());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fileSystem.delete(testDirectory, true);
+  }
+
+  @Test
+  public void testSharesShrinkAsFilesOpen() {
+    ParquetMemoryManager manager = new ParquetMemoryManager(8 * MB, MB);
+
+    ParquetMemoryManager.Allocation first = manager.allocate(4 * MB);
+    Assert.assertEquals(4 * MB, first.getRowGroupSize());
+    first.buffered(3 * MB);
+    ParquetMemoryManager.Allocation second = manager.allocate(4 * MB);
+    Assert.assertEquals(4 * MB, second.getRowGroupSize());
+    second.buffered(2 * MB);
+    ParquetMemoryManager.Allocation third = manager.allocate(4 * MB);
+    Assert.assertEquals(8 * MB / 3, third.getRowGroupSize());
+
+    // the fullest row groups are released, until all would fit at the share
+    Assert.assertTrue(first.isReleaseRequested());
+    Assert.assertTrue(second.isReleaseRequested());
+    Assert.assertFalse(third.isReleaseRequested());
+
+    manager.release(first);
+    manager.release(second);
+    manager.release(third);
+    Assert.assertEquals(0, manager.getAllocatedBytes());
+  }
+
+  @Test
+  public void testFilesBelowMinimumFillAreKept() {
+    ParquetMemoryManager manager = new ParquetMemoryManager(8 * MB, MB);
+
+    ParquetMemoryManager.Allocation first = manager.allocate(4 * MB);
+    ParquetMemoryManager.Allocation second = manager.allocate(4 * MB);
+    first.buffered(MB / 2);
+    ParquetMemoryManager.Allocation third = manager.allocate(4 * MB);
+    Assert.assertEquals(8 * MB / 3, third.getRowGroupSize());
+
+    // neither file has buffered enough to be worth committing
+    Assert.assertFalse(first.isReleaseRequested());
+    Assert.assertFalse(second.isReleaseRequested());
+
+    // so files opened while the pool is over-committed get the minimum
+    ParquetMemoryManager.Allocation fourth = manager.allocate(4 * MB);
+    Assert.assertEquals(MB, fourth.getRowGroupSize());
+
+    // and a file is asked to release its row group once it fills
+    first.buffered(MB / 2);
+    Assert.assertTrue(first.isReleaseRequested());
+    Assert.assertFalse(second.isReleaseRequested());
+
+    manager.release(first);
+    manager.release(second);
+    manager.release(third);
+    manager.release(fourth);
+    Assert.assertEquals(0, manager.getAllocatedBytes());
+
+    // once the pool has room again, files get their share
+    Assert.assertEquals(4 * MB, manager.allocate(4 * MB).getRowGroupSize());
+  }
+
+  @Test
+  public void testMinimumRowGroupSize() {
+    ParquetMemoryManager manager = new ParquetMemoryManager(4 * MB, MB);
+
+    Assert.assertEquals(4 * MB, manager.allocate(4 * MB).getRowGroupSize());
+    Assert.assertEquals(2 * MB, manager.allocate(4 * MB).getRowGroupSize());
+    for (int i = 0; i < 6; i++) {
+      Assert.assertEquals(MB, manager.allocate(4 * MB).getRowGroupSize());
+    }
+    Assert.assertEquals(4 * MB + 2 * MB + 6 * MB, manager.getAllocatedBytes());
+  }
+
+  @Test
+  public void testWriterContinuesInNewFile() {
+    // a small minimum, so that a few records fill it
+    ParquetMemoryManager manager = new ParquetMemoryManager(3 * MB, 1024);
+    WriterProperties properties = WriterProperties.of(true);
+    Path firstPath = new Path(testDirectory, "first.parquet");
+
+    ParquetFileSystemDatasetWriter<Record> first =
+      new ParquetFileSystemDatasetWriter<Record>(fileSystem, firstPath,
+        USER_SCHEMA, properties, false, null, manager);
+    ParquetFileSystemDatasetWriter<Record> second =
+      new ParquetFileSystemDatasetWriter<Record>(fileSystem,
+        new Path(testDirectory, "second.parquet"), USER_SCHEMA, properties,
+        false, null, manager);
+
+    first.open();
+    for (int i = 0; i < 100; i++) {
+      first.write(user(i));
+    }
+    second.open();
+    Assert.assertEquals(3 * MB + 3 * MB / 2, manager.getAllocatedBytes());
+
+    // opening the second file asked the first to release its row group
+    first.write(user(100));
+    first.write(user(101));
+    second.write(user(102));
+    Assert.assertEquals(3 * MB, manager.getAllocatedBytes());
+
+    first.close();
+    second.close();
+    Assert.assertEquals(0, manager.getAllocatedBytes());
+
+    Assert.assertEquals(100, count(firstPath));
+    Assert.assertEquals(2, count(new Path(testDirectory, "first-1.parquet")));
+    Assert.assertEquals(1, count(new Path(testDirectory, "second.parquet")));
+  }
+
+  private static Record user(int i) {
+    return new GenericRecordBuilder(USER_SCHEMA)
+      .set("username", "test-" + i).set("email", "email-" + i).build();
+  }
+
+  private int count(Path path) {
+    ParquetFileSystemDatasetReader<Record> reader =
+      new ParquetFileSystemDatasetReader<Record>(fileSystem, path, USER_SCHEMA);
+    int count = 0;
+    reader.open();
+    try {
+      while (reader.hasNext()) {
+        reader.read();
+        count++;
+      }
+    } finally {
+      reader.close();
+    }
+    return count;
+  }
+
+}
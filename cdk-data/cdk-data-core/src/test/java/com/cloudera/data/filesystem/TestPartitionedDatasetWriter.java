@@ -15,22 +15,35 @@
  */
 package com.cloudera.data.filesystem;
 
+import com.cloudera.data.AbstractDatasetWriter;
 import com.cloudera.data.Dataset;
 import com.cloudera.data.DatasetDescriptor;
+import com.cloudera.data.DatasetReader;
+import com.cloudera.data.DatasetWriter;
+import com.cloudera.data.Formats;
+import com.cloudera.data.PartitionKey;
 import com.cloudera.data.PartitionStrategy;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.RemovalCause;
+import com.google.common.collect.Lists;
 import com.google.common.io.Closeables;
 import com.google.common.io.Files;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.apache.avro.generic.GenericData.Record;
 import org.apache.avro.generic.GenericRecordBuilder;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import static com.cloudera.data.filesystem.DatasetTestUtilities.USER_SCHEMA;
+import static com.cloudera.data.filesystem.DatasetTestUtilities.checkTestUsers;
 
 public class TestPartitionedDatasetWriter {
 
@@ -89,4 +102,456 @@ public class TestPartitionedDatasetWriter {
     writer.write(record);
   }
 
+  @Test
+  public void testMetrics() throws IOException {
+    long datasetRecords = DatasetMetrics.get().group("users")
+        .counter(DatasetMetrics.RECORDS_WRITTEN).getCount();
+
+    writer.open();
+    for (int i = 0; i < 10; i++) {
+      writer.write(new GenericRecordBuilder(USER_SCHEMA)
+          .set("username", "test" + i).set("email", "a@example.com").build());
+    }
+    Assert.assertEquals(2, writer.getMetrics()
+        .counter(DatasetMetrics.OPEN_FILES).getCount());
+    writer.close();
+
+    Assert.assertEquals(10, writer.getMetrics()
+        .counter(DatasetMetrics.RECORDS_WRITTEN).getCount());
+    Assert.assertEquals(0, writer.getMetrics()
+        .counter(DatasetMetrics.OPEN_FILES).getCount());
+    Assert.assertEquals(2, writer.getMetrics()
+        .timer(DatasetMetrics.COMMIT_TIME).getCount());
+    Assert.assertEquals(datasetRecords + 10, DatasetMetrics.get().group("users")
+        .counter(DatasetMetrics.RECORDS_WRITTEN).getCount());
+  }
+
+  @Test
+  public void testWriteAll() throws IOException {
+    List<Record> records = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      records.add(new GenericRecordBuilder(USER_SCHEMA)
+          .set("username", "test-" + i).set("email", "email-" + i).build());
+    }
+
+    writer.open();
+    writer.writeAll(records.subList(0, 6));
+    writer.writeAll(records.subList(6, 10).toArray());
+    writer.close();
+
+    // each partition writer is looked up once per batch, and opened once
+    Assert.assertEquals(2, writer.getMetrics()
+        .counter(DatasetMetrics.WRITER_CACHE_MISSES).getCount());
+    Assert.assertEquals(8, writer.getMetrics()
+        .counter(DatasetMetrics.WRITER_CACHE_HITS).getCount());
+    Assert.assertEquals(10, writer.getMetrics()
+        .counter(DatasetMetrics.RECORDS_WRITTEN).getCount());
+    checkTestUsers(repo.get("users"), 10);
+  }
+
+  @Test
+  public void testWriteAllKeepsOrder() throws IOException {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder()
+        .identity("username", 2).get();
+    Dataset users = repo.create("users-by-name", new DatasetDescriptor.Builder()
+        .schema(USER_SCHEMA)
+        .partitionStrategy(partitionStrategy)
+        .property(WriterProperties.PARTITION_MAX_WRITERS, "1")
+        .get());
+    PartitionedDatasetWriter<Object> writer =
+        new PartitionedDatasetWriter<Object>(users);
+    List<Record> records = Lists.newArrayList();
+    String[] usernames = new String[] { "a", "a", "b", "a" };
+    for (int i = 0; i < usernames.length; i++) {
+      records.add(new GenericRecordBuilder(USER_SCHEMA)
+          .set("username", usernames[i]).set("email", "email-" + i).build());
+    }
+
+    writer.open();
+    try {
+      writer.writeAll(records);
+
+      // grouped by partition, so a's writer isn't evicted and reopened
+      Assert.assertEquals(2, writer.getMetrics()
+          .counter(DatasetMetrics.WRITER_CACHE_MISSES).getCount());
+      Assert.assertEquals(2, writer.getMetrics()
+          .counter(DatasetMetrics.WRITER_CACHE_HITS).getCount());
+      Assert.assertEquals(1, writer.getMetrics()
+          .counter(DatasetMetrics.WRITER_CACHE_EVICTIONS).getCount());
+    } finally {
+      writer.close();
+      DatasetMetrics.get().remove("users-by-name");
+    }
+    Assert.assertEquals(4, writer.getMetrics()
+        .counter(DatasetMetrics.RECORDS_WRITTEN).getCount());
+
+    // entities of a partition are written in their batch order
+    Assert.assertEquals(Lists.newArrayList("email-0", "email-1", "email-3"),
+        readEmails(users.getPartition(partitionStrategy.partitionKey("a"),
+            false)));
+    Assert.assertEquals(Lists.newArrayList("email-2"),
+        readEmails(users.getPartition(partitionStrategy.partitionKey("b"),
+            false)));
+  }
+
+  @Test
+  public void testWriteAllInterleaved() throws IOException {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder()
+        .identity("username", 3).get();
+    Dataset users = repo.create("users-by-name", new DatasetDescriptor.Builder()
+        .schema(USER_SCHEMA)
+        .partitionStrategy(partitionStrategy)
+        .property(WriterProperties.PARTITION_MAX_WRITERS, "1")
+        .get());
+    PartitionedDatasetWriter<Object> writer =
+        new PartitionedDatasetWriter<Object>(users);
+    List<Record> records = Lists.newArrayList();
+    for (int i = 0; i < 30; i++) {
+      records.add(new GenericRecordBuilder(USER_SCHEMA)
+          .set("username", "test-" + (i % 3)).set("email", "email-" + i)
+          .build());
+    }
+
+    writer.open();
+    try {
+      writer.writeAll(records.subList(0, 15));
+
+      // one lookup per distinct partition, each a miss with one open writer
+      Assert.assertEquals(3, writer.getMetrics()
+          .counter(DatasetMetrics.WRITER_CACHE_MISSES).getCount());
+      Assert.assertEquals(12, writer.getMetrics()
+          .counter(DatasetMetrics.WRITER_CACHE_HITS).getCount());
+      Assert.assertEquals(2, writer.getMetrics()
+          .counter(DatasetMetrics.WRITER_CACHE_EVICTIONS).getCount());
+
+      // and again for the next batch
+      writer.writeAll(records.subList(15, 30));
+
+      Assert.assertEquals(6, writer.getMetrics()
+          .counter(DatasetMetrics.WRITER_CACHE_MISSES).getCount());
+      Assert.assertEquals(24, writer.getMetrics()
+          .counter(DatasetMetrics.WRITER_CACHE_HITS).getCount());
+    } finally {
+      writer.close();
+      DatasetMetrics.get().remove("users-by-name");
+    }
+    Assert.assertEquals(30, writer.getMetrics()
+        .counter(DatasetMetrics.RECORDS_WRITTEN).getCount());
+  }
+
+  @Test
+  public void testWriterCacheMetrics() throws IOException {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder()
+        .identity("username", 12).get();
+    Dataset users = repo.create(
+        "users-by-name",
+        new DatasetDescriptor.Builder()
+            .schema(USER_SCHEMA)
+            .partitionStrategy(partitionStrategy)
+            .get());
+    PartitionedDatasetWriter<Object> writer =
+        new PartitionedDatasetWriter<Object>(users);
+
+    writer.open();
+    try {
+      // more partitions than the writer keeps open forces evictions
+      for (int i = 0; i < 24; i++) {
+        writer.write(new GenericRecordBuilder(USER_SCHEMA)
+            .set("username", "test" + (i / 2))
+            .set("email", "a@example.com").build());
+      }
+
+      long misses = writer.getMetrics()
+          .counter(DatasetMetrics.WRITER_CACHE_MISSES).getCount();
+      long evictions = writer.getMetrics()
+          .counter(DatasetMetrics.WRITER_CACHE_EVICTIONS).getCount();
+
+      Assert.assertEquals(12, writer.getMetrics()
+          .counter(DatasetMetrics.WRITER_CACHE_HITS).getCount());
+      Assert.assertEquals(12, misses);
+      Assert.assertTrue("Expected evictions", evictions > 0);
+      Assert.assertEquals(misses - evictions, writer.getMetrics()
+          .counter(DatasetMetrics.OPEN_FILES).getCount());
+      Assert.assertEquals(2.0, writer.getRecordsPerFile(), 0.001);
+    } finally {
+      writer.close();
+      DatasetMetrics.get().remove("users-by-name");
+    }
+  }
+
+  @Test
+  public void testWriterCacheProperties() throws IOException {
+    PartitionStrategy partitionStrategy = new PartitionStrategy.Builder()
+        .identity("username", 12).get();
+    DatasetDescriptor descriptor = new DatasetDescriptor.Builder()
+        .schema(USER_SCHEMA)
+        .partitionStrategy(partitionStrategy)
+        .property(WriterProperties.PARTITION_MAX_WRITERS, "12")
+        .get();
+    Dataset users = repo.create("users-by-name", descriptor);
+    PartitionedDatasetWriter<Object> writer =
+        new PartitionedDatasetWriter<Object>(users);
+
+    writer.open();
+    try {
+      for (int i = 0; i < 24; i++) {
+        writer.write(new GenericRecordBuilder(USER_SCHEMA)
+            .set("username", "test" + (i % 12))
+            .set("email", "a@example.com").build());
+      }
+      Assert.assertEquals(0, writer.getMetrics()
+          .counter(DatasetMetrics.WRITER_CACHE_EVICTIONS).getCount());
+      Assert.assertEquals(12, writer.getMetrics()
+          .counter(DatasetMetrics.OPEN_FILES).getCount());
+    } finally {
+      writer.close();
+    }
+
+    // four writers sharing the budget each keep three open
+    writer = new PartitionedDatasetWriter<Object>(users,
+        DatasetMetrics.get().group("users-by-name"), false, 4);
+    writer.open();
+    try {
+      for (int i = 0; i < 12; i++) {
+        writer.write(new GenericRecordBuilder(USER_SCHEMA)
+            .set("username", "test" + i)
+            .set("email", "a@example.com").build());
+      }
+      Assert.assertEquals(9, writer.getMetrics()
+          .counter(DatasetMetrics.WRITER_CACHE_EVICTIONS).getCount());
+      Assert.assertEquals(3, writer.getMetrics()
+          .counter(DatasetMetrics.OPEN_FILES).getCount());
+    } finally {
+      writer.close();
+      DatasetMetrics.get().remove("users-by-name");
+    }
+
+    // a memory budget of three Avro blocks allows three open files
+    WriterProperties properties = WriterProperties.of(
+        new DatasetDescriptor.Builder(descriptor)
+            .property(WriterProperties.PARTITION_MEMORY_BYTES,
+                String.valueOf(3 * WriterProperties.DEFAULT.getAvroSyncInterval()))
+            .get());
+    Assert.assertEquals(3, properties.getPartitionMaxWriters(Formats.AVRO));
+    Assert.assertEquals(1, properties.getPartitionMaxWriters(Formats.PARQUET));
+  }
+
+  @Test
+  public void testFrequencyWeightedEviction() throws Exception {
+    FakeTicker ticker = new FakeTicker();
+    RecordingListener listener = new RecordingListener();
+    PartitionedDatasetWriter.WriterCache<Object> cache =
+        new PartitionedDatasetWriter.WriterCache<Object>(
+            new FakeWriterLoader(), 2, 0, ticker, listener);
+    PartitionStrategy strategy = new PartitionStrategy.Builder()
+        .identity("username", 3).get();
+
+    // the first partition is written least recently, but most often
+    cache.load(strategy.partitionKey("a"), 100);
+    ticker.advance(TimeUnit.SECONDS.toNanos(2));
+    cache.load(strategy.partitionKey("b"), 1);
+    ticker.advance(PartitionedDatasetWriter.WriterCache.PROBATION_NANOS);
+    cache.load(strategy.partitionKey("c"), 1);
+
+    Assert.assertEquals(Lists.newArrayList(strategy.partitionKey("b")),
+        listener.evicted);
+    Assert.assertNotNull(cache.getIfPresent(strategy.partitionKey("a"), 1));
+
+    // counts decay, so a partition that is no longer written is evicted
+    ticker.advance(10 * PartitionedDatasetWriter.WriterCache.HALF_LIFE_NANOS);
+    cache.getIfPresent(strategy.partitionKey("c"), 1);
+    cache.load(strategy.partitionKey("b"), 1);
+
+    Assert.assertEquals(Lists.newArrayList(strategy.partitionKey("b"),
+        strategy.partitionKey("a")), listener.evicted);
+  }
+
+  @Test
+  public void testNewWritersOnProbation() throws Exception {
+    FakeTicker ticker = new FakeTicker();
+    RecordingListener listener = new RecordingListener();
+    PartitionedDatasetWriter.WriterCache<Object> cache =
+        new PartitionedDatasetWriter.WriterCache<Object>(
+            new FakeWriterLoader(), 2, 0, ticker, listener);
+    PartitionStrategy strategy = new PartitionStrategy.Builder()
+        .identity("username", 3).get();
+
+    cache.load(strategy.partitionKey("a"), 100);
+    ticker.advance(PartitionedDatasetWriter.WriterCache.PROBATION_NANOS);
+    cache.load(strategy.partitionKey("b"), 1);
+    ticker.advance(TimeUnit.SECONDS.toNanos(1));
+    cache.load(strategy.partitionKey("c"), 1);
+
+    // b is written less often, but it was just opened
+    Assert.assertEquals(Lists.newArrayList(strategy.partitionKey("a")),
+        listener.evicted);
+
+    // when all writers are new, the least recently written goes
+    ticker.advance(TimeUnit.SECONDS.toNanos(1));
+    cache.getIfPresent(strategy.partitionKey("b"), 1);
+    cache.load(strategy.partitionKey("a"), 1);
+    Assert.assertEquals(Lists.newArrayList(strategy.partitionKey("a"),
+        strategy.partitionKey("c")), listener.evicted);
+  }
+
+  @Test
+  public void testPartitionRollover() throws Exception {
+    FakeTicker ticker = new FakeTicker();
+    RecordingListener listener = new RecordingListener();
+    FakeWriterLoader loader = new FakeWriterLoader();
+    PartitionedDatasetWriter.WriterCache<Object> cache =
+        new PartitionedDatasetWriter.WriterCache<Object>(
+            loader, 4, 0, ticker, listener);
+    PartitionStrategy strategy = new PartitionStrategy.Builder()
+        .identity("username", 8).get();
+
+    // ten minutes of one hour's four partitions, 100 records per second each
+    for (int second = 0; second < 600; second++) {
+      for (int bucket = 0; bucket < 4; bucket++) {
+        write(cache, strategy.partitionKey("hour1-" + bucket), 100);
+      }
+      ticker.advance(TimeUnit.SECONDS.toNanos(1));
+    }
+    Assert.assertEquals(4, loader.loaded);
+
+    // the next hour's partitions each open once, closing the last hour's
+    for (int second = 0; second < 60; second++) {
+      for (int record = 0; record < 10; record++) {
+        for (int bucket = 0; bucket < 4; bucket++) {
+          write(cache, strategy.partitionKey("hour2-" + bucket), 1);
+        }
+      }
+      ticker.advance(TimeUnit.SECONDS.toNanos(1));
+    }
+    Assert.assertEquals(8, loader.loaded);
+    Assert.assertEquals(4, listener.evicted.size());
+    for (PartitionKey evicted : listener.evicted) {
+      Assert.assertTrue(evicted.get(0).toString().startsWith("hour1-"));
+    }
+  }
+
+  private static void write(PartitionedDatasetWriter.WriterCache<Object> cache,
+      PartitionKey key, int records) throws Exception {
+    if (cache.getIfPresent(key, records) == null) {
+      cache.load(key, records);
+    }
+  }
+
+  @Test
+  public void testIdleWritersExpire() throws Exception {
+    FakeTicker ticker = new FakeTicker();
+    RecordingListener listener = new RecordingListener();
+    PartitionedDatasetWriter.WriterCache<Object> cache =
+        new PartitionedDatasetWriter.WriterCache<Object>(
+            new FakeWriterLoader(), 10, TimeUnit.SECONDS.toNanos(10), ticker,
+            listener);
+    PartitionStrategy strategy = new PartitionStrategy.Builder()
+        .identity("username", 3).get();
+
+    DatasetWriter<Object> a = cache.load(strategy.partitionKey("a"), 1);
+    DatasetWriter<Object> b = cache.load(strategy.partitionKey("b"), 1);
+    ticker.advance(TimeUnit.SECONDS.toNanos(5));
+    Assert.assertSame(a, cache.getIfPresent(strategy.partitionKey("a"), 1));
+    ticker.advance(TimeUnit.SECONDS.toNanos(6));
+    Assert.assertSame(a, cache.getIfPresent(strategy.partitionKey("a"), 1));
+
+    Assert.assertEquals(Lists.newArrayList(strategy.partitionKey("b")),
+        listener.expired);
+    Assert.assertFalse(b.isOpen());
+    Assert.assertTrue(a.isOpen());
+    Assert.assertEquals(1, cache.size());
+    Assert.assertTrue(listener.evicted.isEmpty());
+  }
+
+  @Test
+  public void testEvictionRateWarning() {
+    FakeTicker ticker = new FakeTicker();
+    PartitionedDatasetWriter.EvictionRate rate =
+        new PartitionedDatasetWriter.EvictionRate("users", 10, ticker);
+    long window = PartitionedDatasetWriter.EvictionRate.WINDOW_NANOS;
+
+    // 5 per second
+    for (int i = 0; i < 50; i++) {
+      ticker.advance(window / 50);
+      Assert.assertFalse(rate.evicted());
+    }
+
+    // 20 per second
+    boolean warned = false;
+    for (int i = 0; i < 200; i++) {
+      ticker.advance(window / 200);
+      warned |= rate.evicted();
+    }
+    Assert.assertTrue("Expected a warning", warned);
+  }
+
+  private static class FakeWriterLoader extends
+      CacheLoader<PartitionKey, DatasetWriter<Object>> {
+
+    private int loaded;
+
+    @Override
+    public DatasetWriter<Object> load(PartitionKey key) {
+      loaded++;
+      DatasetWriter<Object> writer = new AbstractDatasetWriter<Object>() {
+        private boolean open;
+
+        @Override
+        public void open() {
+          open = true;
+        }
+
+        @Override
+        public void write(Object entity) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+          open = false;
+        }
+
+        @Override
+        public boolean isOpen() {
+          return open;
+        }
+      };
+      writer.open();
+      return writer;
+    }
+
+  }
+
+  private static List<Object> readEmails(Dataset partition) {
+    List<Object> emails = Lists.newArrayList();
+    DatasetReader<Record> reader = partition.getReader();
+    reader.open();
+    try {
+      while (reader.hasNext()) {
+        emails.add(reader.read().get("email").toString());
+      }
+    } finally {
+      reader.close();
+    }
+    return emails;
+  }
+
+  private static class RecordingListener implements
+      PartitionedDatasetWriter.WriterCache.RemovalListener<Object> {
+
+    private final List<PartitionKey> evicted = Lists.newArrayList();
+    private final List<PartitionKey> expired = Lists.newArrayList();
+
+    @Override
+    public void onRemoval(PartitionKey key, DatasetWriter<Object> writer,
+        RemovalCause cause) {
+      writer.close();
+      (cause == RemovalCause.SIZE ? evicted : expired).add(key);
+    }
+
+  }
+
 }
@@ -0,0 +1,204 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.filesystem;
+
+import com.cloudera.data.AbstractDatasetWriter;
+import com.cloudera.data.DatasetWriter;
+import com.cloudera.data.metrics.Counter;
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.Instrumented;
+import com.cloudera.data.metrics.MetricGroup;
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRollingDatasetWriter {
+
+  private FakeTicker ticker;
+  private List<FileWriter> files;
+  private Function<MetricGroup, DatasetWriter<String>> factory;
+
+  @Before
+  public void setUp() {
+    ticker = new FakeTicker();
+    files = Lists.newArrayList();
+    factory = new Function<MetricGroup, DatasetWriter<String>>() {
+      @Override
+      public DatasetWriter<String> apply(MetricGroup metrics) {
+        FileWriter file = new FileWriter(metrics);
+        files.add(file);
+        return file;
+      }
+    };
+  }
+
+  @Test
+  public void testRollByRecords() {
+    RollingDatasetWriter<String> writer = new RollingDatasetWriter<String>(
+        "test", factory, new RollingDatasetWriter.Policy(0, 4, 0,
+            TimeUnit.SECONDS, 0), null, ticker);
+
+    writer.open();
+    for (int i = 0; i < 10; i++) {
+      writer.write("entry " + i);
+    }
+    writer.close();
+
+    Assert.assertEquals(3, files.size());
+    Assert.assertEquals(4, files.get(0).records);
+    Assert.assertEquals(4, files.get(1).records);
+    Assert.assertEquals(2, files.get(2).records);
+    for (FileWriter file : files) {
+      Assert.assertTrue(file.closed);
+    }
+    Assert.assertEquals(2,
+        writer.getMetrics().counter(DatasetMetrics.FILES_ROLLED).getCount());
+    Assert.assertEquals(10,
+        writer.getMetrics().counter(DatasetMetrics.RECORDS_WRITTEN).getCount());
+  }
+
+  @Test
+  public void testNoEmptyFile() {
+    RollingDatasetWriter<String> writer = new RollingDatasetWriter<String>(
+        "test", factory, new RollingDatasetWriter.Policy(0, 5, 0,
+            TimeUnit.SECONDS, 0), null, ticker);
+
+    writer.open();
+    for (int i = 0; i < 10; i++) {
+      writer.write("entry " + i);
+    }
+    writer.close();
+
+    Assert.assertEquals(2, files.size());
+  }
+
+  @Test
+  public void testRollByAge() {
+    RollingDatasetWriter<String> writer = new RollingDatasetWriter<String>(
+        "test", factory, new RollingDatasetWriter.Policy(0, 0, 60,
+            TimeUnit.SECONDS, 0), null, ticker);
+
+    writer.open();
+    writer.write("entry 0");
+    ticker.advance(TimeUnit.SECONDS.toNanos(30));
+    writer.write("entry 1");
+    ticker.advance(TimeUnit.SECONDS.toNanos(30));
+    writer.write("entry 2");
+    writer.write("entry 3");
+    writer.close();
+
+    Assert.assertEquals(2, files.size());
+    Assert.assertEquals(3, files.get(0).records);
+    Assert.assertEquals(1, files.get(1).records);
+  }
+
+  @Test
+  public void testRollByAgeOnFlush() {
+    RollingDatasetWriter<String> writer = new RollingDatasetWriter<String>(
+        "test", factory, new RollingDatasetWriter.Policy(0, 0, 60,
+            TimeUnit.SECONDS, 0), null, ticker);
+
+    writer.open();
+    writer.write("entry 0");
+    writer.flush();
+    Assert.assertFalse(files.get(0).closed);
+
+    // an idle file is committed by the next flush once it is old enough
+    ticker.advance(TimeUnit.SECONDS.toNanos(60));
+    writer.flush();
+    Assert.assertTrue(files.get(0).closed);
+    Assert.assertEquals(1, files.size());
+
+    writer.write("entry 1");
+    writer.close();
+
+    Assert.assertEquals(2, files.size());
+    Assert.assertEquals(1, files.get(0).records);
+    Assert.assertEquals(1, files.get(1).records);
+  }
+
+  @Test
+  public void testRollByEstimatedBytes() {
+    // files only report their size when closed, like Parquet files
+    RollingDatasetWriter<String> writer = new RollingDatasetWriter<String>(
+        "test", factory, new RollingDatasetWriter.Policy(100, 10, 0,
+            TimeUnit.SECONDS, 0), null, ticker);
+
+    writer.open();
+    for (int i = 0; i < 20; i++) {
+      writer.write("entry " + i);
+    }
+    writer.close();
+
+    // the first file rolls by records, at 20 bytes per record after that
+    Assert.assertEquals(10, files.get(0).records);
+    Assert.assertEquals(5, files.get(1).records);
+    Assert.assertEquals(5, files.get(2).records);
+  }
+
+  /**
+   * A writer that counts 20 bytes per record when it is closed.
+   */
+  private static class FileWriter extends AbstractDatasetWriter<String>
+      implements Instrumented {
+
+    private final MetricGroup metrics;
+    private final Counter recordsWritten;
+    private int records;
+    private boolean closed;
+
+    FileWriter(MetricGroup parent) {
+      this.metrics = new MetricGroup("file", parent);
+      this.recordsWritten = metrics.counter(DatasetMetrics.RECORDS_WRITTEN);
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void write(String entity) {
+      records++;
+      recordsWritten.inc();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+      metrics.counter(DatasetMetrics.BYTES_WRITTEN).inc(records * 20);
+      closed = true;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return !closed;
+    }
+
+    @Override
+    public MetricGroup getMetrics() {
+      return metrics;
+    }
+
+  }
+
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+import com.cloudera.data.Dataset;
+import com.cloudera.data.DatasetDescriptor;
+import com.cloudera.data.DatasetReader;
+import com.cloudera.data.DatasetWriter;
+import com.cloudera.data.PartitionStrategy;
+import com.cloudera.data.filesystem.FileSystemDatasetRepository;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import java.io.IOException;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData.Record;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.cloudera.data.metrics.DatasetEvent.Type.*;
+
+public class TestDatasetEvents {
+
+  private static final Schema USER_SCHEMA = new Schema.Parser().parse(
+    "{\"type\":\"record\",\"name\":\"User\",\"fields\":["
+      + "{\"name\":\"username\",\"type\":\"string\"}]}");
+
+  private FileSystem fileSystem;
+  private Path testDirectory;
+  private List<DatasetEvent> events;
+  private DatasetEventListener listener;
+
+  @Before
+  public void setUp() throws IOException {
+    fileSystem = FileSystem.get(new Configuration());
+    testDirectory = new Path(Files.createTempDir().getAbsolutePath());
+
+    events = Lists.newArrayList();
+    listener = new DatasetEventListener() {
+      @Override
+      public void onEvent(DatasetEvent event) {
+        events.add(event);
+      }
+    };
+    DatasetEvents.addListener(listener);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    DatasetEvents.removeListener(listener);
+    DatasetMetrics.get().remove("events-test");
+    fileSystem.delete(testDirectory, true);
+  }
+
+  @Test
+  public void testDatasetIOEvents() {
+    FileSystemDatasetRepository repo = new FileSystemDatasetRepository(
+      fileSystem, testDirectory);
+    Dataset users = repo.create("events-test", new DatasetDescriptor.Builder()
+      .schema(USER_SCHEMA)
+      .partitionStrategy(new PartitionStrategy.Builder()
+        .identity("username", 1).get())
+      .get());
+
+    Assert.assertEquals(METADATA_SAVE, events.get(0).getType());
+
+    events.clear();
+    DatasetWriter<Record> writer = users.getWriter();
+    writer.open();
+    try {
+      writer.write(new GenericRecordBuilder(USER_SCHEMA)
+        .set("username", "test").build());
+    } finally {
+      writer.close();
+    }
+
+    Assert.assertEquals(Lists.newArrayList(PARTITION_CREATE, WRITER_OPEN,
+      WRITER_CLOSE, WRITER_COMMIT), types(events));
+    for (DatasetEvent event : events) {
+      Assert.assertEquals("events-test", event.getDataset());
+      Assert.assertTrue(event.getDurationNanos() >= 0);
+    }
+    DatasetEvent commit = events.get(3);
+    Assert.assertTrue(commit.getPath().endsWith(".avro"));
+    Assert.assertTrue(commit.getBytes() > 0);
+
+    events.clear();
+    DatasetReader<Record> reader = repo.get("events-test").getReader();
+    reader.open();
+    try {
+      while (reader.hasNext()) {
+        reader.read();
+      }
+    } finally {
+      reader.close();
+    }
+
+    Assert.assertEquals(Lists.newArrayList(METADATA_LOAD, READER_OPEN,
+      READER_CLOSE), types(events));
+    Assert.assertEquals(commit.getBytes(), events.get(1).getBytes());
+    Assert.assertEquals("events-test", events.get(2).getDataset());
+  }
+
+  @Test
+  public void testNoEventsWithoutListeners() {
+    DatasetEvents.removeListener(listener);
+    Assert.assertFalse(DatasetEvents.isEnabled());
+
+    DatasetEvents.begin(WRITER_OPEN, "events-test", null).end();
+
+    Assert.assertTrue(events.isEmpty());
+  }
+
+  @Test
+  public void testFailingListener() {
+    DatasetEventListener failing = new DatasetEventListener() {
+      @Override
+      public void onEvent(DatasetEvent event) {
+        throw new IllegalStateException("Listener failure");
+      }
+    };
+
+    DatasetEvents.addListener(failing);
+    try {
+      DatasetEvents.begin(WRITER_OPEN, "events-test", null).end(12);
+    } finally {
+      DatasetEvents.removeListener(failing);
+    }
+
+    Assert.assertEquals(1, events.size());
+    Assert.assertEquals(12, events.get(0).getBytes());
+  }
+
+  private static List<DatasetEvent.Type> types(List<DatasetEvent> events) {
+    List<DatasetEvent.Type> types = Lists.newArrayList();
+    for (DatasetEvent event : events) {
+      types.add(event.getType());
+    }
+    return types;
+  }
+
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+import com.google.common.collect.Lists;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDatasetMetrics {
+
+  private MBeanServer mBeanServer;
+  private DatasetMetrics registry;
+
+  @Before
+  public void setUp() {
+    mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    registry = new DatasetMetrics(mBeanServer);
+  }
+
+  @After
+  public void tearDown() {
+    registry.stop();
+    registry.remove("metrics-test");
+  }
+
+  @Test
+  public void testGroupIsRegistered() throws Exception {
+    MetricGroup group = registry.group("metrics-test");
+    Assert.assertSame(group, registry.group("metrics-test"));
+
+    group.counter(DatasetMetrics.RECORDS_WRITTEN).inc(42);
+    group.timer(DatasetMetrics.FLUSH_TIME).update(2, TimeUnit.MILLISECONDS);
+
+    ObjectName name = new ObjectName(
+      "com.cloudera.data:type=Dataset,name=\"metrics-test\"");
+    Assert.assertEquals(42L, mBeanServer.getAttribute(name, "recordsWritten"));
+    Assert.assertEquals(1L, mBeanServer.getAttribute(name, "flushTime.count"));
+    Assert.assertEquals(2.0,
+      (Double) mBeanServer.getAttribute(name, "flushTime.maxMillis"), 0.001);
+
+    List<String> attributes = Lists.newArrayList();
+    for (MBeanAttributeInfo info : mBeanServer.getMBeanInfo(name).getAttributes()) {
+      attributes.add(info.getName());
+    }
+    Assert.assertTrue(attributes.contains("recordsWritten"));
+    Assert.assertTrue(attributes.contains("flushTime.p99Millis"));
+
+    registry.remove("metrics-test");
+    Assert.assertFalse(mBeanServer.isRegistered(name));
+    Assert.assertTrue(registry.getGroups().isEmpty());
+  }
+
+  @Test
+  public void testReporters() {
+    final List<Collection<MetricGroup>> reports = Lists.newArrayList();
+    MetricsReporter reporter = new MetricsReporter() {
+      @Override
+      public void report(Collection<MetricGroup> groups) {
+        reports.add(groups);
+      }
+    };
+    MetricsReporter failing = new MetricsReporter() {
+      @Override
+      public void report(Collection<MetricGroup> groups) {
+        throw new IllegalStateException("Reporter failure");
+      }
+    };
+
+    registry.group("metrics-test").counter("records").inc();
+    registry.addReporter(failing);
+    registry.addReporter(reporter);
+    registry.addReporter(new Slf4jMetricsReporter());
+    registry.report();
+
+    Assert.assertEquals(1, reports.size());
+    Assert.assertEquals("metrics-test",
+      reports.get(0).iterator().next().getName());
+
+    registry.removeReporter(reporter);
+    registry.report();
+    Assert.assertEquals(1, reports.size());
+  }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.data.metrics;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMetricGroup {
+
+  @Test
+  public void testCounter() {
+    MetricGroup group = new MetricGroup("test");
+
+    group.counter("records").inc();
+    group.counter("records").inc(10);
+    group.counter("records").dec();
+
+    Assert.assertEquals(10, group.counter("records").getCount());
+    Assert.assertEquals(0, group.counter("other").getCount());
+    Assert.assertEquals(2, group.getCounters().size());
+  }
+
+  @Test
+  public void testParentAggregatesChildren() {
+    MetricGroup parent = new MetricGroup("dataset");
+    MetricGroup child1 = new MetricGroup("writer-1", parent);
+    MetricGroup child2 = new MetricGroup("writer-2", parent);
+
+    child1.counter("records").inc(3);
+    child2.counter("records").inc(4);
+    child1.timer("flush").update(1, TimeUnit.MILLISECONDS);
+    child2.timer("flush").update(3, TimeUnit.MILLISECONDS);
+
+    Assert.assertEquals(3, child1.counter("records").getCount());
+    Assert.assertEquals(4, child2.counter("records").getCount());
+    Assert.assertEquals(7, parent.counter("records").getCount());
+    Assert.assertEquals(1, child1.timer("flush").getCount());
+    Assert.assertEquals(2, parent.timer("flush").getCount());
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(3),
+      parent.timer("flush").getMaxNanos());
+  }
+
+  @Test
+  public void testDeferredCountersArePublished() {
+    MetricGroup parent = new MetricGroup("dataset");
+    MetricGroup stripe = MetricGroup.deferred("stripe-0", parent);
+    MetricGroup writer = new MetricGroup("writer", stripe);
+
+    writer.counter("records").inc(5);
+    writer.timer("flush").update(1, TimeUnit.MILLISECONDS);
+
+    // counters reach the parent when published, timers straight away
+    Assert.assertEquals(5, stripe.counter("records").getCount());
+    Assert.assertEquals(0, parent.counter("records").getCount());
+    Assert.assertEquals(1, parent.timer("flush").getCount());
+
+    stripe.publish();
+    Assert.assertEquals(5, parent.counter("records").getCount());
+
+    // only changes since the last publish are added
+    writer.counter("records").inc(2);
+    stripe.publish();
+    stripe.publish();
+    Assert.assertEquals(7, parent.counter("records").getCount());
+  }
+
+  @Test
+  public void testTimerPercentiles() {
+    Timer timer = new MetricGroup("test").timer("latency");
+
+    Assert.assertEquals(0, timer.getPercentileNanos(0.99));
+
+    for (int i = 1; i <= 100; i++) {
+      timer.update(i * 1000, TimeUnit.NANOSECONDS);
+    }
+
+    Assert.assertEquals(100, timer.getCount());
+    Assert.assertEquals(5050000, timer.getTotalNanos());
+    Assert.assertEquals(50500.0, timer.getMeanNanos(), 0.001);
+    Assert.assertEquals(100000, timer.getMaxNanos());
+
+    // percentiles are bounded by their power of two bucket
+    long median = timer.getPercentileNanos(0.5);
+    Assert.assertTrue("Median:" + median, median >= 50000 && median < 100000);
+    Assert.assertEquals(100000, timer.getPercentileNanos(0.99));
+    Assert.assertEquals(100000, timer.getPercentileNanos(1.0));
+  }
+
+  @Test
+  public void testTimerContext() throws InterruptedException {
+    Timer timer = new MetricGroup("test").timer("latency");
+
+    Timer.Context context = timer.time();
+    Thread.sleep(5);
+    long elapsed = context.stop();
+
+    Assert.assertEquals(1, timer.getCount());
+    Assert.assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(5));
+    Assert.assertEquals(elapsed, timer.getMaxNanos());
+  }
+
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.flume.clients.log4jappender;
+
+/**
+ * A structured log message, logged as a POJO with Avro reflection enabled on
+ * the appender.
+ */
+public class BenchmarkLogMessage {
+
+  private long id;
+  private String username;
+  private String action;
+  private int status;
+
+  public BenchmarkLogMessage() {
+  }
+
+  public BenchmarkLogMessage(long id, String username, String action,
+      int status) {
+
+    this.id = id;
+    this.username = username;
+    this.action = action;
+    this.status = status;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public String getAction() {
+    return action;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  @Override
+  public String toString() {
+    return "id=" + id + " username=" + username + " action=" + action
+      + " status=" + status;
+  }
+
+}
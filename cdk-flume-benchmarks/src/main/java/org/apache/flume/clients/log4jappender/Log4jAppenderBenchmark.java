@@ -0,0 +1,233 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.flume.clients.log4jappender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.reflect.ReflectData;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * Benchmarks for logging through {@link Log4jAppender} and
+ * {@link LoadBalancingLog4jAppender} to in-process
+ * {@link StandInAvroSource}s.
+ * </p>
+ * <p>
+ * All benchmark threads log through a single appender, as the threads of an
+ * application do, so they contend on the synchronized
+ * {@link Log4jAppender#append(org.apache.log4j.spi.LoggingEvent)} and each
+ * waits for its event to be acknowledged. {@link #log(ThreadState)} reports
+ * logging calls per second and {@link #logLatency(ThreadState)} the
+ * distribution of time each call blocks the logging thread.
+ * </p>
+ * <p>
+ * JMH takes the thread count as a run option rather than a parameter, so
+ * {@link #main(String[])} repeats the benchmark for each of
+ * {@link #THREAD_COUNTS}. Any other JMH options given on the command line are
+ * passed through.
+ * </p>
+ * <pre>
+ * java -cp target/benchmarks.jar \
+ *   org.apache.flume.clients.log4jappender.Log4jAppenderBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Log4jAppenderBenchmark {
+
+  static final int[] THREAD_COUNTS = { 1, 2, 4, 8, 16, 32, 64 };
+
+  /* Must be a power of two; see ThreadState.next(). */
+  static final int MESSAGES = 1024;
+
+  /* The number of stand-in hosts for the load balancing appender. */
+  static final int HOSTS = 3;
+
+  private static final String[] ACTIONS = { "login", "logout", "view",
+    "search", "purchase" };
+
+  /**
+   * The kinds of message an application may log.
+   */
+  public enum MessageType {
+    /* Plain text, formatted by a layout. */
+    TEXT,
+    /* An Avro GenericRecord. */
+    GENERIC,
+    /* A POJO, serialized with Avro reflection. */
+    REFLECT
+  }
+
+  public enum AppenderType {
+    SINGLE,
+    LOAD_BALANCING
+  }
+
+  @Param({ "TEXT", "GENERIC", "REFLECT" })
+  public MessageType message;
+
+  @Param({ "SINGLE", "LOAD_BALANCING" })
+  public AppenderType appender;
+
+  private final List<StandInAvroSource> sources =
+    new ArrayList<StandInAvroSource>();
+  private Log4jAppender log4jAppender;
+  private Logger logger;
+  private Object[] messages;
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    private int index;
+
+    Object next(Object[] messages) {
+      return messages[index++ & (MESSAGES - 1)];
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    int hosts = (appender == AppenderType.LOAD_BALANCING ? HOSTS : 1);
+    for (int i = 0; i < hosts; i++) {
+      StandInAvroSource source = new StandInAvroSource();
+      source.start();
+      sources.add(source);
+    }
+
+    if (appender == AppenderType.LOAD_BALANCING) {
+      LoadBalancingLog4jAppender loadBalancing = new LoadBalancingLog4jAppender();
+      StringBuilder hostNames = new StringBuilder();
+      for (StandInAvroSource source : sources) {
+        hostNames.append("127.0.0.1:").append(source.getPort()).append(" ");
+      }
+      loadBalancing.setHosts(hostNames.toString());
+      log4jAppender = loadBalancing;
+    } else {
+      log4jAppender = new Log4jAppender("127.0.0.1", sources.get(0).getPort());
+    }
+
+    log4jAppender.setLayout(new PatternLayout("%m"));
+    if (message != MessageType.TEXT) {
+      // without a URL the schema literal is sent with every event
+      log4jAppender.setAvroSchemaUrl("hdfs://namenode/schemas/message.avsc");
+      log4jAppender.setAvroReflectionEnabled(message == MessageType.REFLECT);
+    }
+    log4jAppender.activateOptions();
+
+    logger = Logger.getLogger(Log4jAppenderBenchmark.class);
+    logger.removeAllAppenders();
+    logger.setAdditivity(false);
+    logger.setLevel(Level.INFO);
+    logger.addAppender(log4jAppender);
+
+    messages = messages(message);
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    logger.removeAppender(log4jAppender);
+    log4jAppender.close();
+
+    for (StandInAvroSource source : sources) {
+      source.stop();
+    }
+    sources.clear();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public void log(ThreadState state) {
+    logger.info(state.next(messages));
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void logLatency(ThreadState state) {
+    logger.info(state.next(messages));
+  }
+
+  static Object[] messages(MessageType type) {
+    Random random = new Random(0xCDCL);
+    Schema schema = ReflectData.get().getSchema(BenchmarkLogMessage.class);
+
+    Object[] messages = new Object[MESSAGES];
+    for (int i = 0; i < MESSAGES; i++) {
+      BenchmarkLogMessage pojo = new BenchmarkLogMessage(i,
+        "user-" + random.nextInt(1000), ACTIONS[random.nextInt(ACTIONS.length)],
+        100 + random.nextInt(500));
+
+      switch (type) {
+        case TEXT:
+          messages[i] = pojo.toString();
+          break;
+        case GENERIC:
+          messages[i] = new GenericRecordBuilder(schema)
+            .set("id", pojo.getId())
+            .set("username", pojo.getUsername())
+            .set("action", pojo.getAction())
+            .set("status", pojo.getStatus())
+            .build();
+          break;
+        default:
+          messages[i] = pojo;
+      }
+    }
+
+    return messages;
+  }
+
+  public static void main(String[] args) throws RunnerException,
+    CommandLineOptionException {
+
+    CommandLineOptions options = new CommandLineOptions(args);
+
+    for (int threads : THREAD_COUNTS) {
+      new Runner(new OptionsBuilder()
+        .parent(options)
+        .include(Log4jAppenderBenchmark.class.getSimpleName())
+        .threads(threads)
+        .build()).run();
+    }
+  }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.flume.clients.log4jappender;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.avro.ipc.NettyServer;
+import org.apache.avro.ipc.Server;
+import org.apache.avro.ipc.specific.SpecificResponder;
+import org.apache.flume.source.avro.AvroFlumeEvent;
+import org.apache.flume.source.avro.AvroSourceProtocol;
+import org.apache.flume.source.avro.Status;
+
+/**
+ * A local stand-in for a Flume agent's Avro source. It speaks the same Netty
+ * based Avro RPC protocol as {@link org.apache.flume.source.AvroSource}, but
+ * acknowledges events as soon as they are received rather than committing
+ * them to a channel, so that only the client side cost is measured.
+ */
+class StandInAvroSource implements AvroSourceProtocol {
+
+  private final AtomicLong events = new AtomicLong();
+  private Server server;
+
+  public void start() {
+    server = new NettyServer(new SpecificResponder(AvroSourceProtocol.class,
+      this), new InetSocketAddress("127.0.0.1", 0));
+    server.start();
+  }
+
+  public void stop() throws InterruptedException {
+    server.close();
+    server.join();
+  }
+
+  public int getPort() {
+    return server.getPort();
+  }
+
+  public long getEvents() {
+    return events.get();
+  }
+
+  @Override
+  public Status append(AvroFlumeEvent event) {
+    events.incrementAndGet();
+    return Status.OK;
+  }
+
+  @Override
+  public Status appendBatch(List<AvroFlumeEvent> batch) {
+    events.addAndGet(batch.size());
+    return Status.OK;
+  }
+
+}
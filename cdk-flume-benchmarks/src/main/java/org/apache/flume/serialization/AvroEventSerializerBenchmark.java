@@ -0,0 +1,169 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.flume.serialization;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.io.Files;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.reflect.ReflectData;
+import org.apache.avro.reflect.ReflectDatumWriter;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.clients.log4jappender.BenchmarkLogMessage;
+import org.apache.flume.event.EventBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Benchmarks for {@link AvroEventSerializer#write(Event)}, the per event work
+ * of a Flume HDFS sink writing Avro data files, for each compression codec and
+ * a range of sync intervals.
+ * </p>
+ * <p>
+ * Event bodies are pre-encoded Avro datums, as sent by
+ * {@link org.apache.flume.clients.log4jappender.Log4jAppender}, with the
+ * schema given by URL. The serializer writes to an output stream that only
+ * counts bytes, so the disk is not measured. The primary score is events/s;
+ * the output bytes per event is printed after each iteration, once the
+ * serializer has been flushed.
+ * </p>
+ * <pre>
+ * java -jar target/benchmarks.jar AvroEventSerializerBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AvroEventSerializerBenchmark {
+
+  /*
+   * Enough distinct events that the compression codecs can't simply match
+   * repeats of earlier blocks. Must be a power of two; see write().
+   */
+  static final int EVENTS = 65536;
+
+  private static final String[] ACTIONS = { "login", "logout", "view",
+    "search", "purchase" };
+
+  @Param({ "null", "deflate", "snappy" })
+  public String compressionCodec;
+
+  /* The Flume default is 2048000. */
+  @Param({ "16000", "64000", "256000", "2048000" })
+  public int syncIntervalBytes;
+
+  private File schemaFile;
+  private Event[] events;
+  private Context context;
+
+  private CountingOutputStream out;
+  private EventSerializer serializer;
+  private long written;
+  private int index;
+
+  @Setup(Level.Trial)
+  public void setUpTrial() throws IOException {
+    Schema schema = ReflectData.get().getSchema(BenchmarkLogMessage.class);
+
+    schemaFile = File.createTempFile("message", ".avsc");
+    Files.write(schema.toString(), schemaFile, Charsets.UTF_8);
+
+    Map<String, String> headers = ImmutableMap.of(
+      AvroEventSerializer.AVRO_SCHEMA_URL_HEADER,
+      schemaFile.toURI().toURL().toExternalForm());
+
+    Random random = new Random(0xCDCL);
+    ReflectDatumWriter<BenchmarkLogMessage> writer =
+      new ReflectDatumWriter<BenchmarkLogMessage>(schema);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(bytes, null);
+
+    events = new Event[EVENTS];
+    for (int i = 0; i < EVENTS; i++) {
+      bytes.reset();
+      writer.write(new BenchmarkLogMessage(i, "user-" + random.nextInt(1000),
+        ACTIONS[random.nextInt(ACTIONS.length)], 100 + random.nextInt(500)),
+        encoder);
+      encoder.flush();
+      events[i] = EventBuilder.withBody(bytes.toByteArray(), headers);
+    }
+
+    context = new Context();
+    context.put(AvroEventSerializerConfigurationConstants.COMPRESSION_CODEC,
+      compressionCodec);
+    context.put(AvroEventSerializerConfigurationConstants.SYNC_INTERVAL_BYTES,
+      Integer.toString(syncIntervalBytes));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownTrial() {
+    if (!schemaFile.delete()) {
+      schemaFile.deleteOnExit();
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpIteration() throws IOException {
+    out = new CountingOutputStream(ByteStreams.nullOutputStream());
+    serializer = new AvroEventSerializer.Builder().build(context, out);
+    serializer.afterCreate();
+    written = 0;
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDownIteration() throws IOException {
+    serializer.flush();
+    serializer.beforeClose();
+
+    if (written > 0) {
+      System.out.printf("%nbytes/event: %.1f%n",
+        (double) out.getCount() / written);
+    }
+  }
+
+  @Benchmark
+  public void write() throws IOException {
+    serializer.write(events[index++ & (EVENTS - 1)]);
+    written++;
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.clients.log4jappender;
+
+import com.cloudera.data.metrics.DatasetMetrics;
+import com.cloudera.data.metrics.MetricGroup;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * The delivery metrics of a {@link Log4jAppender}.
+ * </p>
+ * <p>
+ * Events are counted and timed by message type, in child groups named
+ * {@link #TEXT}, {@link #GENERIC_RECORD} and {@link #REFLECT}, which
+ * accumulate to the appender's group. Each group is registered with the
+ * platform MBean server under
+ * {@code com.cloudera.data:type=Log4jAppender,name=<appender name>}, with a
+ * {@code messageType} key for the child groups.
+ * </p>
+ */
+class AppenderMetrics {
+
+  static final String JMX_TYPE = "Log4jAppender";
+
+  /* Message types. */
+
+  static final String TEXT = "text";
+  static final String GENERIC_RECORD = "genericRecord";
+  static final String REFLECT = "reflect";
+
+  /** Counter of events delivered to the first hop. */
+  static final String EVENTS_SENT = "eventsSent";
+  /** Counter of event body bytes delivered to the first hop. */
+  static final String BYTES_SENT = "bytesSent";
+  /** Counter of events that couldn't be delivered. */
+  static final String APPEND_FAILURES = "appendFailures";
+  /** Timer of the RPC that delivers each event, including failures. */
+  static final String APPEND_TIME = "appendTime";
+  /** Timer of building and serializing each event. */
+  static final String SERIALIZE_TIME = "serializeTime";
+  /** Counter of reconnections to the first hop. Appender group only. */
+  static final String RECONNECTS = "reconnects";
+  /**
+   * Timer of each append while holding the appender's lock, which logging
+   * threads contend for. Appender group only.
+   */
+  static final String LOCK_HELD_TIME = "lockHeldTime";
+
+  private final MetricGroup metrics;
+  private final MetricGroup text;
+  private final MetricGroup genericRecord;
+  private final MetricGroup reflect;
+
+  private boolean registered;
+
+  AppenderMetrics(String name) {
+    this.metrics = new MetricGroup(name);
+    this.text = new MetricGroup(TEXT, metrics);
+    this.genericRecord = new MetricGroup(GENERIC_RECORD, metrics);
+    this.reflect = new MetricGroup(REFLECT, metrics);
+
+    // create every metric up front, so that all are visible to monitoring
+    for (MetricGroup group : new MetricGroup[] { text, genericRecord, reflect }) {
+      group.counter(EVENTS_SENT);
+      group.counter(BYTES_SENT);
+      group.counter(APPEND_FAILURES);
+      group.timer(APPEND_TIME);
+      group.timer(SERIALIZE_TIME);
+    }
+    metrics.counter(RECONNECTS);
+    metrics.timer(LOCK_HELD_TIME);
+  }
+
+  MetricGroup getMetrics() {
+    return metrics;
+  }
+
+  MetricGroup getText() {
+    return text;
+  }
+
+  MetricGroup getGenericRecord() {
+    return genericRecord;
+  }
+
+  MetricGroup getReflect() {
+    return reflect;
+  }
+
+  /**
+   * Register the groups with JMX, if not already registered.
+   */
+  void register() {
+    if (registered) {
+      return;
+    }
+
+    DatasetMetrics.get().registerMBean(objectName(null), metrics);
+    for (MetricGroup group : new MetricGroup[] { text, genericRecord, reflect }) {
+      DatasetMetrics.get().registerMBean(objectName(group.getName()), group);
+    }
+    registered = true;
+  }
+
+  void unregister() {
+    if (!registered) {
+      return;
+    }
+
+    DatasetMetrics.get().unregisterMBean(objectName(null));
+    for (MetricGroup group : new MetricGroup[] { text, genericRecord, reflect }) {
+      DatasetMetrics.get().unregisterMBean(objectName(group.getName()));
+    }
+    registered = false;
+  }
+
+  ObjectName objectName(String messageType) {
+    try {
+      return new ObjectName(DatasetMetrics.JMX_DOMAIN + ":type=" + JMX_TYPE
+        + ",name=" + ObjectName.quote(metrics.getName())
+        + (messageType != null ? ",messageType=" + messageType : ""));
+    } catch (MalformedObjectNameException e) {
+      // the name is quoted and the other values are constants
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
@@ -107,6 +107,7 @@ public class LoadBalancingLog4jAppender extends Log4jAppender {
     try {
       final Properties properties = getProperties(hosts, selector, maxBackoff);
       rpcClient = RpcClientFactory.getInstance(properties);
+      destination = hosts;
     } catch (FlumeException e) {
       String errormsg = "RPC client creation failed! " + e.getMessage();
       LogLog.error(errormsg);
@@ -23,6 +23,12 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import com.cloudera.data.metrics.DatasetEvent;
+import com.cloudera.data.metrics.DatasetEvents;
+import com.cloudera.data.metrics.Instrumented;
+import com.cloudera.data.metrics.MetricGroup;
+import com.cloudera.data.metrics.Timer;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.BinaryEncoder;
@@ -66,7 +72,7 @@ import org.apache.log4j.spi.LoggingEvent;
  *
  *
  */
-public class Log4jAppender extends AppenderSkeleton {
+public class Log4jAppender extends AppenderSkeleton implements Instrumented {
 
   private String hostname;
   private int port;
@@ -75,6 +81,11 @@ public class Log4jAppender extends AppenderSkeleton {
 
   RpcClient rpcClient = null;
 
+  // where events are sent, for the events recorded by each append
+  String destination;
+
+  private AppenderMetrics metrics;
+
   /**
    * If this constructor is used programmatically rather than from a log4j conf
    * you must set the <tt>port</tt> and <tt>hostname</tt> and then call
@@ -105,6 +116,18 @@ public class Log4jAppender extends AppenderSkeleton {
    */
   @Override
   public synchronized void append(LoggingEvent event) throws FlumeException{
+    long startNanos = System.nanoTime();
+    try {
+      send(event);
+    } finally {
+      if (metrics != null) {
+        metrics.getMetrics().timer(AppenderMetrics.LOCK_HELD_TIME).update(
+            System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  private void send(LoggingEvent event) throws FlumeException {
     //If rpcClient is null, it means either this appender object was never
     //setup by setting hostname and port and then calling activateOptions
     //or this appender object was closed by calling close(), so we throw an
@@ -118,6 +141,11 @@ public class Log4jAppender extends AppenderSkeleton {
       reconnect();
     }
 
+    AppenderMetrics appenderMetrics = getAppenderMetrics();
+    appenderMetrics.register();
+    MetricGroup typeMetrics;
+    Timer.Context serializeTimer;
+
     //Client created first time append is called.
     Map<String, String> hdrs = new HashMap<String, String>();
     hdrs.put(Log4jAvroHeaders.LOGGER_NAME.toString(), event.getLoggerName());
@@ -133,26 +161,46 @@ public class Log4jAppender extends AppenderSkeleton {
     Event flumeEvent;
     Object message = event.getMessage();
     if (message instanceof GenericRecord) {
+      typeMetrics = appenderMetrics.getGenericRecord();
+      serializeTimer = typeMetrics.timer(AppenderMetrics.SERIALIZE_TIME).time();
       GenericRecord record = (GenericRecord) message;
       populateAvroHeaders(hdrs, record.getSchema(), message);
       flumeEvent = EventBuilder.withBody(serialize(record, record.getSchema()), hdrs);
     } else if (message instanceof SpecificRecord || avroReflectionEnabled) {
+      typeMetrics = appenderMetrics.getReflect();
+      serializeTimer = typeMetrics.timer(AppenderMetrics.SERIALIZE_TIME).time();
       Schema schema = ReflectData.get().getSchema(message.getClass());
       populateAvroHeaders(hdrs, schema, message);
       flumeEvent = EventBuilder.withBody(serialize(message, schema), hdrs);
     } else {
+      typeMetrics = appenderMetrics.getText();
+      serializeTimer = typeMetrics.timer(AppenderMetrics.SERIALIZE_TIME).time();
       hdrs.put(Log4jAvroHeaders.MESSAGE_ENCODING.toString(), "UTF8");
       String msg = layout != null ? layout.format(event) : message.toString();
       flumeEvent = EventBuilder.withBody(msg, Charset.forName("UTF8"), hdrs);
     }
 
+    serializeTimer.stop();
+
+    int bytes = flumeEvent.getBody().length;
+    Timer.Context appendTimer = typeMetrics.timer(AppenderMetrics.APPEND_TIME)
+        .time();
+    DatasetEvents.Recording recording = DatasetEvents.begin(
+        DatasetEvent.Type.APPEND, null, destination);
     try {
       rpcClient.append(flumeEvent);
     } catch (EventDeliveryException e) {
+      typeMetrics.counter(AppenderMetrics.APPEND_FAILURES).inc();
       String msg = "Flume append() failed.";
       LogLog.error(msg);
       throw new FlumeException(msg + " Exception follows.", e);
+    } finally {
+      appendTimer.stop();
+      recording.end(bytes);
     }
+
+    typeMetrics.counter(AppenderMetrics.EVENTS_SENT).inc();
+    typeMetrics.counter(AppenderMetrics.BYTES_SENT).inc(bytes);
   }
 
   private Schema schema;
@@ -200,12 +248,40 @@ public class Log4jAppender extends AppenderSkeleton {
   @Override
   public synchronized void close() throws FlumeException{
     //Any append calls after this will result in an Exception.
+    closeClient();
+    if (metrics != null) {
+      metrics.unregister();
+    }
+  }
+
+  private void closeClient() throws FlumeException {
     if (rpcClient != null) {
       rpcClient.close();
       rpcClient = null;
     }
   }
 
+  /**
+   * The delivery metrics of this appender: events and bytes sent, append
+   * latency and failures by message type, reconnects and time spent holding
+   * the appender's lock. These are also exposed over JMX while the appender
+   * is in use.
+   */
+  @Override
+  public synchronized MetricGroup getMetrics() {
+    return getAppenderMetrics().getMetrics();
+  }
+
+  synchronized AppenderMetrics getAppenderMetrics() {
+    if (metrics == null) {
+      // log4j names appenders after they are constructed
+      metrics = new AppenderMetrics(getName() != null ? getName() :
+          getClass().getSimpleName() + "@"
+              + Integer.toHexString(System.identityHashCode(this)));
+    }
+    return metrics;
+  }
+
   @Override
   public boolean requiresLayout() {
     // This method is named quite incorrectly in the interface. It should
@@ -249,6 +325,7 @@ public class Log4jAppender extends AppenderSkeleton {
   public void activateOptions() throws FlumeException{
     try {
       rpcClient = RpcClientFactory.getDefaultInstance(hostname, port);
+      destination = hostname + ":" + port;
     } catch (FlumeException e) {
       String errormsg = "RPC client creation failed! " +
           e.getMessage();
@@ -261,11 +338,13 @@ public class Log4jAppender extends AppenderSkeleton {
   }
 
   /**
-   * Make it easy to reconnect on failure
+   * Make it easy to reconnect on failure. The metrics stay registered, as
+   * the appender is still in use.
    * @throws FlumeException
    */
   private void reconnect() throws FlumeException {
-    close();
+    getAppenderMetrics().getMetrics().counter(AppenderMetrics.RECONNECTS).inc();
+    closeClient();
     activateOptions();
   }
 }
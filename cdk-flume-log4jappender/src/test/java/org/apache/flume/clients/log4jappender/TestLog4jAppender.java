@@ -21,10 +21,19 @@ package org.apache.flume.clients.log4jappender;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
 
 import junit.framework.Assert;
 
+import com.cloudera.data.metrics.MetricGroup;
+
 import org.apache.flume.Channel;
 import org.apache.flume.ChannelSelector;
 import org.apache.flume.Context;
@@ -170,6 +179,103 @@ public class TestLog4jAppender{
 
   }
 
+  @Test
+  public void testMetrics() throws Exception {
+    PropertyConfigurator.configure(props);
+    Logger logger = LogManager.getLogger(TestLog4jAppender.class);
+    for (int count = 0; count < 10; count++) {
+      logger.info("This is log message number" + count);
+    }
+
+    Log4jAppender appender = (Log4jAppender) LogManager.getLogger(
+        "org.apache.flume.clients.log4jappender").getAppender("out2");
+    MetricGroup metrics = appender.getMetrics();
+
+    Assert.assertEquals(10,
+        metrics.counter(AppenderMetrics.EVENTS_SENT).getCount());
+    Assert.assertTrue(
+        metrics.counter(AppenderMetrics.BYTES_SENT).getCount() > 0);
+    Assert.assertEquals(10,
+        metrics.timer(AppenderMetrics.APPEND_TIME).getCount());
+    Assert.assertEquals(10,
+        metrics.timer(AppenderMetrics.LOCK_HELD_TIME).getCount());
+    Assert.assertEquals(0,
+        metrics.counter(AppenderMetrics.APPEND_FAILURES).getCount());
+
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    Assert.assertEquals(10L, mBeanServer.getAttribute(
+        appender.getAppenderMetrics().objectName(AppenderMetrics.TEXT),
+        AppenderMetrics.EVENTS_SENT));
+    Assert.assertEquals(0L, mBeanServer.getAttribute(
+        appender.getAppenderMetrics().objectName(AppenderMetrics.REFLECT),
+        AppenderMetrics.EVENTS_SENT));
+
+    for (int count = 0; count < 10; count++) {
+      Transaction transaction = ch.getTransaction();
+      transaction.begin();
+      Assert.assertNotNull(ch.take());
+      transaction.commit();
+      transaction.close();
+    }
+
+    appender.close();
+    Assert.assertFalse(mBeanServer.isRegistered(
+        appender.getAppenderMetrics().objectName(null)));
+  }
+
+  @Test
+  public void testReconnectKeepsMetricsRegistered() throws Exception {
+    PropertyConfigurator.configure(props);
+    Logger logger = LogManager.getLogger(TestLog4jAppender.class);
+    Log4jAppender appender = (Log4jAppender) LogManager.getLogger(
+        "org.apache.flume.clients.log4jappender").getAppender("out2");
+    final ObjectName name = appender.getAppenderMetrics().objectName(null);
+
+    logger.info("before reconnect");
+
+    final List<ObjectName> unregistered = new ArrayList<ObjectName>();
+    NotificationListener listener = new NotificationListener() {
+      @Override
+      public void handleNotification(Notification notification,
+          Object handback) {
+        if (MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(
+            notification.getType())) {
+          unregistered.add(
+              ((MBeanServerNotification) notification).getMBeanName());
+        }
+      }
+    };
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    mBeanServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME,
+        listener, null, null);
+    try {
+      // the next append finds the client inactive and reconnects
+      appender.rpcClient.close();
+      logger.info("after reconnect");
+    } finally {
+      mBeanServer.removeNotificationListener(
+          MBeanServerDelegate.DELEGATE_NAME, listener);
+    }
+
+    Assert.assertEquals(1, appender.getMetrics()
+        .counter(AppenderMetrics.RECONNECTS).getCount());
+    Assert.assertEquals(2, appender.getMetrics()
+        .counter(AppenderMetrics.EVENTS_SENT).getCount());
+    Assert.assertFalse(unregistered.contains(name));
+    Assert.assertTrue(mBeanServer.isRegistered(name));
+
+    for (int count = 0; count < 2; count++) {
+      Transaction transaction = ch.getTransaction();
+      transaction.begin();
+      Assert.assertNotNull(ch.take());
+      transaction.commit();
+      transaction.close();
+    }
+
+    appender.close();
+    Assert.assertFalse(mBeanServer.isRegistered(name));
+  }
+
   @After
   public void cleanUp(){
     source.stop();
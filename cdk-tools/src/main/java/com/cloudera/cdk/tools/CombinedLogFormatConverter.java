@@ -18,12 +18,8 @@ package com.cloudera.cdk.tools;
 import com.cloudera.data.DatasetDescriptor;
 import com.cloudera.data.DatasetRepository;
 import com.cloudera.data.filesystem.FileSystemDatasetRepository;
-import com.google.common.io.Resources;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
-import org.apache.avro.generic.GenericRecordBuilder;
 import org.apache.crunch.DoFn;
 import org.apache.crunch.Emitter;
 import org.apache.crunch.PCollection;
@@ -46,9 +42,6 @@ import org.apache.hadoop.util.ToolRunner;
     justification = "Serialization not needed between different versions of this class")
 public class CombinedLogFormatConverter extends CrunchTool {
 
-  private static final String LOG_PATTERN = "^(\\S+) (\\S+) (\\S+) \\[" +
-      "([\\w:/]+\\s[+\\-]\\d{4})\\] \"(.+?)\" (\\d{3}) (\\d+|-) \"([^\"]*)\" \"([^\"]+)\"";
-
   @Override
   public int run(String... args) throws Exception {
     if (args.length != 3) {
@@ -60,8 +53,7 @@ public class CombinedLogFormatConverter extends CrunchTool {
     String datasetRoot = args[1];
     String datasetName = args[2];
 
-    Schema schema = new Schema.Parser().parse(
-        Resources.getResource("combined_log_format.avsc").openStream());
+    Schema schema = CombinedLogFormatParser.getSchema();
 
     // Create the dataset
     Path root = new Path(datasetRoot);
@@ -86,20 +78,6 @@ public class CombinedLogFormatConverter extends CrunchTool {
     return 0;
   }
 
-  private String asString(String s) {
-    if ("-".equals(s) || "\"-\"".equals(s)) {
-      return null;
-    }
-    return s;
-  }
-
-  private Integer asInt(String s) {
-    if ("-".equals(s)) {
-      return null;
-    }
-    return Integer.parseInt(s);
-  }
-
   public static void main(String... args) throws Exception {
     int rc = ToolRunner.run(new CombinedLogFormatConverter(), args);
     System.exit(rc);
@@ -109,37 +87,24 @@ public class CombinedLogFormatConverter extends CrunchTool {
       "SE_TRANSIENT_FIELD_NOT_RESTORED"})
   private class ConvertFn extends DoFn<String, GenericData.Record> {
     private final String schemaString;
-    transient Pattern pattern;
-    transient GenericRecordBuilder recBuilder;
+    transient CombinedLogFormatParser parser;
 
     public ConvertFn(String schemaString) {
       this.schemaString = schemaString;
     }
 
     public void initialize() {
-      pattern = Pattern.compile(LOG_PATTERN);
-      recBuilder = new GenericRecordBuilder(new Schema.Parser().parse(schemaString));
+      parser = new CombinedLogFormatParser(new Schema.Parser().parse(schemaString));
     }
 
     @Override
     public void process(String line, Emitter<GenericData.Record> emitter) {
-      Matcher matcher = pattern.matcher(line);
-      if (matcher.matches()) {
-        // parse line into components
-        recBuilder.set("host", asString(matcher.group(1)));
-        recBuilder.set("rfc931_identity", asString(matcher.group(2)));
-        recBuilder.set("username", asString(matcher.group(3)));
-        recBuilder.set("datetime", asString(matcher.group(4)));
-        recBuilder.set("request", asString(matcher.group(5)));
-        recBuilder.set("http_status_code", asInt(matcher.group(6)));
-        recBuilder.set("response_size", asInt(matcher.group(7)));
-        recBuilder.set("referrer", asString(matcher.group(8)));
-        recBuilder.set("user_agent", asString(matcher.group(9)));
-        emitter.emit(recBuilder.build());
+      GenericData.Record record = parser.parse(line);
+      if (record != null) {
+        emitter.emit(record);
       } else {
         System.err.println("No match: " + line);
       }
-
     }
   }
 }
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.cdk.tools;
+
+import com.google.common.io.Resources;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecordBuilder;
+
+/**
+ * <p>
+ * Parses lines in
+ * <a href="http://en.wikipedia.org/wiki/Common_Log_Format">Combined Log Format</a>
+ * into records of the {@code combined_log_format.avsc} schema.
+ * </p>
+ * <p>
+ * In addition to the raw {@code datetime} string, the {@code timestamp} field
+ * holds the same instant in milliseconds since the epoch, so that datasets of
+ * log records can be partitioned with the calendar partitioners.
+ * </p>
+ * <p>
+ * Instances are not thread-safe; use one per thread.
+ * </p>
+ */
+@NotThreadSafe
+public class CombinedLogFormatParser {
+
+  private static final String LOG_PATTERN = "^(\\S+) (\\S+) (\\S+) \\[" +
+      "([\\w:/]+\\s[+\\-]\\d{4})\\] \"(.+?)\" (\\d{3}) (\\d+|-) \"([^\"]*)\" \"([^\"]+)\"";
+  private static final String DATETIME_PATTERN = "dd/MMM/yyyy:HH:mm:ss Z";
+
+  private final Pattern pattern;
+  private final SimpleDateFormat dateFormat;
+  private final GenericRecordBuilder recBuilder;
+
+  public CombinedLogFormatParser() {
+    this(getSchema());
+  }
+
+  public CombinedLogFormatParser(Schema schema) {
+    this.pattern = Pattern.compile(LOG_PATTERN);
+    this.dateFormat = new SimpleDateFormat(DATETIME_PATTERN, Locale.ENGLISH);
+    this.recBuilder = new GenericRecordBuilder(schema);
+  }
+
+  /**
+   * Load the Combined Log Format record schema.
+   */
+  public static Schema getSchema() {
+    try {
+      return new Schema.Parser().parse(
+          Resources.getResource("combined_log_format.avsc").openStream());
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to load combined log format schema", e);
+    }
+  }
+
+  /**
+   * Parse a single log line.
+   *
+   * @return The parsed record, or {@code null} if the line is not in Combined
+   *         Log Format.
+   */
+  @Nullable
+  public GenericData.Record parse(String line) {
+    Matcher matcher = pattern.matcher(line);
+    if (!matcher.matches()) {
+      return null;
+    }
+
+    // parse line into components
+    recBuilder.set("host", asString(matcher.group(1)));
+    recBuilder.set("rfc931_identity", asString(matcher.group(2)));
+    recBuilder.set("username", asString(matcher.group(3)));
+    recBuilder.set("datetime", asString(matcher.group(4)));
+    recBuilder.set("timestamp", asTimestamp(matcher.group(4)));
+    recBuilder.set("request", asString(matcher.group(5)));
+    recBuilder.set("http_status_code", asInt(matcher.group(6)));
+    recBuilder.set("response_size", asInt(matcher.group(7)));
+    recBuilder.set("referrer", asString(matcher.group(8)));
+    recBuilder.set("user_agent", asString(matcher.group(9)));
+    return recBuilder.build();
+  }
+
+  private String asString(String s) {
+    if ("-".equals(s) || "\"-\"".equals(s)) {
+      return null;
+    }
+    return s;
+  }
+
+  private Integer asInt(String s) {
+    if ("-".equals(s)) {
+      return null;
+    }
+    return Integer.parseInt(s);
+  }
+
+  private Long asTimestamp(String s) {
+    try {
+      return dateFormat.parse(s).getTime();
+    } catch (ParseException e) {
+      return null;
+    }
+  }
+
+}
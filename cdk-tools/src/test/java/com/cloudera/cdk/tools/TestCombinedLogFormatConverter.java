@@ -66,6 +66,7 @@ public class TestCombinedLogFormatConverter {
       Assert.assertNull(first.get("rfc931_identity"));
       Assert.assertNull(first.get("username"));
       Assert.assertEquals("24/Apr/2011:04:06:01 -0400", first.get("datetime"));
+      Assert.assertEquals(1303632361000L, first.get("timestamp"));
       Assert.assertEquals("GET /~strabal/grease/photo9/927-3.jpg HTTP/1.1",
           first.get("request"));
       Assert.assertEquals(200, first.get("http_status_code"));
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2013 Cloudera Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.cdk.tools;
+
+import junit.framework.Assert;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCombinedLogFormatParser {
+
+  private CombinedLogFormatParser parser;
+
+  @Before
+  public void setUp() {
+    parser = new CombinedLogFormatParser();
+  }
+
+  @Test
+  public void testParse() {
+    GenericRecord record = parser.parse("ip1 - frank [24/Apr/2011:04:06:01 -0400] " +
+        "\"GET /index.html HTTP/1.1\" 200 - \"http://example.com/\" \"Mozilla/5.0\"");
+
+    Assert.assertNotNull(record);
+    Assert.assertEquals("ip1", record.get("host"));
+    Assert.assertNull(record.get("rfc931_identity"));
+    Assert.assertEquals("frank", record.get("username"));
+    Assert.assertEquals("24/Apr/2011:04:06:01 -0400", record.get("datetime"));
+    Assert.assertEquals(1303632361000L, record.get("timestamp"));
+    Assert.assertEquals("GET /index.html HTTP/1.1", record.get("request"));
+    Assert.assertEquals(200, record.get("http_status_code"));
+    Assert.assertNull(record.get("response_size"));
+    Assert.assertEquals("http://example.com/", record.get("referrer"));
+    Assert.assertEquals("Mozilla/5.0", record.get("user_agent"));
+  }
+
+  @Test
+  public void testNoMatch() {
+    Assert.assertNull(parser.parse("not a log line"));
+  }
+
+}